@@ -15,6 +15,16 @@ repositories {
     jcenter()
 }
 
+// JMH benchmarks in src/jmh
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.compile.get())
+
 dependencies {
     // Checks
     errorprone("com.google.errorprone:error_prone_core:2.3.3")
@@ -32,6 +42,10 @@ dependencies {
     // JUnit Jupiter test framework
     testCompile("org.junit.jupiter:junit-jupiter-api:5.4.0")
     testRuntime("org.junit.jupiter:junit-jupiter-engine:5.4.0")
+
+    // JMH benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.23")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.23")
 }
 
 val run by tasks.getting(JavaExec::class) {
@@ -45,6 +59,16 @@ tasks {
     }
 }
 
+// Runs benchmarks passing JMH options, e.g. ./gradlew jmh -Pjmh="ReadBenchmark -p valueSize=1024 -t 4"
+val jmh by tasks.registering(JavaExec::class) {
+    group = "verification"
+    description = "Runs JMH benchmarks"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+    maxHeapSize = "128m"
+    args = (findProperty("jmh") as String?)?.split(" ")?.filter { it.isNotEmpty() } ?: emptyList()
+}
+
 application {
     // Define the main class for the application
     mainClassName = "ru.mail.polis.Client"
@@ -63,4 +87,10 @@ tasks.withType<JavaCompile> {
 // Error prone options
 tasks.named<JavaCompile>("compileTestJava") {
     options.errorprone.isEnabled.set(false)
+}
+
+tasks.named<JavaCompile>("compileJmhJava") {
+    options.errorprone.isEnabled.set(false)
+    // Generated benchmark code doesn't claim all the annotations
+    options.compilerArgs.add("-Xlint:-processing")
 }
\ No newline at end of file
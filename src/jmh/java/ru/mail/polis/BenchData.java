@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Data generators shared by benchmarks.
+ */
+final class BenchData {
+    private BenchData() {
+        // Don't instantiate
+    }
+
+    /**
+     * Makes the key of the given size, keys are ordered as their indices.
+     */
+    @NotNull
+    static ByteBuffer key(
+            final long index,
+            final int size) {
+        // Decimal digits sort the same way as the numbers under signed byte comparison
+        final byte[] digits = Long.toString(index).getBytes(StandardCharsets.US_ASCII);
+        assert digits.length <= size;
+        final byte[] result = new byte[size];
+        Arrays.fill(result, 0, size - digits.length, (byte) '0');
+        System.arraycopy(digits, 0, result, size - digits.length, digits.length);
+        return ByteBuffer.wrap(result);
+    }
+
+    @NotNull
+    static ByteBuffer value(final int size) {
+        final byte[] result = new byte[size];
+        ThreadLocalRandom.current().nextBytes(result);
+        return ByteBuffer.wrap(result);
+    }
+
+    @NotNull
+    static File createDirectory() throws IOException {
+        return Files.createTempDirectory("bench").toFile();
+    }
+
+    static void deleteRecursively(@NotNull final File directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory.toPath())) {
+            for (final Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
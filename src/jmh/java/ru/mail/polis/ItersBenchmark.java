@@ -0,0 +1,64 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Overhead of {@link Iters} helpers over in-memory sorted records.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx128m")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ItersBenchmark {
+    @Param({"16", "64"})
+    private int keySize;
+    @Param({"1000", "100000"})
+    private int count;
+    /**
+     * Number of equal records in a row for {@link Iters#collapseEquals}.
+     */
+    @Param({"1", "4"})
+    private int duplicates;
+
+    private List<Record> records;
+    private Record middle;
+
+    @Setup
+    public void generate() {
+        final ByteBuffer value = BenchData.value(16);
+        records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(Record.of(BenchData.key(i / duplicates, keySize), value));
+        }
+        middle = records.get(count / 2);
+    }
+
+    @Benchmark
+    public void collapseEquals(final Blackhole blackhole) {
+        final Iterator<Record> iterator = Iters.collapseEquals(records.iterator(), Record::getKey);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+
+    @Benchmark
+    public void until(final Blackhole blackhole) {
+        final Iterator<Record> iterator = Iters.until(records.iterator(), middle);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency of point and range reads over a dataset reopened from disk.
+ *
+ * <p>Stored keys have even indices, so odd ones give misses falling between them.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx128m")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ReadBenchmark {
+    private static final int SCAN_LENGTH = 10;
+
+    @Param({"16", "64"})
+    private int keySize;
+    @Param({"128", "1024"})
+    private int valueSize;
+    @Param({"10000", "100000"})
+    private int count;
+
+    private File data;
+    private DAO dao;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        data = BenchData.createDirectory();
+        try (DAO writer = DAOFactory.create(data)) {
+            for (int i = 0; i < count; i++) {
+                writer.upsert(BenchData.key(i * 2L, keySize), BenchData.value(valueSize));
+            }
+        }
+        dao = DAOFactory.create(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        dao.close();
+        BenchData.deleteRecursively(data);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ByteBuffer getHit() throws IOException {
+        return dao.get(randomKey(0));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ByteBuffer getHitConcurrently() throws IOException {
+        return dao.get(randomKey(0));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean getMiss() throws IOException {
+        try {
+            dao.get(randomKey(1));
+            return true;
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void iterator(final Blackhole blackhole) throws IOException {
+        final Iterator<Record> records = dao.iterator(randomKey(0));
+        for (int i = 0; i < SCAN_LENGTH && records.hasNext(); i++) {
+            blackhole.consume(records.next().getValue());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void range(final Blackhole blackhole) throws IOException {
+        final long from = ThreadLocalRandom.current().nextLong(count) * 2;
+        final Iterator<Record> records = dao.range(
+                BenchData.key(from, keySize),
+                BenchData.key(from + SCAN_LENGTH * 2, keySize));
+        while (records.hasNext()) {
+            blackhole.consume(records.next().getValue());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void rangeCursor(final Blackhole blackhole) throws IOException {
+        final long from = ThreadLocalRandom.current().nextLong(count) * 2;
+        final Cursor cursor = dao.cursor(
+                BenchData.key(from, keySize),
+                BenchData.key(from + SCAN_LENGTH * 2, keySize));
+        while (cursor.next()) {
+            blackhole.consume(cursor.value());
+        }
+    }
+
+    private ByteBuffer randomKey(final int parity) {
+        return BenchData.key(ThreadLocalRandom.current().nextLong(count) * 2 + parity, keySize);
+    }
+}
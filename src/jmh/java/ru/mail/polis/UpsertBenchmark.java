@@ -0,0 +1,66 @@
+package ru.mail.polis;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of {@link DAO#upsert} of fresh keys including flushes and compactions,
+ * concurrent writers scale with the number of shards.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx128m")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class UpsertBenchmark {
+    @Param({"16", "64"})
+    private int keySize;
+    @Param({"128", "1024"})
+    private int valueSize;
+    @Param({"1", "4"})
+    private int shards;
+
+    private final AtomicLong keys = new AtomicLong();
+    private File data;
+    private DAO dao;
+    private ByteBuffer value;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        data = BenchData.createDirectory();
+        dao = DAOFactory.create(data, Config.builder().shards(shards).build());
+        value = BenchData.value(valueSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        dao.close();
+        BenchData.deleteRecursively(data);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void upsert() throws IOException {
+        dao.upsert(BenchData.key(keys.getAndIncrement(), keySize), value);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void upsertConcurrently() throws IOException {
+        dao.upsert(BenchData.key(keys.getAndIncrement(), keySize), value);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Utility methods for implementations of {@link AsyncDAO}.
+ */
+public final class AsyncCalls {
+    private AsyncCalls() {
+        // Don't instantiate
+    }
+
+    /**
+     * Runs the call on the executor, a rejected one fails the future with {@link RejectedExecutionException}.
+     */
+    @NotNull
+    public static <T> CompletableFuture<T> submit(
+            @NotNull final Callable<T> call,
+            @NotNull final Executor executor) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> complete(result, call));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the call on the caller's thread, a thrown exception fails the future.
+     */
+    @NotNull
+    public static <T> CompletableFuture<T> call(@NotNull final Callable<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        complete(result, call);
+        return result;
+    }
+
+    /**
+     * Reads up to the limit of records of the range on the executor, as {@link AsyncDAO#rangeAsync} does.
+     */
+    @NotNull
+    public static CompletableFuture<List<Record>> range(
+            @NotNull final DAO dao,
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final int limit,
+            @NotNull final Executor executor) {
+        return submit(() -> {
+            final Iterator<Record> records = dao.range(from, to);
+            final List<Record> result = new ArrayList<>();
+            while (result.size() < limit && records.hasNext()) {
+                result.add(records.next());
+            }
+            return result;
+        }, executor);
+    }
+
+    private static <T> void complete(
+            @NotNull final CompletableFuture<T> future,
+            @NotNull final Callable<T> call) {
+        try {
+            future.complete(call.call());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
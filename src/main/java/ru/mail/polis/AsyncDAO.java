@@ -0,0 +1,62 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Non-blocking view of a {@link DAO}.
+ *
+ * <p>Futures complete exceptionally with the exception the blocking call would throw,
+ * or with {@link java.util.concurrent.RejectedExecutionException} if the storage is
+ * overloaded or closed. Dependent stages may run on storage threads, so they should
+ * not block.
+ */
+public interface AsyncDAO {
+    /**
+     * Runs the blocking calls of the storage on the executor.
+     */
+    @NotNull
+    static AsyncDAO of(
+            @NotNull final DAO dao,
+            @NotNull final Executor executor) {
+        return new ExecutorAsyncDAO(dao, executor);
+    }
+
+    /**
+     * Reads the value of the key, a missing key fails the future with {@link NoSuchElementException}.
+     */
+    @NotNull
+    CompletableFuture<ByteBuffer> getAsync(@NotNull ByteBuffer key);
+
+    /**
+     * Writes the value, the future completes once the write is as durable as a blocking one.
+     */
+    @NotNull
+    CompletableFuture<Void> upsertAsync(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value);
+
+    /**
+     * Removes the key, the future completes once the removal is as durable as a blocking one.
+     */
+    @NotNull
+    CompletableFuture<Void> removeAsync(@NotNull ByteBuffer key);
+
+    /**
+     * Reads up to the limit of records starting at "from" key (inclusive) until "to" key (exclusive).
+     *
+     * @param to    end of the range, {@code null} to read to the end
+     * @param limit maximum number of records to read
+     */
+    @NotNull
+    CompletableFuture<List<Record>> rangeAsync(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to,
+            int limit);
+}
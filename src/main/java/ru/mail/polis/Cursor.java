@@ -0,0 +1,61 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Mutable position over {@link Record}s in ascending key order.
+ *
+ * <p>Unlike an {@link Iterator} the cursor is reused from record to record, so scans
+ * need not allocate per step. Buffers returned by {@link #key()} and {@link #value()}
+ * are views valid only until the cursor moves, they may be reused for the next record.
+ * Cursors are not thread-safe.
+ */
+public interface Cursor {
+    /**
+     * Wraps the iterator, the records are allocated by it as usual.
+     */
+    @NotNull
+    static Cursor of(@NotNull final Iterator<Record> records) {
+        return new IteratorCursor(records);
+    }
+
+    /**
+     * Moves to the next record, the cursor starts before the first one.
+     *
+     * @return {@code false} once there are no more records
+     */
+    boolean next();
+
+    /**
+     * Returns the key of the current record.
+     *
+     * @throws IllegalStateException if the cursor is not at a record
+     */
+    @NotNull
+    ByteBuffer key();
+
+    /**
+     * Returns the value of the current record.
+     *
+     * @throws IllegalStateException if the cursor is not at a record
+     */
+    @NotNull
+    ByteBuffer value();
+
+    /**
+     * Copies the key of the current record to the buffer advancing its position.
+     */
+    default void copyKeyTo(@NotNull final ByteBuffer dst) {
+        dst.put(key());
+    }
+
+    /**
+     * Copies the value of the current record to the buffer advancing its position.
+     */
+    default void copyValueTo(@NotNull final ByteBuffer dst) {
+        dst.put(value());
+    }
+}
@@ -20,10 +20,20 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Storage interface.
@@ -64,6 +74,79 @@ public interface DAO extends Closeable {
         return Iters.until(iterator(from), bound);
     }
 
+    /**
+     * Provides iterator (possibly empty) over {@link Record}s starting at "from" key (inclusive)
+     * in <b>descending</b> order according to {@link Record#compareTo(Record)}.
+     * The default implementation scans from the first record and buffers the result,
+     * implementations should navigate backwards natively.
+     */
+    @NotNull
+    default Iterator<Record> descendingIterator(@NotNull ByteBuffer from) throws IOException {
+        final Deque<Record> records = new ArrayDeque<>();
+        final Iterator<Record> ascending = iterator(ByteBuffer.allocate(0));
+        while (ascending.hasNext()) {
+            final Record record = ascending.next();
+            if (record.getKey().compareTo(from) > 0) {
+                break;
+            }
+            records.push(record);
+        }
+        return records.iterator();
+    }
+
+    /**
+     * Provides iterator (possibly empty) over {@link Record}s starting at "from" key (inclusive)
+     * down to given "to" key (exclusive) in <b>descending</b> order according to {@link Record#compareTo(Record)}.
+     */
+    @NotNull
+    default Iterator<Record> descendingRange(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        if (to == null) {
+            return descendingIterator(from);
+        }
+
+        if (from.compareTo(to) < 0) {
+            return Iters.empty();
+        }
+
+        final Record bound = new Record(to, ByteBuffer.allocate(0));
+        return Iters.downTo(descendingIterator(from), bound);
+    }
+
+    /**
+     * Streams the records within ["from", "to") in ascending order as in {@link #range}.
+     * Implementations may split a parallel stream into sub-ranges scanned concurrently,
+     * the default one scans the range sequentially.
+     *
+     * @param to       key to stop at (exclusive), {@code null} to scan to the end
+     * @param parallel whether the stream is parallel
+     */
+    @NotNull
+    default Stream<Record> stream(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to,
+            boolean parallel) throws IOException {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        range(from, to),
+                        Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL),
+                parallel);
+    }
+
+    /**
+     * Provides a cursor over the records within ["from", "to") as in {@link #range}.
+     * Implementations may reuse the buffers of the cursor, so that scans don't allocate per record.
+     *
+     * @param to key to stop at (exclusive), {@code null} to scan to the end
+     */
+    @NotNull
+    default Cursor cursor(
+            @NotNull ByteBuffer from,
+            @Nullable ByteBuffer to) throws IOException {
+        return Cursor.of(range(from, to));
+    }
+
     /**
      * Obtains {@link Record} corresponding to given key.
      *
@@ -84,6 +167,26 @@ public interface DAO extends Closeable {
         }
     }
 
+    /**
+     * Takes a consistent read-only view of the storage, which must be closed after use.
+     *
+     * @throws UnsupportedOperationException if the implementation has no snapshots
+     */
+    @NotNull
+    default Snapshot snapshot() throws IOException {
+        throw new UnsupportedOperationException("Snapshots are not supported");
+    }
+
+    /**
+     * Saves the current contents of the storage to the given directory, which must be empty or missing,
+     * so that it can be opened as a storage of its own.
+     *
+     * @throws UnsupportedOperationException if the implementation has no checkpoints
+     */
+    default void checkpoint(@NotNull File target) throws IOException {
+        throw new UnsupportedOperationException("Checkpoints are not supported");
+    }
+
     /**
      * Inserts or updates value by given key.
      */
@@ -91,8 +194,60 @@ public interface DAO extends Closeable {
             @NotNull ByteBuffer key,
             @NotNull ByteBuffer value) throws IOException;
 
+    /**
+     * Inserts or updates value by given key, the record is removed once the time to live passes.
+     * An expired record is not seen by reads and is dropped by later compactions.
+     *
+     * @param ttl time to live, must be positive
+     * @throws UnsupportedOperationException if the implementation has no expiring records
+     */
+    default void upsert(
+            @NotNull ByteBuffer key,
+            @NotNull ByteBuffer value,
+            @NotNull Duration ttl) throws IOException {
+        throw new UnsupportedOperationException("Expiring records are not supported");
+    }
+
     /**
      * Removes value by given key.
      */
     void remove(@NotNull ByteBuffer key) throws IOException;
+
+    /**
+     * Removes all the keys starting at "from" key (inclusive) until "to" key (exclusive),
+     * nothing if "from" is not less than "to".
+     * The default implementation removes the keys one by one,
+     * implementations should remove the range as a whole.
+     */
+    default void removeRange(
+            @NotNull ByteBuffer from,
+            @NotNull ByteBuffer to) throws IOException {
+        if (from.compareTo(to) >= 0) {
+            return;
+        }
+
+        // Collected first, so that the removals don't interfere with the scan
+        final List<ByteBuffer> keys = new ArrayList<>();
+        final Iterator<Record> records = range(from, to);
+        while (records.hasNext()) {
+            keys.add(records.next().getKey());
+        }
+        for (final ByteBuffer key : keys) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Applies all the operations of the batch in order.
+     * Implementations may apply the batch atomically, this one doesn't.
+     */
+    default void write(@NotNull final WriteBatch batch) throws IOException {
+        for (final Record record : batch) {
+            if (record.isTombstone()) {
+                remove(record.getKey());
+            } else {
+                upsert(record.getKey(), record.getValue());
+            }
+        }
+    }
 }
@@ -0,0 +1,59 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncDAO} running every call of the storage on an executor.
+ */
+final class ExecutorAsyncDAO implements AsyncDAO {
+    private final DAO dao;
+    private final Executor executor;
+
+    ExecutorAsyncDAO(
+            @NotNull final DAO dao,
+            @NotNull final Executor executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<ByteBuffer> getAsync(@NotNull final ByteBuffer key) {
+        return AsyncCalls.submit(() -> dao.get(key), executor);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> upsertAsync(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return AsyncCalls.submit(() -> {
+            dao.upsert(key, value);
+            return null;
+        }, executor);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> removeAsync(@NotNull final ByteBuffer key) {
+        return AsyncCalls.submit(() -> {
+            dao.remove(key);
+            return null;
+        }, executor);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<List<Record>> rangeAsync(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final int limit) {
+        return AsyncCalls.range(dao, from, to, limit, executor);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * {@link Cursor} over the records of an iterator.
+ */
+final class IteratorCursor implements Cursor {
+    private final Iterator<Record> records;
+    @Nullable
+    private Record current;
+
+    IteratorCursor(@NotNull final Iterator<Record> records) {
+        this.records = records;
+    }
+
+    @Override
+    public boolean next() {
+        current = records.hasNext() ? records.next() : null;
+        return current != null;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return current().getKey();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        return current().getValue();
+    }
+
+    @NotNull
+    private Record current() {
+        if (current == null) {
+            throw new IllegalStateException("Cursor is not at a record");
+        }
+        return current;
+    }
+}
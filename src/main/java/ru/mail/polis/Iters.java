@@ -3,8 +3,12 @@ package ru.mail.polis;
 import com.google.common.base.Functions;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.function.Function;
 
 /**
@@ -41,6 +45,15 @@ public final class Iters {
         return new UntilIterator<>(iter, until);
     }
 
+    /**
+     * Takes elements of an iterator in descending order while they are greater than the bound.
+     */
+    public static <E extends Comparable<E>> Iterator<E> downTo(
+            @NotNull final Iterator<E> iter,
+            @NotNull final E bound) {
+        return new DownToIterator<>(iter, bound);
+    }
+
     public static <E> Iterator<E> collapseEquals(
             @NotNull final Iterator<E> iter,
             @NotNull final Function<E, ?> byKey) {
@@ -51,6 +64,36 @@ public final class Iters {
         return new CollapseEqualsIterator<>(iter);
     }
 
+    /**
+     * Merges iterators over {@link Record}s sorted by key with unique keys each.
+     * For every key only the record from the newest iterator is returned and
+     * tombstones are dropped.
+     *
+     * @param iters iterators from the newest generation to the oldest one
+     */
+    public static Iterator<Record> merge(@NotNull final List<Iterator<Record>> iters) {
+        return new MergeIterator(iters, true, false);
+    }
+
+    /**
+     * Same as {@link #merge(List)} for iterators sorted by key in descending order.
+     *
+     * @param iters iterators from the newest generation to the oldest one
+     */
+    public static Iterator<Record> mergeDescending(@NotNull final List<Iterator<Record>> iters) {
+        return new MergeIterator(iters, true, true);
+    }
+
+    /**
+     * Same as {@link #merge(List)} but keeps the newest tombstones, so the result
+     * still shadows older records, e.g. when compacting a part of the tables.
+     *
+     * @param iters iterators from the newest generation to the oldest one
+     */
+    public static Iterator<Record> mergeKeepingTombstones(@NotNull final List<Iterator<Record>> iters) {
+        return new MergeIterator(iters, false, false);
+    }
+
     private static class UntilIterator<E extends Comparable<E>> implements Iterator<E> {
         private final Iterator<E> iter;
         private final E until;
@@ -80,6 +123,130 @@ public final class Iters {
         }
     }
 
+    private static class DownToIterator<E extends Comparable<E>> implements Iterator<E> {
+        private final Iterator<E> iter;
+        private final E bound;
+
+        private E next;
+
+        DownToIterator(
+                @NotNull final Iterator<E> iter,
+                @NotNull final E bound) {
+            this.iter = iter;
+            this.bound = bound;
+            this.next = iter.hasNext() ? iter.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null && next.compareTo(bound) > 0;
+        }
+
+        @Override
+        public E next() {
+            assert hasNext();
+
+            final E result = this.next;
+            this.next = iter.hasNext() ? iter.next() : null;
+            return result;
+        }
+    }
+
+    private static final class MergeIterator implements Iterator<Record> {
+        private final Queue<Source> sources;
+        private final boolean dropTombstones;
+
+        private Record next;
+
+        MergeIterator(
+                @NotNull final List<Iterator<Record>> iters,
+                final boolean dropTombstones,
+                final boolean descending) {
+            this.dropTombstones = dropTombstones;
+            this.sources = new PriorityQueue<>(
+                    Math.max(1, iters.size()),
+                    descending ? Source.DESCENDING : Comparator.naturalOrder());
+            for (int i = 0; i < iters.size(); i++) {
+                final Iterator<Record> iter = iters.get(i);
+                if (iter.hasNext()) {
+                    sources.add(new Source(iter, i));
+                }
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) {
+                throw new NoSuchElementException("Merged iterators are exhausted");
+            }
+
+            final Record result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            while (!sources.isEmpty()) {
+                final Source newest = sources.remove();
+                final Record candidate = newest.current;
+
+                // Skip older versions of the same key
+                while (!sources.isEmpty() && sources.element().current.compareTo(candidate) == 0) {
+                    requeue(sources.remove());
+                }
+                requeue(newest);
+
+                if (!dropTombstones || !candidate.isTombstone()) {
+                    next = candidate;
+                    return;
+                }
+            }
+        }
+
+        private void requeue(@NotNull final Source source) {
+            if (source.iter.hasNext()) {
+                source.current = source.iter.next();
+                sources.add(source);
+            }
+        }
+    }
+
+    private static final class Source implements Comparable<Source> {
+        /**
+         * Orders sources by key in descending order, then from the newest generation.
+         */
+        private static final Comparator<Source> DESCENDING = (left, right) -> {
+            final int cmp = right.current.compareTo(left.current);
+            return cmp != 0 ? cmp : Integer.compare(left.generation, right.generation);
+        };
+
+        private final Iterator<Record> iter;
+        private final int generation;
+
+        private Record current;
+
+        Source(
+                @NotNull final Iterator<Record> iter,
+                final int generation) {
+            this.iter = iter;
+            this.generation = generation;
+            this.current = iter.next();
+        }
+
+        @Override
+        public int compareTo(@NotNull final Source other) {
+            final int cmp = current.compareTo(other.current);
+            return cmp != 0 ? cmp : Integer.compare(generation, other.generation);
+        }
+    }
+
     private static class CollapseEqualsIterator<E> implements Iterator<E> {
         private final Iterator<E> iter;
         private final Function<E, ?> keyExtractor;
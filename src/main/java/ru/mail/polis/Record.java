@@ -1,9 +1,11 @@
 package ru.mail.polis;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * Record from {@link DAO}.
@@ -12,13 +14,24 @@ import java.util.Objects;
  */
 public class Record implements Comparable<Record> {
     private final ByteBuffer key;
-    private final ByteBuffer value;
+    @Nullable
+    private volatile ByteBuffer value;
+    @Nullable
+    private final Supplier<ByteBuffer> loader;
 
     Record(
             @NotNull final ByteBuffer key,
-            @NotNull final ByteBuffer value) {
+            @Nullable final ByteBuffer value) {
         this.key = key;
         this.value = value;
+        this.loader = null;
+    }
+
+    private Record(
+            @NotNull final ByteBuffer key,
+            @NotNull final Supplier<ByteBuffer> loader) {
+        this.key = key;
+        this.loader = loader;
     }
 
     public static Record of(
@@ -27,12 +40,48 @@ public class Record implements Comparable<Record> {
         return new Record(key, value);
     }
 
+    /**
+     * Creates a deletion marker shadowing older records with the same key.
+     * Tombstones are dropped by {@link Iters#merge(java.util.List)}.
+     */
+    public static Record tombstone(@NotNull final ByteBuffer key) {
+        return new Record(key, (ByteBuffer) null);
+    }
+
+    /**
+     * Creates a record loading its value on first access, so that reading only
+     * the keys doesn't pay for values stored elsewhere.
+     */
+    public static Record lazy(
+            @NotNull final ByteBuffer key,
+            @NotNull final Supplier<ByteBuffer> loader) {
+        return new Record(key, loader);
+    }
+
     public ByteBuffer getKey() {
         return key.asReadOnlyBuffer();
     }
 
+    /**
+     * Returns the value.
+     *
+     * @throws IllegalStateException if the record is a tombstone
+     */
     public ByteBuffer getValue() {
-        return value.asReadOnlyBuffer();
+        ByteBuffer result = value;
+        if (result == null) {
+            if (loader == null) {
+                throw new IllegalStateException("Tombstone has no value");
+            }
+            // Racing loads produce equal values, any of them will do
+            result = loader.get();
+            value = result;
+        }
+        return result.asReadOnlyBuffer();
+    }
+
+    public boolean isTombstone() {
+        return value == null && loader == null;
     }
 
     @Override
@@ -41,12 +90,13 @@ public class Record implements Comparable<Record> {
         if (!(o instanceof Record)) return false;
         final Record record = (Record) o;
         return Objects.equals(key, record.key)
-                && Objects.equals(value, record.value);
+                && isTombstone() == record.isTombstone()
+                && (isTombstone() || getValue().equals(record.getValue()));
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(key, value);
+        return Objects.hash(key, isTombstone() ? null : getValue());
     }
 
     @Override
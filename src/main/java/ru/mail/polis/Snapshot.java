@@ -0,0 +1,118 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Read-only view of a {@link DAO} as of the moment the snapshot was taken.
+ *
+ * <p>Later writes are not seen, while the data seen is retained by the storage
+ * until the snapshot is closed. Snapshots are thread-safe and don't block writers.
+ */
+public interface Snapshot extends Closeable {
+    /**
+     * Provides iterator over {@link Record}s starting at "from" key (inclusive) as in {@link DAO#iterator}.
+     */
+    @NotNull
+    Iterator<Record> iterator(@NotNull ByteBuffer from) throws IOException;
+
+    /**
+     * Provides iterator over {@link Record}s within ["from", "to") as in {@link DAO#range}.
+     */
+    @NotNull
+    default Iterator<Record> range(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        if (to == null) {
+            return iterator(from);
+        }
+
+        if (from.compareTo(to) > 0) {
+            return Iters.empty();
+        }
+
+        final Record bound = new Record(to, ByteBuffer.allocate(0));
+        return Iters.until(iterator(from), bound);
+    }
+
+    /**
+     * Provides iterator over {@link Record}s starting at "from" key (inclusive)
+     * in descending order as in {@link DAO#descendingIterator}.
+     */
+    @NotNull
+    Iterator<Record> descendingIterator(@NotNull ByteBuffer from) throws IOException;
+
+    /**
+     * Provides iterator over {@link Record}s within ("to", "from"] in descending order
+     * as in {@link DAO#descendingRange}.
+     */
+    @NotNull
+    default Iterator<Record> descendingRange(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        if (to == null) {
+            return descendingIterator(from);
+        }
+
+        if (from.compareTo(to) < 0) {
+            return Iters.empty();
+        }
+
+        final Record bound = new Record(to, ByteBuffer.allocate(0));
+        return Iters.downTo(descendingIterator(from), bound);
+    }
+
+    /**
+     * Streams the records within ["from", "to") in ascending order as in {@link #range}.
+     * Implementations may split a parallel stream into sub-ranges scanned concurrently,
+     * the default one scans the range sequentially.
+     *
+     * @param to       key to stop at (exclusive), {@code null} to scan to the end
+     * @param parallel whether the stream is parallel
+     */
+    @NotNull
+    default Stream<Record> stream(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean parallel) throws IOException {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        range(from, to),
+                        Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL),
+                parallel);
+    }
+
+    /**
+     * Provides a cursor over the records within ["from", "to") as in {@link DAO#cursor}.
+     */
+    @NotNull
+    default Cursor cursor(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) throws IOException {
+        return Cursor.of(range(from, to));
+    }
+
+    /**
+     * Obtains the value corresponding to given key.
+     *
+     * @throws NoSuchElementException if no such record
+     */
+    @NotNull
+    ByteBuffer get(@NotNull ByteBuffer key) throws IOException, NoSuchElementException;
+
+    /**
+     * Releases the versions retained for the snapshot, iterators obtained stay valid.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,77 @@
+package ru.mail.polis;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Ordered list of upserts and removals applied by {@link DAO#write(WriteBatch)} together.
+ *
+ * <p>Buffers are referenced rather than copied, so they must not be modified
+ * until the batch is written. Later operations on a key win over earlier ones.
+ */
+public final class WriteBatch implements Iterable<Record> {
+    private final List<Record> records = new ArrayList<>();
+    private long sizeInBytes;
+
+    /**
+     * Adds an upsert of the value by the given key.
+     */
+    @NotNull
+    public WriteBatch upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        records.add(Record.of(key.duplicate(), value.duplicate()));
+        sizeInBytes += key.remaining() + value.remaining();
+        return this;
+    }
+
+    /**
+     * Adds a removal of the given key.
+     */
+    @NotNull
+    public WriteBatch remove(@NotNull final ByteBuffer key) {
+        records.add(Record.tombstone(key.duplicate()));
+        sizeInBytes += key.remaining();
+        return this;
+    }
+
+    /**
+     * Number of operations in the batch.
+     */
+    public int size() {
+        return records.size();
+    }
+
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * Total size of the keys and values in bytes.
+     */
+    public long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Removes all the operations, so the batch can be reused.
+     */
+    public void clear() {
+        records.clear();
+        sizeInBytes = 0;
+    }
+
+    /**
+     * Iterates over the operations in order, removals are tombstones.
+     */
+    @NotNull
+    @Override
+    public Iterator<Record> iterator() {
+        return Collections.unmodifiableList(records).iterator();
+    }
+}
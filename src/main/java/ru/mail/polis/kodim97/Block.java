@@ -0,0 +1,246 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * Data block of an {@link SSTable} with prefix-compressed keys.
+ *
+ * <p>Layout:
+ * <pre>
+ * block        entry* restartOffset(int)* restartCount(int)
+ * entry        shared(varint) unshared(varint) keySuffix sequence(varlong) flags(byte)
+ *              [expiresAt(varlong)] [valueLength(varint) value]
+ * </pre>
+ * A key is stored as the length of the prefix shared with the previous key followed
+ * by the rest of it. Every few entries a restart point stores the key in full, so a seek
+ * binary searches the restart points and decodes a few entries from there.
+ * Reading backwards decodes the entries between restart points forward and returns them reversed.
+ *
+ * <p>The value of an entry flagged as a pointer is the location of the value in the {@link ValueLog}.
+ * An entry flagged as expiring stores the time its value expires at.
+ */
+final class Block {
+    static final byte FLAG_TOMBSTONE = 1;
+    static final byte FLAG_POINTER = 2;
+    static final byte FLAG_EXPIRING = 4;
+
+    private final ByteBuffer buffer;
+    private final int restarts;
+    private final int restartCount;
+
+    Block(@NotNull final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.restartCount = buffer.getInt(buffer.limit() - Integer.BYTES);
+        this.restarts = buffer.limit() - Integer.BYTES - restartCount * Integer.BYTES;
+    }
+
+    /**
+     * Positions a cursor at the first entry.
+     */
+    @NotNull
+    Cursor first() {
+        final Cursor cursor = new Cursor();
+        cursor.reset(0);
+        return cursor;
+    }
+
+    /**
+     * Positions a cursor at the first entry with key not less than the given one,
+     * the cursor is exhausted if there is none.
+     */
+    @NotNull
+    Cursor seek(@NotNull final ByteBuffer key) {
+        // Versions of the key may start before a restart point with the key itself
+        int left = 0;
+        int right = restartCount - 1;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            if (restartKey(mid).compareTo(key) < 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+
+        final Cursor cursor = new Cursor();
+        cursor.reset(right < 0 ? 0 : restartOffset(right));
+        while (cursor.isValid() && cursor.key().compareTo(key) < 0) {
+            cursor.next();
+        }
+        return cursor;
+    }
+
+    int restartCount() {
+        return restartCount;
+    }
+
+    /**
+     * Decodes the entries from the restart point up to the next one, so that the block
+     * can be read backwards an interval at a time.
+     *
+     * @param index    restart point
+     * @param segments resolves value log segments of pointers by their identifiers
+     */
+    @NotNull
+    List<Cell> restartInterval(
+            final int index,
+            @NotNull final LongFunction<ValueLog.Segment> segments) {
+        final int end = index + 1 < restartCount ? restartOffset(index + 1) : restarts;
+        final Cursor cursor = new Cursor();
+        cursor.reset(restartOffset(index));
+        final List<Cell> result = new ArrayList<>();
+        while (cursor.isValid()) {
+            result.add(cursor.cell(segments));
+            if (cursor.data.position() >= end) {
+                break;
+            }
+            cursor.next();
+        }
+        return result;
+    }
+
+    private int restartOffset(final int index) {
+        return buffer.getInt(restarts + index * Integer.BYTES);
+    }
+
+    @NotNull
+    private ByteBuffer restartKey(final int index) {
+        final ByteBuffer entry = buffer.duplicate();
+        entry.position(restartOffset(index));
+        final int shared = Buffers.getVarInt(entry);
+        assert shared == 0;
+        final int length = Buffers.getVarInt(entry);
+        return Buffers.slice(buffer, entry.position(), length);
+    }
+
+    /**
+     * Decodes entries one by one, the key of the current entry is reused for the next ones.
+     */
+    final class Cursor {
+        private final ByteBuffer data;
+        private final ByteBuffer valueView;
+        private byte[] key = new byte[64];
+        private ByteBuffer keyView = ByteBuffer.wrap(key);
+        private boolean valid;
+        private long sequence;
+        private boolean tombstone;
+        private boolean pointer;
+        private long expiresAt;
+        private int valueOffset;
+        private int valueLength;
+
+        private Cursor() {
+            this.data = buffer.duplicate();
+            data.limit(restarts);
+            this.valueView = buffer.duplicate();
+        }
+
+        boolean isValid() {
+            return valid;
+        }
+
+        /**
+         * Returns the key of the current entry, valid until the cursor moves.
+         */
+        @NotNull
+        ByteBuffer key() {
+            assert valid;
+            return keyView.position(0);
+        }
+
+        long sequence() {
+            assert valid;
+            return sequence;
+        }
+
+        boolean isTombstone() {
+            assert valid;
+            return tombstone;
+        }
+
+        boolean isPointer() {
+            assert valid;
+            return pointer;
+        }
+
+        long expiresAt() {
+            assert valid;
+            return expiresAt;
+        }
+
+        /**
+         * Returns the value as stored, valid until the cursor moves.
+         */
+        @NotNull
+        ByteBuffer value() {
+            assert valid && !tombstone;
+            valueView.limit(valueOffset + valueLength).position(valueOffset);
+            return valueView;
+        }
+
+        /**
+         * Returns the current entry, the key is copied while the value is a slice of the block.
+         *
+         * @param segments resolves value log segments of pointers by their identifiers
+         */
+        @NotNull
+        Cell cell(@NotNull final LongFunction<ValueLog.Segment> segments) {
+            assert valid;
+            final ByteBuffer copy = ByteBuffer.wrap(Arrays.copyOf(key, keyView.limit()));
+            if (tombstone) {
+                return Cell.tombstone(copy, sequence);
+            }
+            final ByteBuffer value = Buffers.slice(buffer, valueOffset, valueLength);
+            return pointer
+                    ? Cell.pointer(copy, sequence, value, segments.apply(value.getLong(0)), expiresAt)
+                    : Cell.of(copy, sequence, value, expiresAt);
+        }
+
+        void next() {
+            assert valid;
+            decode();
+        }
+
+        private void reset(final int offset) {
+            data.position(offset);
+            decode();
+        }
+
+        private void decode() {
+            if (!data.hasRemaining()) {
+                valid = false;
+                return;
+            }
+
+            final int shared = Buffers.getVarInt(data);
+            final int unshared = Buffers.getVarInt(data);
+            final int length = shared + unshared;
+            if (length > key.length) {
+                key = Arrays.copyOf(key, Math.max(length, key.length * 2));
+                keyView = ByteBuffer.wrap(key);
+            }
+            data.get(key, shared, unshared);
+            keyView.limit(length);
+
+            sequence = Buffers.getVarLong(data);
+            final byte flags = data.get();
+            tombstone = (flags & FLAG_TOMBSTONE) != 0;
+            pointer = (flags & FLAG_POINTER) != 0;
+            expiresAt = (flags & FLAG_EXPIRING) == 0 ? Cell.NEVER : Buffers.getVarLong(data);
+            if (tombstone) {
+                valueLength = 0;
+            } else {
+                valueLength = Buffers.getVarInt(data);
+            }
+            valueOffset = data.position();
+            data.position(valueOffset + valueLength);
+            valid = true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of table blocks copied off-heap, shared by all the tables of a storage.
+ *
+ * <p>Each shard is a segmented LRU: new blocks enter the probation segment and only
+ * blocks hit again are promoted to the protected one. A scan reads each block once,
+ * so it churns the probation segment and leaves the hot blocks in place.
+ *
+ * <p>Evicted blocks are never reused, their memory is released once the last reader
+ * referencing them is gone, so cached slices stay valid for records and iterators.
+ */
+final class BlockCache {
+    private static final int SHARDS = 16;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final Shard[] shards;
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates the cache.
+     *
+     * @param capacity maximum size of cached blocks in bytes, 0 disables caching
+     */
+    BlockCache(final long capacity) {
+        assert capacity >= 0;
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(capacity / SHARDS);
+        }
+    }
+
+    /**
+     * Allocates a unique identifier of a table to key its blocks with.
+     */
+    long newTableId() {
+        return ids.incrementAndGet();
+    }
+
+    /**
+     * Returns the cached block or {@code null} counting a miss.
+     */
+    @Nullable
+    ByteBuffer get(
+            final long tableId,
+            final int block) {
+        final long key = key(tableId, block);
+        final ByteBuffer result = shard(key).get(key);
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Caches a copy of the block.
+     *
+     * @return the cached copy or the source if the block doesn't fit
+     */
+    @NotNull
+    ByteBuffer put(
+            final long tableId,
+            final int block,
+            @NotNull final ByteBuffer source) {
+        final long key = key(tableId, block);
+        final Shard shard = shard(key);
+        if (source.remaining() > shard.capacity) {
+            return source;
+        }
+
+        final ByteBuffer copy = ByteBuffer.allocateDirect(source.remaining());
+        copy.put(source.duplicate());
+        copy.flip();
+        return shard.put(key, copy.asReadOnlyBuffer());
+    }
+
+    @NotNull
+    CacheStats stats() {
+        long size = 0;
+        for (final Shard shard : shards) {
+            size += shard.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private static long key(
+            final long tableId,
+            final int block) {
+        return tableId << Integer.SIZE | block;
+    }
+
+    @NotNull
+    private Shard shard(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return shards[(int) (h & (SHARDS - 1))];
+    }
+
+    private final class Shard {
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<Long, ByteBuffer> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Long, ByteBuffer> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long probationSize;
+        private long protectedSize;
+
+        Shard(final long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+        }
+
+        synchronized long size() {
+            return probationSize + protectedSize;
+        }
+
+        @Nullable
+        synchronized ByteBuffer get(final long key) {
+            final ByteBuffer hot = protectedSegment.get(key);
+            if (hot != null) {
+                return hot;
+            }
+
+            final ByteBuffer warm = probation.remove(key);
+            if (warm == null) {
+                return null;
+            }
+
+            // Second hit promotes the block demoting the coldest protected ones
+            probationSize -= warm.capacity();
+            protectedSegment.put(key, warm);
+            protectedSize += warm.capacity();
+            final Iterator<Map.Entry<Long, ByteBuffer>> coldest = protectedSegment.entrySet().iterator();
+            while (protectedSize > protectedCapacity && coldest.hasNext()) {
+                final Map.Entry<Long, ByteBuffer> demoted = coldest.next();
+                coldest.remove();
+                protectedSize -= demoted.getValue().capacity();
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationSize += demoted.getValue().capacity();
+            }
+            evict();
+            return warm;
+        }
+
+        @NotNull
+        synchronized ByteBuffer put(
+                final long key,
+                @NotNull final ByteBuffer block) {
+            final ByteBuffer existing = protectedSegment.containsKey(key)
+                    ? protectedSegment.get(key)
+                    : probation.get(key);
+            if (existing != null) {
+                return existing;
+            }
+
+            probation.put(key, block);
+            probationSize += block.capacity();
+            evict();
+            return block;
+        }
+
+        private void evict() {
+            evict(probation.entrySet().iterator(), true);
+            evict(protectedSegment.entrySet().iterator(), false);
+        }
+
+        private void evict(
+                @NotNull final Iterator<Map.Entry<Long, ByteBuffer>> eldest,
+                final boolean fromProbation) {
+            while (probationSize + protectedSize > capacity && eldest.hasNext()) {
+                final long size = eldest.next().getValue().capacity();
+                eldest.remove();
+                if (fromProbation) {
+                    probationSize -= size;
+                } else {
+                    protectedSize -= size;
+                }
+                evictions.increment();
+            }
+        }
+    }
+}
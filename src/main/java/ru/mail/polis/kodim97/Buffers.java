@@ -0,0 +1,111 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility methods for {@link ByteBuffer}s.
+ */
+final class Buffers {
+    private Buffers() {
+        // Don't instantiate
+    }
+
+    /**
+     * Makes a view of the buffer region without copying.
+     *
+     * @param buffer source buffer
+     * @param offset absolute offset of the region
+     * @param length length of the region
+     * @return independent view of the region
+     */
+    @NotNull
+    static ByteBuffer slice(
+            @NotNull final ByteBuffer buffer,
+            final int offset,
+            final int length) {
+        final ByteBuffer result = buffer.duplicate();
+        result.limit(offset + length).position(offset);
+        return result.slice();
+    }
+
+    /**
+     * Copies remaining bytes of the source without touching its position, so that
+     * the source may be shared with other threads.
+     *
+     * @param src source buffer
+     * @param dst buffer to reuse, a bigger one is allocated if it is too small
+     * @return buffer holding the copy from the start to the limit
+     */
+    @NotNull
+    static ByteBuffer copy(
+            @NotNull final ByteBuffer src,
+            @NotNull final ByteBuffer dst) {
+        final int length = src.remaining();
+        final ByteBuffer result = dst.capacity() >= length
+                ? dst.clear()
+                : ByteBuffer.allocate(Math.max(length, dst.capacity() * 2));
+        final int offset = src.position();
+        for (int i = 0; i < length; i++) {
+            result.put(i, src.get(offset + i));
+        }
+        return result.limit(length);
+    }
+
+    /**
+     * Returns buffer able to accept extra bytes, reallocating it if needed.
+     */
+    @NotNull
+    static ByteBuffer ensureRemaining(
+            @NotNull final ByteBuffer buffer,
+            final int extra) {
+        if (buffer.remaining() >= extra) {
+            return buffer;
+        }
+
+        final int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        final ByteBuffer result = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        result.put(buffer);
+        return result;
+    }
+
+    /**
+     * Writes the unsigned value in 7-bit groups, the lowest first.
+     */
+    static void putVarLong(
+            @NotNull final ByteBuffer buffer,
+            final long value) {
+        long rest = value;
+        while ((rest & ~0x7FL) != 0) {
+            buffer.put((byte) (rest & 0x7F | 0x80));
+            rest >>>= 7;
+        }
+        buffer.put((byte) rest);
+    }
+
+    /**
+     * Reads the value written by {@link #putVarLong} at the buffer position.
+     */
+    static long getVarLong(@NotNull final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+    }
+
+    static void putVarInt(
+            @NotNull final ByteBuffer buffer,
+            final int value) {
+        putVarLong(buffer, value & 0xFFFFFFFFL);
+    }
+
+    static int getVarInt(@NotNull final ByteBuffer buffer) {
+        return (int) getVarLong(buffer);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.mail.polis.kodim97;
+
+/**
+ * Point-in-time statistics of a cache.
+ */
+public final class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long sizeInBytes;
+
+    CacheStats(
+            final long hits,
+            final long misses,
+            final long evictions,
+            final long sizeInBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.sizeInBytes = sizeInBytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Bytes currently held by the cache.
+     */
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Share of lookups served from the cache, 0 if there were none.
+     */
+    public double getHitRate() {
+        final long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + sizeInBytes;
+    }
+}
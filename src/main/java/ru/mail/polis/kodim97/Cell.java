@@ -0,0 +1,203 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+/**
+ * Version of a key written with the given sequence number: either a value, a pointer
+ * to the value in the {@link ValueLog} or a tombstone.
+ *
+ * <p>A value may expire at the given wall clock time, from then on it reads as a tombstone.
+ */
+final class Cell {
+    /**
+     * Expiration time of the values which never expire.
+     */
+    static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Orders cells by key, then from the newest version to the oldest.
+     */
+    static final Comparator<Cell> COMPARATOR = (left, right) -> {
+        final int cmp = left.key.compareTo(right.key);
+        return cmp == 0 ? Long.compare(right.sequence, left.sequence) : cmp;
+    };
+
+    @NotNull
+    private final ByteBuffer key;
+    private final long sequence;
+    @Nullable
+    private final ByteBuffer value;
+    @Nullable
+    private final ValueLog.Segment segment;
+    private final long expiresAt;
+
+    private Cell(
+            @NotNull final ByteBuffer key,
+            final long sequence,
+            @Nullable final ByteBuffer value,
+            @Nullable final ValueLog.Segment segment,
+            final long expiresAt) {
+        this.key = key;
+        this.sequence = sequence;
+        this.value = value;
+        this.segment = segment;
+        this.expiresAt = expiresAt;
+    }
+
+    @NotNull
+    static Cell of(
+            @NotNull final ByteBuffer key,
+            final long sequence,
+            @NotNull final ByteBuffer value) {
+        return new Cell(key, sequence, value, null, NEVER);
+    }
+
+    /**
+     * Creates a version with the value expiring at the given time in milliseconds since the epoch.
+     */
+    @NotNull
+    static Cell of(
+            @NotNull final ByteBuffer key,
+            final long sequence,
+            @NotNull final ByteBuffer value,
+            final long expiresAt) {
+        return new Cell(key, sequence, value, null, expiresAt);
+    }
+
+    @NotNull
+    static Cell tombstone(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        return new Cell(key, sequence, null, null, NEVER);
+    }
+
+    /**
+     * Creates a version with the value stored in the segment.
+     */
+    @NotNull
+    static Cell pointer(
+            @NotNull final ByteBuffer key,
+            final long sequence,
+            @NotNull final ByteBuffer pointer,
+            @NotNull final ValueLog.Segment segment,
+            final long expiresAt) {
+        return new Cell(key, sequence, pointer, segment, expiresAt);
+    }
+
+    /**
+     * Creates a search key preceding all the versions of the key newer than the sequence.
+     */
+    @NotNull
+    static Cell probe(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        return new Cell(key, sequence, null, null, NEVER);
+    }
+
+    @NotNull
+    ByteBuffer key() {
+        return key.asReadOnlyBuffer();
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    boolean isTombstone() {
+        return value == null;
+    }
+
+    /**
+     * Returns the time the value expires at in milliseconds since the epoch, {@link #NEVER} if it doesn't.
+     */
+    long expiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Checks whether the version reads as a tombstone at the given time, being one or having expired.
+     */
+    boolean isRemovedAt(final long now) {
+        return value == null || expiresAt <= now;
+    }
+
+    boolean isPointer() {
+        return segment != null;
+    }
+
+    /**
+     * Returns the segment holding the value of a pointer.
+     */
+    @NotNull
+    ValueLog.Segment segment() {
+        assert segment != null;
+        return segment;
+    }
+
+    /**
+     * Returns the value as stored in tables, that is the pointer for values in the log.
+     *
+     * @throws IllegalStateException if the cell is a tombstone
+     */
+    @NotNull
+    ByteBuffer value() {
+        if (value == null) {
+            throw new IllegalStateException("Tombstone has no value");
+        }
+        return value.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the key reusing the buffer if it is big enough.
+     *
+     * @return buffer holding the key from the start to the limit
+     */
+    @NotNull
+    ByteBuffer copyKey(@NotNull final ByteBuffer dst) {
+        return Buffers.copy(key, dst);
+    }
+
+    /**
+     * Copies the value as stored reusing the buffer if it is big enough.
+     *
+     * @return buffer holding the value from the start to the limit
+     */
+    @NotNull
+    ByteBuffer copyValue(@NotNull final ByteBuffer dst) {
+        if (value == null) {
+            throw new IllegalStateException("Tombstone has no value");
+        }
+        return Buffers.copy(value, dst);
+    }
+
+    boolean hasKey(@NotNull final ByteBuffer other) {
+        return key.equals(other);
+    }
+
+    @NotNull
+    Record toRecord() {
+        if (value == null) {
+            return Record.tombstone(key);
+        }
+        if (segment == null) {
+            return Record.of(key, value);
+        }
+
+        final ValueLog.Segment source = segment;
+        final ByteBuffer pointer = value;
+        return Record.lazy(key, () -> {
+            try {
+                return source.read(pointer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read value from " + source, e);
+            }
+        });
+    }
+}
@@ -0,0 +1,41 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses table blocks, implementations are thread-safe.
+ */
+interface Codec {
+    /**
+     * Compresses the remaining bytes of the source into the destination,
+     * both buffers are advanced.
+     *
+     * @return {@code false} if the result doesn't fit into the destination
+     */
+    boolean compress(
+            @NotNull ByteBuffer source,
+            @NotNull ByteBuffer destination);
+
+    /**
+     * Restores the remaining bytes of the source filling the destination, both buffers are advanced.
+     *
+     * @throws IllegalStateException if the source is corrupted
+     */
+    void decompress(
+            @NotNull ByteBuffer source,
+            @NotNull ByteBuffer destination);
+
+    @NotNull
+    static Codec of(@NotNull final Compression compression) {
+        switch (compression) {
+            case DEFLATE:
+                return DeflateCodec.INSTANCE;
+            case LZ:
+                return LzCodec.INSTANCE;
+            default:
+                throw new IllegalArgumentException("No codec for " + compression);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which tables to merge next.
+ *
+ * <p>Tables are given in read order: by level, then from the newest generation to
+ * the oldest. A strategy must only merge tables which are contiguous in this order
+ * up to tables not overlapping the inputs, so that the output can take their place.
+ */
+interface CompactionStrategy {
+    /**
+     * Picks the next compaction.
+     *
+     * @param tables tables in read order
+     * @param busy   tables being compacted already which must not be picked
+     * @return the task or {@code null} if nothing to do
+     */
+    @Nullable
+    CompactionTask pick(
+            @NotNull List<SSTable> tables,
+            @NotNull Set<SSTable> busy);
+
+    /**
+     * Estimates the number of tables waiting to be merged, which writes are throttled by.
+     *
+     * @param tables tables in read order
+     */
+    int backlog(@NotNull List<SSTable> tables);
+
+    @NotNull
+    static CompactionStrategy of(@NotNull final Config config) {
+        switch (config.getCompactionStyle()) {
+            case SIZE_TIERED:
+                return new SizeTieredStrategy(config.getCompactionThreshold());
+            case LEVELED:
+                return new LeveledStrategy(config.getCompactionThreshold(), config.getTableSize());
+            default:
+                throw new IllegalArgumentException("Unsupported compaction: " + config.getCompactionStyle());
+        }
+    }
+
+    /**
+     * Picks a table whose values have all expired and which no table older than it overlaps,
+     * so that it is dropped without being read.
+     *
+     * @param tables tables in read order
+     * @param busy   tables being compacted already which must not be picked
+     * @param now    current time in milliseconds since the epoch
+     * @return the task or {@code null} if there is no such table
+     */
+    @Nullable
+    static CompactionTask pickExpired(
+            @NotNull final List<SSTable> tables,
+            @NotNull final Set<SSTable> busy,
+            final long now) {
+        for (final SSTable table : tables) {
+            final List<SSTable> inputs = List.of(table);
+            if (table.expiresAt() <= now && !busy.contains(table) && isBottommost(tables, inputs)) {
+                return new CompactionTask(inputs, table.level(), true, table.sizeInBytes());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks that no table older than the inputs may hold their keys, so tombstones
+     * produced by the compaction shadow nothing and can be purged.
+     */
+    static boolean isBottommost(
+            @NotNull final List<SSTable> tables,
+            @NotNull final Collection<SSTable> inputs) {
+        ByteBuffer from = null;
+        ByteBuffer to = null;
+        int first = tables.size();
+        for (final SSTable input : inputs) {
+            first = Math.min(first, tables.indexOf(input));
+            if (input.isEmpty()) {
+                continue;
+            }
+            if (from == null || input.minKey().compareTo(from) < 0) {
+                from = input.minKey();
+            }
+            if (to == null || input.maxKey().compareTo(to) > 0) {
+                to = input.maxKey();
+            }
+        }
+        if (from == null) {
+            return true;
+        }
+
+        for (final SSTable table : tables.subList(first, tables.size())) {
+            if (!inputs.contains(table) && table.overlaps(from, to)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,15 @@
+package ru.mail.polis.kodim97;
+
+/**
+ * Selects how {@link LsmDAO} merges flushed tables in background.
+ */
+public enum CompactionStyle {
+    /**
+     * Merges runs of adjacent tables of similar size, cheap on writes.
+     */
+    SIZE_TIERED,
+    /**
+     * Keeps levels of non-overlapping tables growing tenfold, cheap on reads.
+     */
+    LEVELED
+}
@@ -0,0 +1,249 @@
+package ru.mail.polis.kodim97;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+/**
+ * Merges a set of tables into new ones of the given level.
+ *
+ * <p>Range tombstones are carried over to the outputs, each output taking the part
+ * of the tombstones between its first key and the first key of the next one, so that
+ * outputs don't overlap. An input removed as a whole by a newer range tombstone of
+ * another input is not read at all, and so are dropped the tombstones of bottommost
+ * compactions no snapshot needs. Neither is read an input of a bottommost compaction
+ * whose values have all expired, unless it shadows versions of older inputs.
+ */
+final class CompactionTask {
+    private static final Logger log = LoggerFactory.getLogger(CompactionTask.class);
+
+    private final List<SSTable> inputs;
+    private final int outputLevel;
+    private final boolean bottommost;
+    private final long maxTableSize;
+
+    /**
+     * Describes the compaction.
+     *
+     * @param inputs       tables to merge from the newest to the oldest
+     * @param outputLevel  level of the produced tables
+     * @param bottommost   whether older tables can't hold the keys, so tombstones are purged
+     * @param maxTableSize approximate size to split the output at
+     */
+    CompactionTask(
+            @NotNull final List<SSTable> inputs,
+            final int outputLevel,
+            final boolean bottommost,
+            final long maxTableSize) {
+        assert !inputs.isEmpty();
+        this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+        this.outputLevel = outputLevel;
+        this.bottommost = bottommost;
+        this.maxTableSize = maxTableSize;
+    }
+
+    @NotNull
+    List<SSTable> inputs() {
+        return inputs;
+    }
+
+    /**
+     * Writes the merged tables, versions not seen by any reader are discarded.
+     * Large values and values of mostly dead segments are moved to the value log,
+     * which must be pinned until the outputs are published.
+     *
+     * @param files     supplier of fresh table file names
+     * @param config    format options of the output tables
+     * @param cache     cache of the output tables blocks
+     * @param values    value log of the storage
+     * @param snapshots sequence numbers of live snapshots in ascending order
+     * @return the output tables, possibly none
+     */
+    @NotNull
+    List<SSTable> run(
+            @NotNull final Supplier<Path> files,
+            @NotNull final Config config,
+            @NotNull final BlockCache cache,
+            @NotNull final ValueLog values,
+            @NotNull final long[] snapshots) throws IOException {
+        final List<RangeTombstone> inputRanges = new ArrayList<>();
+        for (final SSTable input : inputs) {
+            inputRanges.addAll(input.rangeTombstones().tombstones());
+        }
+
+        final long now = System.currentTimeMillis();
+        long generation = Long.MIN_VALUE;
+        final List<Iterator<Cell>> iterators = new ArrayList<>(inputs.size());
+        final List<RangeTombstone> ranges = new ArrayList<>();
+        for (int i = 0; i < inputs.size(); i++) {
+            final SSTable input = inputs.get(i);
+            generation = Math.max(generation, input.generation());
+            if (isRemoved(input, inputRanges, snapshots)) {
+                log.debug("Dropped {} removed by a range", input);
+                continue;
+            }
+            if (isExpired(i, now)) {
+                log.debug("Dropped expired {}", input);
+                continue;
+            }
+            iterators.add(input.cells(ByteBuffer.allocate(0)));
+            ranges.addAll(input.rangeTombstones().tombstones());
+        }
+
+        final PeekingIterator<Cell> merged = Iterators.peekingIterator(
+                Versions.retained(
+                        Iterators.mergeSorted(iterators, Cell.COMPARATOR),
+                        snapshots,
+                        bottommost,
+                        RangeTombstones.of(ranges)));
+        if (bottommost) {
+            // Nothing older is left to hide from the snapshots taken after the tombstone
+            ranges.removeIf(range -> snapshots.length == 0 || snapshots[0] >= range.sequence());
+        }
+
+        final List<SSTable> outputs = new ArrayList<>();
+        ByteBuffer lower = null;
+        while (merged.hasNext() || outputs.isEmpty() && !ranges.isEmpty()) {
+            final Path file = files.get();
+            final Chunk chunk = new Chunk(merged, ranges, lower);
+            SSTableWriter.write(file, values.separate(chunk), chunk::ranges, config, generation, outputLevel);
+            outputs.add(SSTable.open(file, cache, values));
+            lower = chunk.upper;
+        }
+        return outputs;
+    }
+
+    /**
+     * Checks whether a range tombstone newer than the table covers it, so that no reader sees any of it.
+     */
+    private static boolean isRemoved(
+            @NotNull final SSTable table,
+            @NotNull final List<RangeTombstone> ranges,
+            @NotNull final long[] snapshots) {
+        if (table.isEmpty()) {
+            return false;
+        }
+
+        for (final RangeTombstone range : ranges) {
+            if (range.sequence() > table.maxSequence()
+                    && (snapshots.length == 0 || snapshots[0] >= range.sequence())
+                    && range.covers(table.minKey(), table.maxKey())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the input would be purged as a whole, its values having expired
+     * with nothing older to shadow.
+     */
+    private boolean isExpired(
+            final int index,
+            final long now) {
+        final SSTable input = inputs.get(index);
+        if (!bottommost || input.expiresAt() > now) {
+            return false;
+        }
+        if (input.isEmpty()) {
+            return true;
+        }
+
+        for (final SSTable older : inputs.subList(index + 1, inputs.size())) {
+            if (older.overlaps(input.minKey(), input.maxKey())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return inputs + " -> L" + outputLevel + (bottommost ? " (bottommost)" : "");
+    }
+
+    /**
+     * Takes cells from the merged stream until the output table is big enough.
+     *
+     * <p>Versions of a key are never split between tables, otherwise tables
+     * of the same generation would overlap.
+     */
+    private final class Chunk implements Iterator<Cell> {
+        private final PeekingIterator<Cell> merged;
+        private final List<RangeTombstone> ranges;
+        /**
+         * Keys the output covers, {@code null} for no bound.
+         */
+        @Nullable
+        private final ByteBuffer lower;
+        @Nullable
+        private ByteBuffer upper;
+        private long size;
+        private ByteBuffer lastKey;
+
+        Chunk(
+                @NotNull final PeekingIterator<Cell> merged,
+                @NotNull final List<RangeTombstone> ranges,
+                @Nullable final ByteBuffer lower) {
+            this.merged = merged;
+            this.ranges = ranges;
+            this.lower = lower;
+        }
+
+        /**
+         * Cuts the parts of the range tombstones up to the key the next output starts with.
+         */
+        @NotNull
+        List<RangeTombstone> ranges() {
+            upper = merged.hasNext() ? merged.peek().key() : null;
+            final List<RangeTombstone> result = new ArrayList<>();
+            for (final RangeTombstone range : ranges) {
+                ByteBuffer from = range.from();
+                if (lower != null && lower.compareTo(from) > 0) {
+                    from = lower;
+                }
+                ByteBuffer to = range.to();
+                if (upper != null && upper.compareTo(to) < 0) {
+                    to = upper;
+                }
+                if (from.compareTo(to) < 0) {
+                    result.add(new RangeTombstone(from, to, range.sequence()));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return merged.hasNext() && (size < maxTableSize || merged.peek().hasKey(lastKey));
+        }
+
+        @Override
+        public Cell next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("Output table is complete");
+            }
+
+            final Cell cell = merged.next();
+            lastKey = cell.key();
+            size += lastKey.remaining();
+            if (!cell.isTombstone()) {
+                size += cell.value().remaining();
+            }
+            return cell;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Selects how {@link LsmDAO} compresses table blocks.
+ *
+ * <p>The choice is recorded in each table, so changing it affects new tables only.
+ */
+public enum Compression {
+    /**
+     * Stores blocks as is.
+     */
+    NONE(0),
+    /**
+     * Deflate of the JDK, compact but costly on writes.
+     */
+    DEFLATE(1),
+    /**
+     * Byte-oriented LZ77, several times faster than {@link #DEFLATE} with a lower ratio.
+     */
+    LZ(2);
+
+    private final int id;
+
+    Compression(final int id) {
+        this.id = id;
+    }
+
+    /**
+     * Identifier stored in table files, unlike ordinals it never changes.
+     */
+    int id() {
+        return id;
+    }
+
+    @NotNull
+    static Compression byId(final int id) {
+        for (final Compression compression : values()) {
+            if (compression.id == id) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression: " + id);
+    }
+}
@@ -0,0 +1,477 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tuning options of {@link LsmDAO}.
+ */
+public final class Config {
+    private static final Config DEFAULTS = builder().build();
+
+    private final long flushThreshold;
+    private final int blockSize;
+    private final int restartInterval;
+    private final Compression compression;
+    private final CompactionStyle compactionStyle;
+    private final int compactionThreads;
+    private final int compactionThreshold;
+    private final long tableSize;
+    private final double bloomFalsePositiveRate;
+    private final long blockCacheSize;
+    private final long rowCacheSize;
+    private final int valueThreshold;
+    private final long valueLogSegmentSize;
+    private final double valueLogGcRatio;
+    private final SyncMode walSyncMode;
+    private final long walSyncIntervalMillis;
+    private final int ioThreads;
+    private final int ioQueueSize;
+    private final int shards;
+    private final int slowdownBacklog;
+    private final int stopBacklog;
+
+    private Config(@NotNull final Builder builder) {
+        this.flushThreshold = builder.flushThreshold;
+        this.blockSize = builder.blockSize;
+        this.restartInterval = builder.restartInterval;
+        this.compression = builder.compression;
+        this.compactionStyle = builder.compactionStyle;
+        this.compactionThreads = builder.compactionThreads;
+        this.compactionThreshold = builder.compactionThreshold;
+        this.tableSize = builder.tableSize;
+        this.bloomFalsePositiveRate = builder.bloomFalsePositiveRate;
+        this.blockCacheSize = builder.blockCacheSize;
+        this.rowCacheSize = builder.rowCacheSize;
+        this.valueThreshold = builder.valueThreshold;
+        this.valueLogSegmentSize = builder.valueLogSegmentSize;
+        this.valueLogGcRatio = builder.valueLogGcRatio;
+        this.walSyncMode = builder.walSyncMode;
+        this.walSyncIntervalMillis = builder.walSyncIntervalMillis;
+        this.ioThreads = builder.ioThreads;
+        this.ioQueueSize = builder.ioQueueSize;
+        this.shards = builder.shards;
+        this.slowdownBacklog = builder.slowdownBacklog;
+        this.stopBacklog = builder.stopBacklog;
+    }
+
+    @NotNull
+    public static Config defaults() {
+        return DEFAULTS;
+    }
+
+    @NotNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Memtable size in bytes triggering its flush to disk.
+     */
+    public long getFlushThreshold() {
+        return flushThreshold;
+    }
+
+    /**
+     * Approximate size in bytes of table data blocks.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Number of entries between keys stored in full within a block, the rest share prefixes.
+     */
+    public int getRestartInterval() {
+        return restartInterval;
+    }
+
+    /**
+     * Codec of blocks in new tables.
+     */
+    @NotNull
+    public Compression getCompression() {
+        return compression;
+    }
+
+    @NotNull
+    public CompactionStyle getCompactionStyle() {
+        return compactionStyle;
+    }
+
+    /**
+     * Number of background threads merging tables.
+     */
+    public int getCompactionThreads() {
+        return compactionThreads;
+    }
+
+    /**
+     * Number of similar tables (or flushed ones for {@link CompactionStyle#LEVELED}) to merge.
+     */
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    /**
+     * Target size in bytes of tables produced by {@link CompactionStyle#LEVELED} compaction.
+     */
+    public long getTableSize() {
+        return tableSize;
+    }
+
+    /**
+     * Target false positive rate of per-table Bloom filters skipping absent keys.
+     */
+    public double getBloomFalsePositiveRate() {
+        return bloomFalsePositiveRate;
+    }
+
+    /**
+     * Memory in bytes for the caches serving lookups, 0 disables them. The row cache takes
+     * its {@link #getRowCacheSize()} on heap, the rest holds hot table blocks off-heap.
+     */
+    public long getBlockCacheSize() {
+        return blockCacheSize;
+    }
+
+    /**
+     * Heap memory in bytes for the latest values of hot keys served by lookups, 0 disables the cache.
+     * It is a share of {@link #getBlockCacheSize()}, so that both caches draw from one memory budget.
+     */
+    public long getRowCacheSize() {
+        return rowCacheSize;
+    }
+
+    /**
+     * Size in bytes from which values are kept in the value log rather than in tables,
+     * 0 keeps all the values in tables.
+     */
+    public int getValueThreshold() {
+        return valueThreshold;
+    }
+
+    /**
+     * Size in bytes of value log segment files.
+     */
+    public long getValueLogSegmentSize() {
+        return valueLogSegmentSize;
+    }
+
+    /**
+     * Share of unreferenced bytes in a value log segment from which compactions move its live values.
+     */
+    public double getValueLogGcRatio() {
+        return valueLogGcRatio;
+    }
+
+    @NotNull
+    public SyncMode getWalSyncMode() {
+        return walSyncMode;
+    }
+
+    /**
+     * Period of write-ahead log syncs in {@link SyncMode#PERIODIC} mode.
+     */
+    public long getWalSyncIntervalMillis() {
+        return walSyncIntervalMillis;
+    }
+
+    /**
+     * Number of threads serving asynchronous calls which have to wait for the disk.
+     */
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    /**
+     * Number of asynchronous calls waiting for an I/O thread, further ones are rejected.
+     */
+    public int getIoQueueSize() {
+        return ioQueueSize;
+    }
+
+    /**
+     * Number of independent stores the keys are hash partitioned over, fixed when the storage
+     * is created. The shards share the block cache and the I/O pool and split the flush threshold
+     * and the row cache size evenly, other options apply to each of them. A batch must keep
+     * to the keys of one shard, and snapshots are consistent only within each shard.
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Number of tables waiting for compaction from which each write is delayed by a millisecond.
+     * These are flushed tables for {@link CompactionStyle#LEVELED} compaction and the largest
+     * run of similar tables for {@link CompactionStyle#SIZE_TIERED} one.
+     */
+    public int getSlowdownBacklog() {
+        return slowdownBacklog;
+    }
+
+    /**
+     * Number of tables waiting for compaction from which writes wait for compactions to catch up.
+     */
+    public int getStopBacklog() {
+        return stopBacklog;
+    }
+
+    /**
+     * Returns the options of one of the {@link #getShards()} shards, which split the memory
+     * the memtables and the row cache may take.
+     */
+    @NotNull
+    Config perShard() {
+        final Builder builder = builder();
+        builder.flushThreshold = Math.max(1, flushThreshold / shards);
+        builder.blockSize = blockSize;
+        builder.restartInterval = restartInterval;
+        builder.compression = compression;
+        builder.compactionStyle = compactionStyle;
+        builder.compactionThreads = compactionThreads;
+        builder.compactionThreshold = compactionThreshold;
+        builder.tableSize = tableSize;
+        builder.bloomFalsePositiveRate = bloomFalsePositiveRate;
+        builder.blockCacheSize = blockCacheSize;
+        builder.rowCacheSize = rowCacheSize / shards;
+        builder.valueThreshold = valueThreshold;
+        builder.valueLogSegmentSize = valueLogSegmentSize;
+        builder.valueLogGcRatio = valueLogGcRatio;
+        builder.walSyncMode = walSyncMode;
+        builder.walSyncIntervalMillis = walSyncIntervalMillis;
+        builder.ioThreads = ioThreads;
+        builder.ioQueueSize = ioQueueSize;
+        builder.slowdownBacklog = slowdownBacklog;
+        builder.stopBacklog = stopBacklog;
+        return builder.build();
+    }
+
+    /**
+     * Builder of {@link Config}s, unset options keep their defaults.
+     */
+    public static final class Builder {
+        private long flushThreshold = 4L * 1024 * 1024;
+        private int blockSize = 4 * 1024;
+        private int restartInterval = 16;
+        private Compression compression = Compression.LZ;
+        private CompactionStyle compactionStyle = CompactionStyle.SIZE_TIERED;
+        private int compactionThreads = 1;
+        private int compactionThreshold = 4;
+        private long tableSize = 8L * 1024 * 1024;
+        private double bloomFalsePositiveRate = 0.01;
+        private long blockCacheSize = 16L * 1024 * 1024;
+        private long rowCacheSize;
+        private int valueThreshold;
+        private long valueLogSegmentSize = 64L * 1024 * 1024;
+        private double valueLogGcRatio = 0.5;
+        private SyncMode walSyncMode = SyncMode.PERIODIC;
+        private long walSyncIntervalMillis = 100;
+        private int ioThreads = 16;
+        private int ioQueueSize = 1024;
+        private int shards = 1;
+        private int slowdownBacklog = 20;
+        private int stopBacklog = 36;
+
+        private Builder() {
+            // Use Config.builder()
+        }
+
+        @NotNull
+        public Builder flushThreshold(final long flushThreshold) {
+            if (flushThreshold <= 0) {
+                throw new IllegalArgumentException("Non-positive flush threshold: " + flushThreshold);
+            }
+            this.flushThreshold = flushThreshold;
+            return this;
+        }
+
+        @NotNull
+        public Builder blockSize(final int blockSize) {
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("Non-positive block size: " + blockSize);
+            }
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder restartInterval(final int restartInterval) {
+            if (restartInterval <= 0) {
+                throw new IllegalArgumentException("Non-positive restart interval: " + restartInterval);
+            }
+            this.restartInterval = restartInterval;
+            return this;
+        }
+
+        @NotNull
+        public Builder compression(@NotNull final Compression compression) {
+            this.compression = compression;
+            return this;
+        }
+
+        @NotNull
+        public Builder compactionStyle(@NotNull final CompactionStyle compactionStyle) {
+            this.compactionStyle = compactionStyle;
+            return this;
+        }
+
+        @NotNull
+        public Builder compactionThreads(final int compactionThreads) {
+            if (compactionThreads <= 0) {
+                throw new IllegalArgumentException("Non-positive compaction threads: " + compactionThreads);
+            }
+            this.compactionThreads = compactionThreads;
+            return this;
+        }
+
+        @NotNull
+        public Builder compactionThreshold(final int compactionThreshold) {
+            if (compactionThreshold < 2) {
+                throw new IllegalArgumentException("Compaction threshold is less than 2: " + compactionThreshold);
+            }
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        @NotNull
+        public Builder tableSize(final long tableSize) {
+            if (tableSize <= 0) {
+                throw new IllegalArgumentException("Non-positive table size: " + tableSize);
+            }
+            this.tableSize = tableSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder bloomFalsePositiveRate(final double bloomFalsePositiveRate) {
+            if (!(bloomFalsePositiveRate > 0 && bloomFalsePositiveRate < 1)) {
+                throw new IllegalArgumentException("False positive rate out of (0, 1): " + bloomFalsePositiveRate);
+            }
+            this.bloomFalsePositiveRate = bloomFalsePositiveRate;
+            return this;
+        }
+
+        @NotNull
+        public Builder blockCacheSize(final long blockCacheSize) {
+            if (blockCacheSize < 0) {
+                throw new IllegalArgumentException("Negative block cache size: " + blockCacheSize);
+            }
+            this.blockCacheSize = blockCacheSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder rowCacheSize(final long rowCacheSize) {
+            if (rowCacheSize < 0) {
+                throw new IllegalArgumentException("Negative row cache size: " + rowCacheSize);
+            }
+            this.rowCacheSize = rowCacheSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder valueThreshold(final int valueThreshold) {
+            if (valueThreshold < 0) {
+                throw new IllegalArgumentException("Negative value threshold: " + valueThreshold);
+            }
+            this.valueThreshold = valueThreshold;
+            return this;
+        }
+
+        @NotNull
+        public Builder valueLogSegmentSize(final long valueLogSegmentSize) {
+            if (valueLogSegmentSize <= 0 || valueLogSegmentSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Segment size out of (0, 2 GB): " + valueLogSegmentSize);
+            }
+            this.valueLogSegmentSize = valueLogSegmentSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder valueLogGcRatio(final double valueLogGcRatio) {
+            if (!(valueLogGcRatio > 0 && valueLogGcRatio < 1)) {
+                throw new IllegalArgumentException("Garbage ratio out of (0, 1): " + valueLogGcRatio);
+            }
+            this.valueLogGcRatio = valueLogGcRatio;
+            return this;
+        }
+
+        @NotNull
+        public Builder walSyncMode(@NotNull final SyncMode walSyncMode) {
+            this.walSyncMode = walSyncMode;
+            return this;
+        }
+
+        @NotNull
+        public Builder walSyncIntervalMillis(final long walSyncIntervalMillis) {
+            if (walSyncIntervalMillis <= 0) {
+                throw new IllegalArgumentException("Non-positive sync interval: " + walSyncIntervalMillis);
+            }
+            this.walSyncIntervalMillis = walSyncIntervalMillis;
+            return this;
+        }
+
+        @NotNull
+        public Builder ioThreads(final int ioThreads) {
+            if (ioThreads <= 0) {
+                throw new IllegalArgumentException("Non-positive I/O threads: " + ioThreads);
+            }
+            this.ioThreads = ioThreads;
+            return this;
+        }
+
+        @NotNull
+        public Builder ioQueueSize(final int ioQueueSize) {
+            if (ioQueueSize <= 0) {
+                throw new IllegalArgumentException("Non-positive I/O queue size: " + ioQueueSize);
+            }
+            this.ioQueueSize = ioQueueSize;
+            return this;
+        }
+
+        @NotNull
+        public Builder shards(final int shards) {
+            if (shards <= 0) {
+                throw new IllegalArgumentException("Non-positive shards: " + shards);
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        @NotNull
+        public Builder slowdownBacklog(final int slowdownBacklog) {
+            if (slowdownBacklog <= 0) {
+                throw new IllegalArgumentException("Non-positive slowdown backlog: " + slowdownBacklog);
+            }
+            this.slowdownBacklog = slowdownBacklog;
+            return this;
+        }
+
+        @NotNull
+        public Builder stopBacklog(final int stopBacklog) {
+            if (stopBacklog <= 0) {
+                throw new IllegalArgumentException("Non-positive stop backlog: " + stopBacklog);
+            }
+            this.stopBacklog = stopBacklog;
+            return this;
+        }
+
+        @NotNull
+        public Config build() {
+            if (rowCacheSize > blockCacheSize) {
+                throw new IllegalArgumentException(
+                        "Row cache size " + rowCacheSize + " exceeds block cache size " + blockCacheSize);
+            }
+            if (stopBacklog < slowdownBacklog) {
+                throw new IllegalArgumentException(
+                        "Stop backlog " + stopBacklog + " is less than slowdown backlog " + slowdownBacklog);
+            }
+            // Writers would wait for a compaction which never starts
+            if (stopBacklog < compactionThreshold) {
+                throw new IllegalArgumentException(
+                        "Stop backlog " + stopBacklog + " is less than compaction threshold " + compactionThreshold);
+            }
+            return new Config(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link Codec} on top of the zlib bundled with the JDK.
+ *
+ * <p>Deflaters and inflaters hold native memory and are expensive to create,
+ * so each thread keeps its own pair and resets it between blocks.
+ */
+final class DeflateCodec implements Codec {
+    static final DeflateCodec INSTANCE = new DeflateCodec();
+
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    private DeflateCodec() {
+        // Use INSTANCE
+    }
+
+    @Override
+    public boolean compress(
+            @NotNull final ByteBuffer source,
+            @NotNull final ByteBuffer destination) {
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(source);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (!destination.hasRemaining()) {
+                return false;
+            }
+            deflater.deflate(destination);
+        }
+        return true;
+    }
+
+    @Override
+    public void decompress(
+            @NotNull final ByteBuffer source,
+            @NotNull final ByteBuffer destination) {
+        final Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(source);
+        try {
+            while (destination.hasRemaining()) {
+                if (inflater.inflate(destination) == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IllegalStateException("Truncated block");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted block", e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Utility methods for storage directories.
+ */
+final class Directories {
+    private static final boolean WINDOWS = System.getProperty("os.name").startsWith("Windows");
+
+    private Directories() {
+        // Don't instantiate
+    }
+
+    /**
+     * Forces the entries of the directory to disk, so that files created or renamed
+     * in it survive a power loss. Forcing a file makes its contents durable but not its name.
+     */
+    static void sync(@NotNull final Path dir) throws IOException {
+        if (WINDOWS) {
+            // Directories can't be opened as channels there
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+}
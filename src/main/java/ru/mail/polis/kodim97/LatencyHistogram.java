@@ -0,0 +1,104 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds in the spirit of HdrHistogram.
+ *
+ * <p>Buckets are log-linear: each power of two range is split into {@value #SUB_BUCKETS}
+ * equal buckets, so reported percentiles are within about 3% of the exact ones whatever
+ * the magnitude. Recording only increments atomics, it neither locks nor allocates.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records the time elapsed since the start.
+     *
+     * @param startNanos {@link System#nanoTime()} taken at the start of the operation
+     */
+    void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Takes statistics of the values recorded so far, concurrent recordings may be partially seen.
+     */
+    @NotNull
+    LatencyStats snapshot() {
+        final long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        final long maxNanos = max.get();
+        return new LatencyStats(
+                count,
+                count == 0 ? 0 : total.sum() / count,
+                percentile(copy, count, 0.5, maxNanos),
+                percentile(copy, count, 0.99, maxNanos),
+                percentile(copy, count, 0.999, maxNanos),
+                maxNanos);
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * Returns the largest value falling into the bucket.
+     */
+    static long highest(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private static long percentile(
+            @NotNull final long[] counts,
+            final long count,
+            final double quantile,
+            final long max) {
+        if (count == 0) {
+            return 0;
+        }
+
+        final long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max);
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,60 @@
+package ru.mail.polis.kodim97;
+
+/**
+ * Point-in-time statistics of operation latencies, all the times are in nanoseconds.
+ */
+public final class LatencyStats {
+    private final long count;
+    private final long mean;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    LatencyStats(
+            final long count,
+            final long mean,
+            final long p50,
+            final long p99,
+            final long p999,
+            final long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    /**
+     * Number of recorded operations.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanNanos() {
+        return mean;
+    }
+
+    public long getP50Nanos() {
+        return p50;
+    }
+
+    public long getP99Nanos() {
+        return p99;
+    }
+
+    public long getP999Nanos() {
+        return p999;
+    }
+
+    public long getMaxNanos() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + count + " mean=" + mean + " p50=" + p50 + " p99=" + p99 + " p999=" + p999 + " max=" + max;
+    }
+}
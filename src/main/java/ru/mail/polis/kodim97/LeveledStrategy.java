@@ -0,0 +1,196 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps tables in levels of non-overlapping tables, each level ten times larger than the previous.
+ *
+ * <p>Level 0 holds flushed tables. Once there are enough of them, the oldest ones are merged with
+ * the overlapping tables of level 1. A level over its capacity pushes one table at a time into the
+ * next level, round-robin over the key space. A read touches at most one table per level above 0.
+ */
+final class LeveledStrategy implements CompactionStrategy {
+    private static final int LEVEL_MULTIPLIER = 10;
+
+    private final int level0Threshold;
+    private final long tableSize;
+    /**
+     * Largest key compacted from each level, to spread compactions over the key space.
+     */
+    private final Map<Integer, ByteBuffer> pointers = new HashMap<>();
+
+    /**
+     * Creates the strategy.
+     *
+     * @param level0Threshold number of flushed tables triggering their compaction
+     * @param tableSize       size of the tables in levels above 0
+     */
+    LeveledStrategy(
+            final int level0Threshold,
+            final long tableSize) {
+        assert level0Threshold > 0 && tableSize > 0;
+        this.level0Threshold = level0Threshold;
+        this.tableSize = tableSize;
+    }
+
+    @Nullable
+    @Override
+    public synchronized CompactionTask pick(
+            @NotNull final List<SSTable> tables,
+            @NotNull final Set<SSTable> busy) {
+        final List<List<SSTable>> levels = new ArrayList<>();
+        for (final SSTable table : tables) {
+            while (levels.size() <= table.level()) {
+                levels.add(new ArrayList<>());
+            }
+            levels.get(table.level()).add(table);
+        }
+        if (levels.isEmpty()) {
+            return null;
+        }
+
+        final CompactionTask flushed = pickLevel0(tables, levels, busy);
+        if (flushed != null) {
+            return flushed;
+        }
+
+        long capacity = tableSize * LEVEL_MULTIPLIER;
+        for (int level = 1; level < levels.size(); level++) {
+            if (size(levels.get(level)) > capacity) {
+                final CompactionTask task = pickLevel(tables, levels, level, busy);
+                if (task != null) {
+                    return task;
+                }
+            }
+            capacity *= LEVEL_MULTIPLIER;
+        }
+        return null;
+    }
+
+    /**
+     * Counts the flushed tables, which are read one by one until merged into level 1.
+     */
+    @Override
+    public int backlog(@NotNull final List<SSTable> tables) {
+        int result = 0;
+        for (final SSTable table : tables) {
+            if (table.level() == 0) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Nullable
+    private CompactionTask pickLevel0(
+            @NotNull final List<SSTable> tables,
+            @NotNull final List<List<SSTable>> levels,
+            @NotNull final Set<SSTable> busy) {
+        final List<SSTable> level0 = levels.get(0);
+        if (level0.size() < level0Threshold) {
+            return null;
+        }
+
+        // Only the oldest tables may be pushed below the newer ones
+        final List<SSTable> inputs = new ArrayList<>();
+        for (int i = level0.size() - 1; i >= 0 && !busy.contains(level0.get(i)); i--) {
+            inputs.add(0, level0.get(i));
+        }
+        if (inputs.size() < level0Threshold) {
+            return null;
+        }
+
+        return withOverlapping(tables, levels, inputs, 1, busy);
+    }
+
+    @Nullable
+    private CompactionTask pickLevel(
+            @NotNull final List<SSTable> tables,
+            @NotNull final List<List<SSTable>> levels,
+            final int level,
+            @NotNull final Set<SSTable> busy) {
+        final List<SSTable> candidates = new ArrayList<>(levels.get(level));
+        candidates.removeIf(table -> table.isEmpty() || busy.contains(table));
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        candidates.sort((a, b) -> a.minKey().compareTo(b.minKey()));
+
+        // Continue after the previously compacted key
+        final ByteBuffer pointer = pointers.get(level);
+        SSTable chosen = candidates.get(0);
+        if (pointer != null) {
+            for (final SSTable candidate : candidates) {
+                if (candidate.minKey().compareTo(pointer) > 0) {
+                    chosen = candidate;
+                    break;
+                }
+            }
+        }
+
+        final List<SSTable> inputs = new ArrayList<>();
+        inputs.add(chosen);
+        final CompactionTask task = withOverlapping(tables, levels, inputs, level + 1, busy);
+        if (task != null) {
+            pointers.put(level, chosen.maxKey());
+        }
+        return task;
+    }
+
+    /**
+     * Adds tables of the output level overlapping the inputs.
+     *
+     * @return the task or {@code null} if some of the tables are busy
+     */
+    @Nullable
+    private CompactionTask withOverlapping(
+            @NotNull final List<SSTable> tables,
+            @NotNull final List<List<SSTable>> levels,
+            @NotNull final List<SSTable> inputs,
+            final int outputLevel,
+            @NotNull final Set<SSTable> busy) {
+        ByteBuffer from = null;
+        ByteBuffer to = null;
+        for (final SSTable input : inputs) {
+            if (input.isEmpty()) {
+                continue;
+            }
+            if (from == null || input.minKey().compareTo(from) < 0) {
+                from = input.minKey();
+            }
+            if (to == null || input.maxKey().compareTo(to) > 0) {
+                to = input.maxKey();
+            }
+        }
+
+        if (from != null && outputLevel < levels.size()) {
+            for (final SSTable table : levels.get(outputLevel)) {
+                if (table.overlaps(from, to)) {
+                    if (busy.contains(table)) {
+                        return null;
+                    }
+                    inputs.add(table);
+                }
+            }
+        }
+
+        final boolean bottommost = CompactionStrategy.isBottommost(tables, inputs);
+        return new CompactionTask(inputs, outputLevel, bottommost, tableSize);
+    }
+
+    private static long size(@NotNull final List<SSTable> tables) {
+        long result = 0;
+        for (final SSTable table : tables) {
+            result += table.sizeInBytes();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.AsyncCalls;
+import ru.mail.polis.AsyncDAO;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link AsyncDAO} of a {@link LsmDAO} which keeps the caller's thread off the disk.
+ *
+ * <p>Lookups served by the row cache or the memtables and memtable writes run inline. Lookups
+ * reaching the tables, range scans, log syncs and flushes go to the bounded I/O pool, which
+ * rejects calls once its queue is full. Writes complete after the sync their
+ * {@link SyncMode} requires, a sync covering all the writes logged before it, and
+ * while writes are throttled only once flushes and compactions catch up.
+ */
+final class LsmAsyncDAO implements AsyncDAO {
+    private final LsmDAO dao;
+    private final Executor io;
+
+    LsmAsyncDAO(
+            @NotNull final LsmDAO dao,
+            @NotNull final Executor io) {
+        this.dao = dao;
+        this.io = io;
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<ByteBuffer> getAsync(@NotNull final ByteBuffer key) {
+        return dao.getAsync(key);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> upsertAsync(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) {
+        return dao.applyAsync(Record.of(key, value));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> removeAsync(@NotNull final ByteBuffer key) {
+        return dao.applyAsync(Record.tombstone(key));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<List<Record>> rangeAsync(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final int limit) {
+        return AsyncCalls.range(dao, from, to, limit, io);
+    }
+}
@@ -0,0 +1,1519 @@
+package ru.mail.polis.kodim97;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.AsyncCalls;
+import ru.mail.polis.AsyncDAO;
+import ru.mail.polis.Cursor;
+import ru.mail.polis.DAO;
+import ru.mail.polis.Iters;
+import ru.mail.polis.Record;
+import ru.mail.polis.Snapshot;
+import ru.mail.polis.WriteBatch;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Log-structured {@link DAO} implementation.
+ *
+ * <p>Writes go to an off-heap {@link MemTable} which is frozen once it grows over
+ * {@link Config#getFlushThreshold()} and flushed to an immutable {@link SSTable} in background,
+ * while writes go on to a fresh one. Flushed tables are merged in background according to
+ * the {@link CompactionStrategy}. Writes wait if the fresh memtable fills up before the frozen
+ * one is flushed, and are throttled while the compaction backlog is over
+ * {@link Config#getSlowdownBacklog()} and {@link Config#getStopBacklog()}.
+ *
+ * <p>Every write is appended to the {@link WriteAheadLog} of the current memtable
+ * first and synced according to {@link Config#getWalSyncMode()}. Logs left by
+ * a crash are replayed and flushed on open.
+ *
+ * <p>Each write gets a sequence number and adds a new version of the key. Readers
+ * see the versions up to the sequence number they started with, while flushes and
+ * compactions keep older versions only as long as a {@link Snapshot} needs them.
+ * A range removal adds a single {@link RangeTombstone} hiding the older versions
+ * of all the keys within the range, which compactions then drop. Expiring values
+ * read as tombstones once they expire, and a table whose values have all expired
+ * is dropped unread as soon as nothing older depends on it.
+ *
+ * <p>Lookups of hot keys are served by the {@link RowCache} if {@link Config#getRowCacheSize()}
+ * is set, every write invalidates the keys it touches.
+ *
+ * <p>Values over {@link Config#getValueThreshold()} are moved to the {@link ValueLog}
+ * when flushed, so compactions only rewrite pointers to them. Records read from tables
+ * load such values on first access.
+ *
+ * <p>The tables are listed in the {@link Manifest}, so opening neither guesses them
+ * from the directory nor reads more of them than the footers. As tables and value log
+ * segments are immutable, {@link #checkpoint} hard links them instead of copying.
+ *
+ * <p>Operation latencies and storage statistics are available from {@link #getMetrics()}
+ * and as a {@link StorageMetricsMXBean} in the platform MBean server while the storage is open.
+ *
+ * <p>{@link #async()} serves the calls which would wait for the disk on a bounded pool
+ * of {@link Config#getIoThreads()} threads.
+ */
+public final class LsmDAO implements DAO {
+    private static final Logger log = LoggerFactory.getLogger(LsmDAO.class);
+    private static final String SUFFIX = ".sst";
+    private static final long SLOWDOWN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long STALL_CHECK_MILLIS = 100;
+    private static final long FLUSH_RETRY_MILLIS = 1000;
+
+    private final File storage;
+    private final Config config;
+    /**
+     * Writers share the lock while table set updates hold it exclusively.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Guards memtable freezing, stalled writers wait on it.
+     */
+    private final Object flushLock = new Object();
+    /**
+     * Guards deleting tables and value log segments from checkpoints linking them.
+     */
+    private final Object fileLock = new Object();
+    /**
+     * Source of memtable generations and table file names.
+     */
+    private final AtomicLong generations;
+
+    private final BlockCache blockCache;
+    private final RowCache rowCache;
+    private final Manifest manifest;
+    private final StorageMetrics metrics;
+    @Nullable
+    private final ObjectName metricsName;
+    private final ValueLog valueLog;
+    private final CompactionStrategy strategy;
+    private final ExecutorService compactions;
+    private final ScheduledThreadPoolExecutor flusher;
+    /**
+     * Tables being compacted, guarded by itself.
+     */
+    private final Set<SSTable> compacting = new HashSet<>();
+    @Nullable
+    private final ScheduledExecutorService syncer;
+    private final ThreadPoolExecutor io;
+    /**
+     * Whether the I/O pool belongs to this storage rather than to all the shards of a {@link ShardedDAO}.
+     */
+    private final boolean ownsIo;
+    private final AsyncDAO async;
+    /**
+     * Reference counts of live snapshot sequence numbers, guarded by itself.
+     */
+    private final NavigableMap<Long, Integer> snapshots = new TreeMap<>();
+
+    private volatile TableSet tables;
+    /**
+     * Sequence number of the last write seen by readers, advanced by writers holding the log monitor.
+     */
+    private volatile long sequence;
+    /**
+     * Log of the current memtable, swapped together with it.
+     */
+    private volatile WriteAheadLog wal;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /**
+     * Log of the memtable frozen last, guarded by the flush lock.
+     */
+    @Nullable
+    private WriteAheadLog flushingLog;
+    /**
+     * Failure of the last flush, stalled writers give up on it.
+     */
+    @Nullable
+    private volatile IOException flushFailure;
+    /**
+     * Number of tables waiting for compaction, updated with the table set.
+     */
+    private volatile int backlog;
+
+    /**
+     * Opens the storage in the given directory.
+     *
+     * @param storage directory to persist the data to
+     * @param config  tuning options
+     */
+    public LsmDAO(
+            @NotNull final File storage,
+            @NotNull final Config config) throws IOException {
+        this(storage, config, newBlockCache(config), null);
+    }
+
+    /**
+     * Opens a shard of the storage.
+     *
+     * @param storage    directory to persist the data to
+     * @param config     tuning options of the shard
+     * @param blockCache cache of the table blocks of all the shards
+     * @param io         pool serving the asynchronous calls to all the shards, {@code null} to create one
+     */
+    LsmDAO(
+            @NotNull final File storage,
+            @NotNull final Config config,
+            @NotNull final BlockCache blockCache,
+            @Nullable final ThreadPoolExecutor io) throws IOException {
+        this.storage = storage;
+        this.config = config;
+        this.blockCache = blockCache;
+        this.rowCache = new RowCache(config.getRowCacheSize());
+        this.metrics = new StorageMetrics(() -> tables, () -> backlog, blockCache, rowCache);
+        this.valueLog = ValueLog.open(storage.toPath(), config);
+
+        long maxGeneration = 0;
+        final Set<Long> found = new HashSet<>();
+        final List<Path> logs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storage.toPath())) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                if (SSTableWriter.isTemporary(file)) {
+                    Files.delete(file);
+                } else if (name.endsWith(SUFFIX)) {
+                    found.add(parseId(file, SUFFIX));
+                } else if (name.endsWith(WriteAheadLog.SUFFIX)) {
+                    logs.add(file);
+                    maxGeneration = Math.max(maxGeneration, parseId(file, WriteAheadLog.SUFFIX));
+                } else if (name.equals(ShardedDAO.LAYOUT)
+                        || name.startsWith(ShardedDAO.PREFIX) && Files.isDirectory(file)) {
+                    throw new IOException("Storage in " + storage + " is sharded");
+                }
+            }
+        }
+
+        this.manifest = Manifest.open(storage.toPath(), found);
+        final Set<Long> live = manifest.tables();
+        for (final long id : found) {
+            if (!live.contains(id)) {
+                // Written by a flush or a compaction which didn't complete, or an input of a complete one
+                Files.delete(tableFile(id));
+                log.info("Deleted table {} missing from the manifest of {}", id, storage);
+            }
+        }
+        final List<SSTable> ssTables = openTables(live, found);
+        for (final SSTable table : ssTables) {
+            maxGeneration = Math.max(maxGeneration, Math.max(parseId(table.file(), SUFFIX), table.generation()));
+        }
+        recover(logs, ssTables);
+        ssTables.sort(TableSet.ORDER);
+        valueLog.collect(ssTables);
+        for (final SSTable table : ssTables) {
+            sequence = Math.max(sequence, table.maxSequence());
+        }
+
+        this.generations = new AtomicLong(maxGeneration + 1);
+        final long generation = generations.getAndIncrement();
+        this.tables = new TableSet(new MemTable(generation), null, ssTables);
+        this.wal = WriteAheadLog.create(logFile(generation));
+        this.strategy = CompactionStrategy.of(config);
+        this.backlog = strategy.backlog(ssTables);
+        this.flusher = new ScheduledThreadPoolExecutor(
+                1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("flush-%d")
+                        .setDaemon(true)
+                        .build());
+        // Retries of failed flushes are left to close()
+        flusher.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.compactions = Executors.newFixedThreadPool(
+                config.getCompactionThreads(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("compaction-%d")
+                        .setDaemon(true)
+                        .build());
+        if (config.getWalSyncMode() == SyncMode.PERIODIC) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("wal-sync-%d")
+                            .setDaemon(true)
+                            .build());
+            syncer.scheduleWithFixedDelay(
+                    this::syncLog,
+                    config.getWalSyncIntervalMillis(),
+                    config.getWalSyncIntervalMillis(),
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+        this.ownsIo = io == null;
+        this.io = io == null ? newIoPool(config) : io;
+        this.async = new LsmAsyncDAO(this, this.io);
+        this.metricsName = registerMetrics();
+        log.debug("Opened {} tables in {}", ssTables.size(), storage);
+        for (final SSTable table : ssTables) {
+            scheduleExpiry(table);
+        }
+        scheduleCompaction();
+    }
+
+    /**
+     * Provides records as of the call, later writes are not seen.
+     */
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
+        final long start = System.nanoTime();
+        final View view = view();
+        try {
+            // The table set holds every version up to the sequence, nothing is pinned
+            return iterator(view.tables, from, view.sequence);
+        } finally {
+            metrics.iterator.recordSince(start);
+        }
+    }
+
+    /**
+     * Streams records as of the call, a parallel stream scans the parts of the range
+     * between table blocks concurrently.
+     */
+    @NotNull
+    @Override
+    public Stream<Record> stream(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean parallel) {
+        return StreamSupport.stream(RangeSpliterator.of(List.of(view()), from, to), parallel);
+    }
+
+    /**
+     * Returns the tables and the sequence number a read starting now sees, every read starts with it.
+     */
+    @NotNull
+    View view() {
+        TableSet current;
+        long visible;
+        // Writes seen by the sequence must be in the tables, which a freeze in between would swap
+        do {
+            current = tables;
+            visible = sequence;
+        } while (current != tables);
+        return new View(current, visible);
+    }
+
+    /**
+     * Provides records as of the call in descending order, reading tables backwards.
+     */
+    @NotNull
+    @Override
+    public Iterator<Record> descendingIterator(@NotNull final ByteBuffer from) {
+        final long start = System.nanoTime();
+        final View view = view();
+        try {
+            return descendingIterator(view.tables, from, view.sequence);
+        } finally {
+            metrics.iterator.recordSince(start);
+        }
+    }
+
+    /**
+     * Provides records as of the call without allocating per record, values stored
+     * in the {@link ValueLog} are read on access.
+     */
+    @NotNull
+    @Override
+    public Cursor cursor(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final long start = System.nanoTime();
+        final View view = view();
+        try {
+            return cursor(view.tables, from, to, view.sequence);
+        } finally {
+            metrics.iterator.recordSince(start);
+        }
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws NoSuchElementException {
+        final long start = System.nanoTime();
+        try {
+            final long now = System.currentTimeMillis();
+            final ByteBuffer cached = rowCache.get(key, now);
+            return cached == null ? load(key, view(), now) : cached;
+        } finally {
+            metrics.get.recordSince(start);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Snapshot snapshot() {
+        synchronized (snapshots) {
+            final long visible = sequence;
+            snapshots.merge(visible, 1, Integer::sum);
+            return new LsmSnapshot(visible);
+        }
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            apply(Collections.singletonList(Record.of(key, value)));
+        } finally {
+            metrics.upsert.recordSince(start);
+        }
+    }
+
+    /**
+     * Writes the value with a single log entry of its own, as batches don't carry expiration times.
+     */
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            @NotNull final Duration ttl) throws IOException {
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Non-positive TTL: " + ttl);
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final long now = System.currentTimeMillis();
+            final long millis = ttl.toMillis();
+            final long expiresAt = millis >= Cell.NEVER - now ? Cell.NEVER : now + millis;
+            throttle();
+            commit(appendSingle((current, memTable, next) -> {
+                final long position = current.appendExpiring(key, value, expiresAt, next);
+                memTable.upsert(key, value, next, expiresAt);
+                rowCache.invalidate(key, next);
+                return position;
+            }));
+        } finally {
+            metrics.upsert.recordSince(start);
+        }
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) throws IOException {
+        final long start = System.nanoTime();
+        try {
+            apply(Collections.singletonList(Record.tombstone(key)));
+        } finally {
+            metrics.remove.recordSince(start);
+        }
+    }
+
+    /**
+     * Removes the keys with a single range tombstone however many of them there are.
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to) throws IOException {
+        if (from.compareTo(to) >= 0) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            throttle();
+            commit(appendSingle((current, memTable, next) -> {
+                final long position = current.appendRange(from, to, next);
+                memTable.removeRange(from, to, next);
+                rowCache.invalidateAll(next);
+                return position;
+            }));
+        } finally {
+            metrics.remove.recordSince(start);
+        }
+    }
+
+    /**
+     * Flushes the memtable, then hard links the tables and the value log segments they reference
+     * into the target and lists the tables in a manifest of its own. The checkpoint holds
+     * the writes completed before the call, and costs a file system operation per file.
+     * The target must be on the same file system as the storage.
+     */
+    @Override
+    public void checkpoint(@NotNull final File target) throws IOException {
+        final Path dir = target.toPath();
+        if (Files.exists(dir)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                if (files.iterator().hasNext()) {
+                    throw new IOException("Checkpoint target " + target + " is not empty");
+                }
+            }
+        } else {
+            Files.createDirectories(dir);
+        }
+
+        flushOnFlusher();
+        synchronized (fileLock) {
+            final List<SSTable> live = tables.ssTables;
+            for (final SSTable table : live) {
+                Files.createLink(dir.resolve(table.file().getFileName()), table.file());
+            }
+            valueLog.link(live, dir);
+            Manifest.create(dir, ids(live));
+            log.info("Checkpointed {} tables of {} to {}", live.size(), storage, target);
+        }
+    }
+
+    /**
+     * Applies the batch with a single log entry, so it is recovered entirely or not at all,
+     * and to a single memtable, so it is flushed together.
+     */
+    @Override
+    public void write(@NotNull final WriteBatch batch) throws IOException {
+        if (!batch.isEmpty()) {
+            apply(batch);
+        }
+    }
+
+    /**
+     * Returns the non-blocking view of the storage, valid until it is closed.
+     */
+    @NotNull
+    public AsyncDAO async() {
+        return async;
+    }
+
+    /**
+     * Returns the statistics of the table block cache, which all the shards of a {@link ShardedDAO} share.
+     */
+    @NotNull
+    public CacheStats getBlockCacheStats() {
+        return blockCache.stats();
+    }
+
+    /**
+     * Returns the runtime statistics, also published through JMX.
+     */
+    @NotNull
+    public StorageMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Flushes the memtable and releases the resources, every one of them even if another fails.
+     * The logs are deleted only once everything is flushed. Closing again does nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        unregisterMetrics();
+
+        // Let accepted asynchronous calls complete, a shared pool is stopped before the shards are closed
+        IOException failure = ownsIo ? closeStep(null, () -> shutdown(io, storage)) : null;
+
+        // Let a running flush complete, the rest is flushed here
+        failure = closeStep(failure, () -> {
+            flusher.shutdown();
+            try {
+                if (!flusher.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("Flush in {} did not finish in time", storage);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for flush");
+            }
+        });
+        final boolean flushed = failure == null;
+        if (flushed) {
+            failure = closeStep(null, this::flush);
+        }
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+
+        // The logs of the writes not flushed are replayed on open
+        final WriteAheadLog frozenLog;
+        synchronized (flushLock) {
+            frozenLog = flushingLog;
+        }
+        if (frozenLog != null) {
+            failure = closeStep(failure, frozenLog::close);
+        }
+        final boolean empty = flushed && failure == null;
+        failure = closeStep(failure, () -> {
+            wal.close();
+            if (empty) {
+                Files.delete(wal.file());
+            }
+        });
+
+        // Let running compactions complete
+        failure = closeStep(failure, () -> {
+            compactions.shutdown();
+            try {
+                if (!compactions.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("Compactions in {} did not finish in time", storage);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for compactions");
+            }
+        });
+        failure = closeStep(failure, manifest::close);
+        failure = closeStep(failure, valueLog::close);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Runs a step of {@link #close()}, its failure is added to the earlier ones.
+     *
+     * @return the first failure with the following ones suppressed, {@code null} if none
+     */
+    @Nullable
+    private static IOException closeStep(
+            @Nullable final IOException failure,
+            @NotNull final CloseStep step) {
+        try {
+            step.run();
+            return failure;
+        } catch (IOException e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+            return failure;
+        }
+    }
+
+    /**
+     * Creates the cache of table blocks, the row cache takes its share of the cache memory from it.
+     */
+    @NotNull
+    static BlockCache newBlockCache(@NotNull final Config config) {
+        return new BlockCache(config.getBlockCacheSize() - config.getRowCacheSize());
+    }
+
+    /**
+     * Creates the pool of threads serving asynchronous calls which would wait for the disk.
+     */
+    @NotNull
+    static ThreadPoolExecutor newIoPool(@NotNull final Config config) {
+        return new ThreadPoolExecutor(
+                config.getIoThreads(),
+                config.getIoThreads(),
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getIoQueueSize()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("io-%d")
+                        .setDaemon(true)
+                        .build(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Stops the I/O pool letting the accepted calls complete.
+     */
+    static void shutdown(
+            @NotNull final ExecutorService io,
+            @NotNull final File storage) throws IOException {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Asynchronous calls to {} did not finish in time", storage);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for asynchronous calls");
+        }
+    }
+
+    @NotNull
+    static Iterator<Record> iterator(
+            @NotNull final TableSet tables,
+            @NotNull final ByteBuffer from,
+            final long sequence) {
+        final RangeTombstones ranges = tables.ranges();
+        final List<Table> sources = tables.all();
+        final List<Iterator<Record>> iterators = new ArrayList<>(sources.size());
+        for (final Table table : sources) {
+            iterators.add(table.iterator(from, sequence, ranges));
+        }
+        return Iters.merge(iterators);
+    }
+
+    @NotNull
+    private static Iterator<Record> descendingIterator(
+            @NotNull final TableSet tables,
+            @NotNull final ByteBuffer from,
+            final long sequence) {
+        final RangeTombstones ranges = tables.ranges();
+        final List<Table> sources = tables.all();
+        final List<Iterator<Record>> iterators = new ArrayList<>(sources.size());
+        for (final Table table : sources) {
+            iterators.add(table.descendingIterator(from, sequence, ranges));
+        }
+        return Iters.mergeDescending(iterators);
+    }
+
+    @NotNull
+    private static Cursor cursor(
+            @NotNull final TableSet tables,
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final long sequence) {
+        final List<Table> sources = tables.all();
+        final List<TableCursor> cursors = new ArrayList<>(sources.size());
+        for (final Table table : sources) {
+            cursors.add(table.cursor(from));
+        }
+        return new MergedCursor(cursors, sequence, tables.ranges(), to);
+    }
+
+    @NotNull
+    private static ByteBuffer get(
+            @NotNull final TableSet tables,
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        final Cell cell = find(tables, key, sequence, System.currentTimeMillis());
+        if (cell == null) {
+            throw new NoSuchElementException("Not found");
+        }
+        return cell.toRecord().getValue();
+    }
+
+    /**
+     * Finds the version of the key seen by the snapshot.
+     *
+     * @return the version or {@code null} if the key is removed or expired by the given time
+     */
+    @Nullable
+    private static Cell find(
+            @NotNull final TableSet tables,
+            @NotNull final ByteBuffer key,
+            final long sequence,
+            final long now) {
+        // Versions older than the range tombstone are hidden, whichever table they are in
+        final long removed = tables.ranges().covering(key, sequence);
+        // Tables are checked from the newest, most of them are skipped by filters
+        for (final Table table : tables.all()) {
+            final Cell cell = table.get(key, sequence);
+            if (cell != null) {
+                return cell.isRemovedAt(now) || cell.sequence() < removed ? null : cell;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns live snapshot sequence numbers in ascending order.
+     */
+    @NotNull
+    private long[] pinned() {
+        synchronized (snapshots) {
+            return snapshots.keySet().stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+
+    /**
+     * Serves the lookup inline if the row cache or the memtables hold the key, neither of which
+     * waits for the disk. Lookups reaching the tables, whose filters and indexes are paged in
+     * from the mapping and whose values may be in the {@link ValueLog}, run on the I/O pool.
+     */
+    @NotNull
+    CompletableFuture<ByteBuffer> getAsync(@NotNull final ByteBuffer key) {
+        final long start = System.nanoTime();
+        final long now = System.currentTimeMillis();
+        final ByteBuffer cached = rowCache.get(key, now);
+        if (cached != null) {
+            metrics.get.recordSince(start);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final View view = view();
+        final CompletableFuture<ByteBuffer> result = isInMemory(view, key)
+                ? AsyncCalls.call(() -> load(key, view, now))
+                : AsyncCalls.submit(() -> load(key, view, now), io);
+        return result.whenComplete((value, e) -> metrics.get.recordSince(start));
+    }
+
+    /**
+     * Checks whether a memtable holds a version of the key seen by the view, so that
+     * the lookup stops there. Memtables hold values themselves, never value log pointers.
+     */
+    private static boolean isInMemory(
+            @NotNull final View view,
+            @NotNull final ByteBuffer key) {
+        final MemTable flushing = view.tables.flushing;
+        return view.tables.memTable.get(key, view.sequence) != null
+                || flushing != null && flushing.get(key, view.sequence) != null;
+    }
+
+    /**
+     * Looks the key up in the tables of the view caching the value found.
+     */
+    @NotNull
+    private ByteBuffer load(
+            @NotNull final ByteBuffer key,
+            @NotNull final View view,
+            final long now) {
+        final Cell cell = find(view.tables, key, view.sequence, now);
+        if (cell == null) {
+            throw new NoSuchElementException("Not found");
+        }
+        final ByteBuffer value = cell.toRecord().getValue();
+        rowCache.put(key, value, cell.expiresAt(), view.sequence);
+        return value;
+    }
+
+    /**
+     * Applies the write inline, so that writes are applied in the order of the calls.
+     * The sync and the wait for flushes and compactions to catch up it requires run on
+     * the I/O pool, which takes the call before the write is applied: a full pool fails
+     * the future with {@link RejectedExecutionException} and the write is not applied at all.
+     */
+    @NotNull
+    CompletableFuture<Void> applyAsync(@NotNull final Record record) {
+        final long start = System.nanoTime();
+        final LatencyHistogram latency = record.isTombstone() ? metrics.remove : metrics.upsert;
+        final List<Record> records = Collections.singletonList(record);
+        if (config.getWalSyncMode() != SyncMode.PER_WRITE && !isStalled()) {
+            try {
+                append(records);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            } finally {
+                latency.recordSince(start);
+            }
+            if (isFull()) {
+                // The flusher freezes the memtable, as that creates a log file
+                submitFlush(0);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Never inline, the caller must not wait for the disk
+        final CompletableFuture<LoggedWrite> logged = new CompletableFuture<>();
+        final CompletableFuture<Void> result = AsyncCalls.submit(() -> {
+            commitThrottled(logged.join());
+            return null;
+        }, io);
+        if (!result.isCompletedExceptionally()) {
+            try {
+                logged.complete(append(records));
+            } catch (IOException e) {
+                logged.completeExceptionally(e);
+            }
+        }
+        return result.whenComplete((ignored, e) -> latency.recordSince(start));
+    }
+
+    private void commitThrottled(@NotNull final LoggedWrite write) throws IOException {
+        commit(write);
+        throttle();
+    }
+
+    private void apply(@NotNull final Iterable<Record> records) throws IOException {
+        throttle();
+        commit(append(records));
+    }
+
+    /**
+     * Checks whether writes have to wait for flushes or compactions to catch up.
+     */
+    private boolean isStalled() {
+        return backlog >= config.getSlowdownBacklog() || isStopped();
+    }
+
+    private boolean isStopped() {
+        return backlog >= config.getStopBacklog() || isFull() && tables.flushing != null;
+    }
+
+    /**
+     * Delays the write while flushes and compactions fall behind, so that they get
+     * a share of the disk and memory stays bounded.
+     */
+    private void throttle() throws IOException {
+        if (!isStalled()) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        if (!isStopped()) {
+            LockSupport.parkNanos(SLOWDOWN_NANOS);
+            metrics.writeStall.recordSince(start);
+            return;
+        }
+
+        synchronized (flushLock) {
+            while (!closed.get() && isStopped()) {
+                final IOException failure = flushFailure;
+                if (failure != null) {
+                    throw new IOException("Can't flush memtable in " + storage, failure);
+                }
+                try {
+                    flushLock.wait(STALL_CHECK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for flush");
+                }
+                // Compactions which failed aren't retried otherwise
+                scheduleCompaction();
+            }
+        }
+        metrics.writeStall.recordSince(start);
+    }
+
+    /**
+     * Logs the writes and makes them visible.
+     */
+    @NotNull
+    private LoggedWrite append(@NotNull final Iterable<Record> records) throws IOException {
+        lock.readLock().lock();
+        try {
+            final WriteAheadLog current = wal;
+            // Log order must match the sequence numbers, which are published in order
+            synchronized (current) {
+                long last = sequence;
+                final long position = current.append(records, last + 1);
+                final MemTable memTable = tables.memTable;
+                for (final Record record : records) {
+                    last++;
+                    if (record.isTombstone()) {
+                        memTable.remove(record.getKey(), last);
+                    } else {
+                        memTable.upsert(record.getKey(), record.getValue(), last);
+                    }
+                    rowCache.invalidate(record.getKey(), last);
+                }
+                // The whole batch becomes visible at once
+                sequence = last;
+                return new LoggedWrite(current, position);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Logs the write taking a single sequence number and makes it visible.
+     */
+    @NotNull
+    private LoggedWrite appendSingle(@NotNull final SingleWrite write) throws IOException {
+        lock.readLock().lock();
+        try {
+            final WriteAheadLog current = wal;
+            synchronized (current) {
+                final long next = sequence + 1;
+                final long position = write.apply(current, tables.memTable, next);
+                sequence = next;
+                return new LoggedWrite(current, position);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Syncs the log as the mode requires and flushes the memtable once it is full.
+     */
+    private void commit(@NotNull final LoggedWrite write) throws IOException {
+        if (config.getWalSyncMode() == SyncMode.PER_WRITE) {
+            final long start = System.nanoTime();
+            write.log.sync(write.position);
+            metrics.walSync.recordSince(start);
+        }
+        if (isFull()) {
+            scheduleFlush();
+        }
+    }
+
+    private void syncLog() {
+        final long start = System.nanoTime();
+        try {
+            wal.sync();
+            metrics.walSync.recordSince(start);
+        } catch (IOException e) {
+            log.error("Can't sync log in " + storage, e);
+        }
+    }
+
+    /**
+     * Flushes the writes logged before a crash, the logs are deleted.
+     *
+     * @param logs     found logs
+     * @param ssTables found tables, the recovered one is added
+     */
+    private void recover(
+            @NotNull final List<Path> logs,
+            @NotNull final List<SSTable> ssTables) throws IOException {
+        // Memtables are flushed in order, so a log is obsolete once any table is at least as new
+        long flushed = 0;
+        for (final SSTable table : ssTables) {
+            flushed = Math.max(flushed, table.generation());
+        }
+
+        final NavigableMap<Long, Path> pending = new TreeMap<>();
+        for (final Path file : logs) {
+            final long generation = parseId(file, WriteAheadLog.SUFFIX);
+            if (generation > flushed) {
+                pending.put(generation, file);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            // Replayed from the oldest, the newest log gives the generation of the whole lot
+            final MemTable recovered = new MemTable(pending.lastKey());
+            long lastSequence = 0;
+            for (final Path file : pending.values()) {
+                lastSequence = Math.max(lastSequence, WriteAheadLog.replay(file, recovered));
+            }
+
+            if (!recovered.isEmpty()) {
+                final Path file = tableFile(recovered.generation());
+                final RangeTombstones ranges = recovered.rangeTombstones();
+                SSTableWriter.write(
+                        file,
+                        valueLog.separate(
+                                Versions.retained(recovered.cells(ByteBuffer.allocate(0)), new long[0], false, ranges)),
+                        ranges::tombstones,
+                        config,
+                        recovered.generation(),
+                        0);
+                ssTables.add(SSTable.open(file, blockCache, valueLog));
+                manifest.edit(Collections.singleton(recovered.generation()), Collections.emptySet());
+            }
+            log.info("Recovered writes up to #{} from {} logs in {}", lastSequence, pending.size(), storage);
+        }
+
+        for (final Path file : logs) {
+            Files.delete(file);
+        }
+    }
+
+    private boolean isFull() {
+        return tables.memTable.sizeInBytes() >= config.getFlushThreshold();
+    }
+
+    /**
+     * Freezes the full memtable and flushes it in background, unless the previous one
+     * is still being flushed.
+     */
+    private void scheduleFlush() throws IOException {
+        synchronized (flushLock) {
+            // The running flush schedules the next one once it completes
+            if (tables.flushing != null || !isFull()) {
+                return;
+            }
+            freeze();
+        }
+        submitFlush(0);
+    }
+
+    private void submitFlush(final long delayMillis) {
+        try {
+            flusher.schedule(this::flushInBackground, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed concurrently, so close() flushes it
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            flushFrozen();
+        } catch (IOException e) {
+            // The frozen memtable and its log are kept, so nothing is lost
+            log.error("Can't flush memtable in " + storage + ", retrying", e);
+            flushFailure = e;
+            wakeWriters();
+            submitFlush(FLUSH_RETRY_MILLIS);
+            return;
+        }
+
+        try {
+            scheduleFlush();
+        } catch (IOException e) {
+            log.error("Can't freeze memtable in " + storage, e);
+        }
+    }
+
+    /**
+     * Flushes all the writes on the flusher thread, so that it doesn't race background flushes.
+     */
+    private void flushOnFlusher() throws IOException {
+        final Future<?> flushed;
+        try {
+            flushed = flusher.submit(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    // Left to the background retries like a failed background flush
+                    submitFlush(FLUSH_RETRY_MILLIS);
+                    throw e;
+                }
+                return null;
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IOException("Storage in " + storage + " is closed", e);
+        }
+
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for flush");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Can't flush memtable in " + storage, e.getCause());
+        }
+    }
+
+    /**
+     * Flushes all the writes, either on the flusher thread or once the flusher is stopped.
+     */
+    private void flush() throws IOException {
+        flushFrozen();
+        synchronized (flushLock) {
+            if (tables.memTable.isEmpty()) {
+                return;
+            }
+            freeze();
+        }
+        flushFrozen();
+    }
+
+    /**
+     * Replaces the memtable with a fresh one with a fresh log, the flush lock must be held.
+     */
+    private void freeze() throws IOException {
+        assert tables.flushing == null;
+        final long generation = generations.getAndIncrement();
+        final WriteAheadLog freshLog = WriteAheadLog.create(logFile(generation));
+        lock.writeLock().lock();
+        try {
+            flushingLog = wal;
+            tables = tables.startFlush(new MemTable(generation));
+            wal = freshLog;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the frozen memtable to a table, if there is one. Runs on the flusher thread,
+     * or in {@link #close()} once the flusher is stopped.
+     */
+    private void flushFrozen() throws IOException {
+        final MemTable frozen;
+        final WriteAheadLog frozenLog;
+        synchronized (flushLock) {
+            frozen = tables.flushing;
+            frozenLog = flushingLog;
+        }
+        if (frozen == null) {
+            return;
+        }
+        assert frozenLog != null;
+
+        final long start = System.nanoTime();
+        final Path file = tableFile(frozen.generation());
+        final SSTable flushed;
+        final RangeTombstones ranges = frozen.rangeTombstones();
+        final long valuePin = valueLog.pin();
+        try {
+            SSTableWriter.write(
+                    file,
+                    valueLog.separate(Versions.retained(frozen.cells(ByteBuffer.allocate(0)), pinned(), false, ranges)),
+                    ranges::tombstones,
+                    config,
+                    frozen.generation(),
+                    0);
+            flushed = SSTable.open(file, blockCache, valueLog);
+            manifest.edit(Collections.singleton(frozen.generation()), Collections.emptySet());
+
+            lock.writeLock().lock();
+            try {
+                tables = tables.finishFlush(flushed);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            valueLog.unpin(valuePin);
+        }
+
+        flushFailure = null;
+        updateBacklog();
+        collectValues();
+        frozenLog.close();
+        Files.delete(frozenLog.file());
+        metrics.flush.recordSince(start);
+        log.debug("Flushed {} entries to {}", flushed.entryCount(), file);
+        scheduleExpiry(flushed);
+        scheduleCompaction();
+    }
+
+    /**
+     * Recounts the tables waiting for compaction letting stalled writers recheck it.
+     */
+    private void updateBacklog() {
+        backlog = strategy.backlog(tables.ssTables);
+        wakeWriters();
+    }
+
+    private void wakeWriters() {
+        synchronized (flushLock) {
+            flushLock.notifyAll();
+        }
+    }
+
+    /**
+     * Deletes the value log segments no table references any more.
+     */
+    private void collectValues() {
+        // Table set updates are excluded, so that segments of tables being published are kept
+        lock.readLock().lock();
+        try {
+            synchronized (fileLock) {
+                valueLog.collect(tables.ssTables);
+            }
+        } catch (IOException e) {
+            log.error("Can't collect value log in " + storage, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lets a compaction drop the table once all its values expire.
+     */
+    private void scheduleExpiry(@NotNull final SSTable table) {
+        final long delay = table.expiresAt() - System.currentTimeMillis();
+        if (table.expiresAt() == Cell.NEVER || delay <= 0) {
+            // Never expires or has already, the compaction scheduled anyway sees it
+            return;
+        }
+
+        try {
+            flusher.schedule(this::scheduleCompaction, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed concurrently
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (closed.get()) {
+            return;
+        }
+
+        try {
+            compactions.execute(this::compact);
+        } catch (RejectedExecutionException e) {
+            // Closed concurrently
+        }
+    }
+
+    private void compact() {
+        final CompactionTask task;
+        synchronized (compacting) {
+            // Dropping expired tables costs no reads, so it goes first
+            final CompactionTask expired =
+                    CompactionStrategy.pickExpired(tables.ssTables, compacting, System.currentTimeMillis());
+            task = expired == null ? strategy.pick(tables.ssTables, compacting) : expired;
+            if (task == null) {
+                return;
+            }
+            compacting.addAll(task.inputs());
+        }
+
+        final long valuePin = valueLog.pin();
+        try {
+            final List<SSTable> outputs = task.run(this::newTableFile, config, blockCache, valueLog, pinned());
+            manifest.edit(ids(outputs), ids(task.inputs()));
+            lock.writeLock().lock();
+            try {
+                tables = tables.replace(task.inputs(), outputs);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            metrics.compacted(task.inputs(), outputs);
+            updateBacklog();
+
+            // Readers holding previous table sets keep their mappings
+            synchronized (fileLock) {
+                for (final SSTable input : task.inputs()) {
+                    Files.delete(input.file());
+                }
+            }
+            log.debug("Compacted {} into {}", task, outputs);
+            for (final SSTable output : outputs) {
+                scheduleExpiry(output);
+            }
+        } catch (IOException e) {
+            log.error("Can't compact " + task, e);
+            return;
+        } finally {
+            valueLog.unpin(valuePin);
+            synchronized (compacting) {
+                compacting.removeAll(task.inputs());
+            }
+        }
+        collectValues();
+        scheduleCompaction();
+    }
+
+    @Nullable
+    private ObjectName registerMetrics() {
+        try {
+            final ObjectName name = new ObjectName(
+                    "ru.mail.polis.kodim97:type=LsmDAO,storage=" + ObjectName.quote(storage.getAbsolutePath()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            // Metrics are still available through getMetrics()
+            log.warn("Can't register metrics of " + storage, e);
+            return null;
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException e) {
+            log.warn("Can't unregister metrics of " + storage, e);
+        }
+    }
+
+    /**
+     * Opens the tables in parallel, a table reads little but its footer on open.
+     *
+     * @param ids   tables listed in the manifest
+     * @param found tables found in the directory
+     */
+    @NotNull
+    private List<SSTable> openTables(
+            @NotNull final Collection<Long> ids,
+            @NotNull final Set<Long> found) throws IOException {
+        final List<SSTable> result = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(ids.size(), Runtime.getRuntime().availableProcessors()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("table-open-%d")
+                        .setDaemon(true)
+                        .build());
+        try {
+            final List<Future<SSTable>> opened = new ArrayList<>(ids.size());
+            for (final long id : ids) {
+                if (!found.contains(id)) {
+                    throw new IOException("Missing table " + id + " listed in the manifest of " + storage);
+                }
+                final Path file = tableFile(id);
+                opened.add(pool.submit(() -> SSTable.open(file, blockCache, valueLog)));
+            }
+            for (final Future<SSTable> table : opened) {
+                result.add(table.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while opening tables");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Can't open tables in " + storage, e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    @NotNull
+    private static List<Long> ids(@NotNull final Collection<SSTable> tables) throws IOException {
+        final List<Long> result = new ArrayList<>(tables.size());
+        for (final SSTable table : tables) {
+            result.add(parseId(table.file(), SUFFIX));
+        }
+        return result;
+    }
+
+    @NotNull
+    private Path newTableFile() {
+        return tableFile(generations.getAndIncrement());
+    }
+
+    @NotNull
+    private Path tableFile(final long id) {
+        return storage.toPath().resolve(id + SUFFIX);
+    }
+
+    @NotNull
+    private Path logFile(final long generation) {
+        return storage.toPath().resolve(generation + WriteAheadLog.SUFFIX);
+    }
+
+    private static long parseId(
+            @NotNull final Path file,
+            @NotNull final String suffix) throws IOException {
+        final String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file name: " + file, e);
+        }
+    }
+
+    /**
+     * Write taking a single sequence number, which is logged and applied holding the log monitor.
+     */
+    @FunctionalInterface
+    private interface SingleWrite {
+        /**
+         * Logs the write and applies it to the memtable.
+         *
+         * @return log position to sync up to for the write to be durable
+         */
+        long apply(
+                @NotNull WriteAheadLog log,
+                @NotNull MemTable memTable,
+                long sequence) throws IOException;
+    }
+
+    /**
+     * Step of {@link #close()} which may fail without keeping the following ones from running.
+     */
+    @FunctionalInterface
+    private interface CloseStep {
+        void run() throws IOException;
+    }
+
+    /**
+     * Tables read at a sequence number, versions written after it are not seen.
+     */
+    static final class View {
+        @NotNull
+        final TableSet tables;
+        final long sequence;
+
+        View(
+                @NotNull final TableSet tables,
+                final long sequence) {
+            this.tables = tables;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Position in the log to sync up to for the writes to be durable.
+     */
+    private static final class LoggedWrite {
+        final WriteAheadLog log;
+        final long position;
+
+        LoggedWrite(
+                @NotNull final WriteAheadLog log,
+                final long position) {
+            this.log = log;
+            this.position = position;
+        }
+    }
+
+    private final class LsmSnapshot implements Snapshot {
+        private final long sequence;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        LsmSnapshot(final long sequence) {
+            this.sequence = sequence;
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
+            // Versions up to the sequence are pinned in whatever tables are current
+            return LsmDAO.iterator(tables, from, sequence);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Record> descendingIterator(@NotNull final ByteBuffer from) {
+            return LsmDAO.descendingIterator(tables, from, sequence);
+        }
+
+        @NotNull
+        @Override
+        public Stream<Record> stream(
+                @NotNull final ByteBuffer from,
+                @Nullable final ByteBuffer to,
+                final boolean parallel) {
+            return StreamSupport.stream(RangeSpliterator.of(tables, sequence, from, to), parallel);
+        }
+
+        @NotNull
+        @Override
+        public Cursor cursor(
+                @NotNull final ByteBuffer from,
+                @Nullable final ByteBuffer to) {
+            return LsmDAO.cursor(tables, from, to, sequence);
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer get(@NotNull final ByteBuffer key) throws NoSuchElementException {
+            return LsmDAO.get(tables, key, sequence);
+        }
+
+        @Override
+        public void close() {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+
+            synchronized (snapshots) {
+                snapshots.computeIfPresent(sequence, (s, count) -> count == 1 ? null : count - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Greedy LZ77 {@link Codec} in the spirit of LZ4, trading ratio for speed.
+ *
+ * <p>Compressed data is a sequence of
+ * <pre>
+ * literalCount(varint) literal* [matchLength - MIN_MATCH (varint) matchOffset(varint)]
+ * </pre>
+ * where a match copies bytes already restored at the given distance back, possibly
+ * overlapping the copy itself. The match is omitted once the output is complete.
+ *
+ * <p>Matches are found through a hash table of the last positions of 4-byte sequences,
+ * so each input byte is hashed at most once.
+ */
+final class LzCodec implements Codec {
+    static final LzCodec INSTANCE = new LzCodec();
+
+    private static final int MIN_MATCH = Integer.BYTES;
+    private static final int HASH_BITS = 12;
+    // Three varints of a sequence take at most 15 bytes
+    private static final int MAX_OVERHEAD = 15;
+
+    private final ThreadLocal<int[]> tables = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    private LzCodec() {
+        // Use INSTANCE
+    }
+
+    @Override
+    public boolean compress(
+            @NotNull final ByteBuffer source,
+            @NotNull final ByteBuffer destination) {
+        final int base = source.position();
+        final int length = source.remaining();
+        final int[] table = tables.get();
+        Arrays.fill(table, -1);
+
+        int anchor = 0;
+        int i = 0;
+        while (i <= length - MIN_MATCH) {
+            final int sequence = source.getInt(base + i);
+            final int hash = (sequence * 0x9E3779B1) >>> (Integer.SIZE - HASH_BITS);
+            final int candidate = table[hash];
+            table[hash] = i;
+            if (candidate < 0 || source.getInt(base + candidate) != sequence) {
+                i++;
+                continue;
+            }
+
+            int match = MIN_MATCH;
+            while (i + match < length && source.get(base + candidate + match) == source.get(base + i + match)) {
+                match++;
+            }
+            if (!putLiterals(source, anchor, i, destination)) {
+                return false;
+            }
+            Buffers.putVarInt(destination, match - MIN_MATCH);
+            Buffers.putVarInt(destination, i - candidate);
+            i += match;
+            anchor = i;
+        }
+
+        if (anchor < length && !putLiterals(source, anchor, length, destination)) {
+            return false;
+        }
+        source.position(base + length);
+        return true;
+    }
+
+    @Override
+    public void decompress(
+            @NotNull final ByteBuffer source,
+            @NotNull final ByteBuffer destination) {
+        try {
+            while (destination.hasRemaining()) {
+                final int literals = Buffers.getVarInt(source);
+                destination.put(Buffers.slice(source, source.position(), literals));
+                source.position(source.position() + literals);
+                if (!destination.hasRemaining()) {
+                    break;
+                }
+
+                final int match = Buffers.getVarInt(source) + MIN_MATCH;
+                final int from = destination.position() - Buffers.getVarInt(source);
+                if (from < 0) {
+                    throw new IllegalStateException("Corrupted block");
+                }
+                // Byte by byte since the match may overlap the bytes it produces
+                for (int j = 0; j < match; j++) {
+                    destination.put(destination.get(from + j));
+                }
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException
+                | BufferUnderflowException | BufferOverflowException e) {
+            throw new IllegalStateException("Corrupted block", e);
+        }
+    }
+
+    private static boolean putLiterals(
+            @NotNull final ByteBuffer source,
+            final int from,
+            final int to,
+            @NotNull final ByteBuffer destination) {
+        final int count = to - from;
+        if (destination.remaining() < count + MAX_OVERHEAD) {
+            return false;
+        }
+        Buffers.putVarInt(destination, count);
+        destination.put(Buffers.slice(source, source.position() + from, count));
+        return true;
+    }
+}
@@ -0,0 +1,242 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned edit log of the tables making up the storage, so that opening doesn't
+ * have to guess them from the directory contents.
+ *
+ * <p>File layout:
+ * <pre>
+ * manifest     magic(int) edit*
+ * edit         length(int) checksum(int) version(long) addedCount(int) removedCount(int) added(long)* removed(long)*
+ * </pre>
+ * Tables are identified by the numbers their files are named with. A table file is
+ * complete and its name durable before it is added, and is deleted only after the edit
+ * removing it is durable, so files the manifest doesn't list are leftovers of interrupted
+ * flushes and compactions.
+ *
+ * <p>Like the {@link WriteAheadLog}, replay stops at a torn edit. The file is rewritten
+ * as a snapshot holding a single edit on open and every {@value #SNAPSHOT_INTERVAL} edits.
+ */
+final class Manifest implements Closeable {
+    static final String FILE_NAME = "MANIFEST";
+
+    private static final Logger log = LoggerFactory.getLogger(Manifest.class);
+    private static final int MAGIC = 0x4C534D4D;
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final int SNAPSHOT_INTERVAL = 1000;
+
+    private final Path file;
+    /**
+     * Live tables, guarded by this.
+     */
+    private final Set<Long> tables;
+    private FileChannel channel;
+    private long version;
+    private int edits;
+
+    private Manifest(
+            @NotNull final Path file,
+            @NotNull final Set<Long> tables,
+            final long version) {
+        this.file = file;
+        this.tables = tables;
+        this.version = version;
+    }
+
+    /**
+     * Reads the manifest of the storage, a missing one is created listing the given tables.
+     *
+     * @param storage storage directory
+     * @param found   tables found in the directory, used by storages created before manifests
+     */
+    @NotNull
+    static Manifest open(
+            @NotNull final Path storage,
+            @NotNull final Collection<Long> found) throws IOException {
+        final Path file = storage.resolve(FILE_NAME);
+        final Manifest manifest;
+        if (Files.exists(file)) {
+            manifest = replay(file);
+        } else {
+            manifest = new Manifest(file, new TreeSet<>(found), 0);
+            log.info("Created manifest of {} tables in {}", found.size(), storage);
+        }
+        manifest.snapshot();
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest of a fresh storage made of the given tables.
+     *
+     * @param storage storage directory, which must have no manifest
+     */
+    static void create(
+            @NotNull final Path storage,
+            @NotNull final Collection<Long> tables) throws IOException {
+        final Manifest manifest = new Manifest(storage.resolve(FILE_NAME), new TreeSet<>(tables), 0);
+        manifest.snapshot();
+        manifest.close();
+    }
+
+    /**
+     * Returns the identifiers of the live tables in ascending order.
+     */
+    @NotNull
+    synchronized Set<Long> tables() {
+        return Collections.unmodifiableSet(new TreeSet<>(tables));
+    }
+
+    /**
+     * Durably applies the edit, all of it or none.
+     *
+     * @param added   tables to add, their files must be complete and their directory entries forced
+     * @param removed tables to remove, their files may be deleted once this returns
+     */
+    synchronized void edit(
+            @NotNull final Collection<Long> added,
+            @NotNull final Collection<Long> removed) throws IOException {
+        try {
+            append(channel, version + 1, added, removed);
+            channel.force(false);
+        } catch (IOException e) {
+            // A partial edit would hide the following ones, so the file is rewritten or abandoned
+            try {
+                snapshot();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+                channel.close();
+            }
+            throw e;
+        }
+        version++;
+        tables.addAll(added);
+        tables.removeAll(removed);
+
+        edits++;
+        if (edits >= SNAPSHOT_INTERVAL) {
+            snapshot();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Atomically replaces the file with a single edit adding the live tables.
+     */
+    private void snapshot() throws IOException {
+        final Path tmp = file.resolveSibling(FILE_NAME + ".tmp");
+        final FileChannel fresh = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            write(fresh, ByteBuffer.allocate(Integer.BYTES).putInt(0, MAGIC));
+            append(fresh, version, tables, Collections.emptySet());
+            fresh.force(false);
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // Edits appended from now on must not be lost together with the rename
+            Directories.sync(file.getParent());
+        } catch (IOException e) {
+            fresh.close();
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+
+        // The channel still appends to the renamed file
+        if (channel != null) {
+            channel.close();
+        }
+        channel = fresh;
+        edits = 0;
+    }
+
+    @NotNull
+    private static Manifest replay(@NotNull final Path file) throws IOException {
+        final ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (content.limit() < Integer.BYTES || content.getInt(0) != MAGIC) {
+            throw new IOException("Not a manifest: " + file);
+        }
+
+        final Set<Long> tables = new TreeSet<>();
+        long version = 0;
+        int offset = Integer.BYTES;
+        final CRC32C checksum = new CRC32C();
+        while (offset + HEADER_SIZE <= content.limit()) {
+            final int length = content.getInt(offset);
+            if (length < Long.BYTES + Integer.BYTES * 2 || length > content.limit() - offset - HEADER_SIZE) {
+                break;
+            }
+
+            final ByteBuffer edit = Buffers.slice(content, offset + HEADER_SIZE, length);
+            checksum.reset();
+            checksum.update(edit.duplicate());
+            if ((int) checksum.getValue() != content.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+
+            version = edit.getLong();
+            final int addedCount = edit.getInt();
+            final int removedCount = edit.getInt();
+            for (int i = 0; i < addedCount; i++) {
+                tables.add(edit.getLong());
+            }
+            for (int i = 0; i < removedCount; i++) {
+                tables.remove(edit.getLong());
+            }
+            offset += HEADER_SIZE + length;
+        }
+
+        if (offset < content.limit()) {
+            log.warn("Skipped torn tail of {} bytes in {}", content.limit() - offset, file);
+        }
+        return new Manifest(file, tables, version);
+    }
+
+    private static void append(
+            @NotNull final FileChannel channel,
+            final long version,
+            @NotNull final Collection<Long> added,
+            @NotNull final Collection<Long> removed) throws IOException {
+        final int length = Long.BYTES + Integer.BYTES * 2 + Long.BYTES * (added.size() + removed.size());
+        final ByteBuffer edit = ByteBuffer.allocate(HEADER_SIZE + length);
+        edit.position(HEADER_SIZE);
+        edit.putLong(version).putInt(added.size()).putInt(removed.size());
+        for (final long id : added) {
+            edit.putLong(id);
+        }
+        for (final long id : removed) {
+            edit.putLong(id);
+        }
+
+        final CRC32C checksum = new CRC32C();
+        checksum.update(edit.array(), HEADER_SIZE, length);
+        edit.putInt(0, length).putInt(Integer.BYTES, (int) checksum.getValue());
+        write(channel, edit.flip());
+    }
+
+    private static void write(
+            @NotNull final FileChannel channel,
+            @NotNull final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
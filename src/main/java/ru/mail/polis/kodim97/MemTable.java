@@ -0,0 +1,212 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent write buffer keeping keys and values off-heap.
+ *
+ * <p>The skip list holds only small on-heap nodes referencing slices of an
+ * {@link OffHeapArena}, so the payload does not count against the Java heap.
+ * Every write adds a version, so readers of older snapshots are not disturbed.
+ *
+ * <p>Range tombstones are few, so they are kept in a {@link RangeTombstones} set replaced on each removal.
+ */
+final class MemTable implements Table {
+    private final NavigableSet<Cell> cells = new ConcurrentSkipListSet<>(Cell.COMPARATOR);
+    private final OffHeapArena arena;
+    private final LongAdder entries = new LongAdder();
+    private final long generation;
+    private volatile RangeTombstones ranges = RangeTombstones.EMPTY;
+
+    MemTable(final long generation) {
+        this.arena = new OffHeapArena(OffHeapArena.DEFAULT_CHUNK_SIZE);
+        this.generation = generation;
+    }
+
+    void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long sequence) {
+        upsert(key, value, sequence, Cell.NEVER);
+    }
+
+    /**
+     * Writes the value expiring at the given time in milliseconds since the epoch.
+     */
+    void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long sequence,
+            final long expiresAt) {
+        cells.add(Cell.of(arena.copyOf(key), sequence, arena.copyOf(value), expiresAt));
+        entries.increment();
+    }
+
+    void remove(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        cells.add(Cell.tombstone(arena.copyOf(key), sequence));
+        entries.increment();
+    }
+
+    /**
+     * Removes the keys within [from, to), the range must not be empty.
+     */
+    void removeRange(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to,
+            final long sequence) {
+        final RangeTombstone tombstone = new RangeTombstone(arena.copyOf(from), arena.copyOf(to), sequence);
+        synchronized (this) {
+            ranges = ranges.with(tombstone);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(
+            @NotNull final ByteBuffer from,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        return Versions.visible(cells(from), sequence, ranges);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> descendingIterator(
+            @NotNull final ByteBuffer from,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        // Sequence numbers are non-negative, so the probe follows all the versions of the key
+        return Versions.visibleDescending(
+                cells.headSet(Cell.probe(from, Long.MIN_VALUE), true).descendingIterator(),
+                sequence,
+                ranges);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Cell> cells(@NotNull final ByteBuffer from) {
+        return cells.tailSet(Cell.probe(from, Long.MAX_VALUE), true).iterator();
+    }
+
+    @NotNull
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return new CellCursor(cells(from));
+    }
+
+    @Nullable
+    @Override
+    public Cell get(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        final Cell cell = cells.ceiling(Cell.probe(key, sequence));
+        return cell == null || !cell.hasKey(key) ? null : cell;
+    }
+
+    @NotNull
+    @Override
+    public RangeTombstones rangeTombstones() {
+        return ranges;
+    }
+
+    @Override
+    public long generation() {
+        return generation;
+    }
+
+    boolean isEmpty() {
+        return cells.isEmpty() && ranges.isEmpty();
+    }
+
+    /**
+     * Number of versions including tombstones, range tombstones aside.
+     */
+    long entryCount() {
+        return entries.sum();
+    }
+
+    /**
+     * Off-heap bytes occupied by keys and values of all the versions.
+     */
+    long sizeInBytes() {
+        return arena.sizeInBytes();
+    }
+
+    /**
+     * Copies keys and values to reused buffers, as the buffers of cells are shared with other readers.
+     */
+    private static final class CellCursor implements TableCursor {
+        private final Iterator<Cell> cells;
+        @Nullable
+        private Cell current;
+        private ByteBuffer key = ByteBuffer.allocate(64);
+        private ByteBuffer value = ByteBuffer.allocate(0);
+        private boolean valueCopied;
+
+        CellCursor(@NotNull final Iterator<Cell> cells) {
+            this.cells = cells;
+            next();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer key() {
+            return key.position(0);
+        }
+
+        @Override
+        public long sequence() {
+            return current().sequence();
+        }
+
+        @Override
+        public boolean isTombstone() {
+            return current().isTombstone();
+        }
+
+        @Override
+        public long expiresAt() {
+            return current().expiresAt();
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer value() {
+            if (!valueCopied) {
+                value = current().copyValue(value);
+                valueCopied = true;
+            }
+            return value.position(0);
+        }
+
+        @Override
+        public void next() {
+            current = cells.hasNext() ? cells.next() : null;
+            valueCopied = false;
+            if (current != null) {
+                key = current.copyKey(key);
+            }
+        }
+
+        @NotNull
+        private Cell current() {
+            assert current != null;
+            return current;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Cursor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Merges {@link TableCursor}s into the records seen by a snapshot without allocating per step.
+ *
+ * <p>Sources are kept in a binary heap ordered by the current key, then from the newest
+ * table to the oldest. As all the versions in a table are newer than those of older tables,
+ * the first visible version of the key on top of the heap is the one seen.
+ * Tombstones hide the key and are skipped, as are the versions hidden by range tombstones
+ * and the values expired by the time the cursor is created.
+ */
+final class MergedCursor implements Cursor {
+    private final TableCursor[] sources;
+    private final int[] heap;
+    private final long sequence;
+    private final RangeTombstones ranges;
+    private final long now = System.currentTimeMillis();
+    @Nullable
+    private final ByteBuffer to;
+    private int size;
+    private ByteBuffer key = ByteBuffer.allocate(64);
+    /**
+     * Source of the current record, -1 if there is none.
+     */
+    private int current = -1;
+    private boolean started;
+
+    /**
+     * Merges the sources.
+     *
+     * @param sources  cursors over the tables from the newest to the oldest
+     * @param sequence snapshot sequence number
+     * @param ranges   range tombstones of all the tables
+     * @param to       key to stop at (exclusive), {@code null} to scan to the end
+     */
+    MergedCursor(
+            @NotNull final List<TableCursor> sources,
+            final long sequence,
+            @NotNull final RangeTombstones ranges,
+            @Nullable final ByteBuffer to) {
+        this.sources = sources.toArray(new TableCursor[0]);
+        this.heap = new int[this.sources.length];
+        this.sequence = sequence;
+        this.ranges = ranges;
+        this.to = to;
+        for (int i = 0; i < this.sources.length; i++) {
+            if (this.sources[i].isValid()) {
+                heap[size++] = i;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @Override
+    public boolean next() {
+        if (started) {
+            skip(currentKey());
+        }
+        started = true;
+        current = -1;
+
+        while (size > 0) {
+            final TableCursor top = sources[heap[0]];
+            if (to != null && top.key().compareTo(to) >= 0) {
+                size = 0;
+                break;
+            }
+            if (top.sequence() > sequence) {
+                advanceTop();
+                continue;
+            }
+
+            key = Buffers.copy(top.key(), key);
+            if (top.isTombstone()
+                    || top.expiresAt() <= now
+                    || ranges.covering(currentKey(), sequence) > top.sequence()) {
+                skip(currentKey());
+                continue;
+            }
+            current = heap[0];
+            return true;
+        }
+        return false;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        checkCurrent();
+        return currentKey();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        checkCurrent();
+        return sources[current].value();
+    }
+
+    @NotNull
+    private ByteBuffer currentKey() {
+        return key.position(0);
+    }
+
+    private void checkCurrent() {
+        if (current < 0) {
+            throw new IllegalStateException("Cursor is not at a record");
+        }
+    }
+
+    /**
+     * Moves all the sources past the versions of the key.
+     */
+    private void skip(@NotNull final ByteBuffer skipped) {
+        while (size > 0 && sources[heap[0]].key().equals(skipped)) {
+            advanceTop();
+        }
+    }
+
+    private void advanceTop() {
+        final TableCursor top = sources[heap[0]];
+        top.next();
+        if (!top.isValid()) {
+            heap[0] = heap[--size];
+        }
+        siftDown(0);
+    }
+
+    private void siftDown(final int from) {
+        int parent = from;
+        while (true) {
+            final int left = parent * 2 + 1;
+            if (left >= size) {
+                return;
+            }
+
+            final int right = left + 1;
+            final int child = right < size && less(heap[right], heap[left]) ? right : left;
+            if (!less(heap[child], heap[parent])) {
+                return;
+            }
+            final int swap = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = swap;
+            parent = child;
+        }
+    }
+
+    private boolean less(
+            final int left,
+            final int right) {
+        final int cmp = sources[left].key().compareTo(sources[right].key());
+        return cmp == 0 ? left < right : cmp < 0;
+    }
+}
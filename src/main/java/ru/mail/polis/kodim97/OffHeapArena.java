@@ -0,0 +1,96 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only allocator over direct {@link ByteBuffer} chunks.
+ *
+ * <p>Copies are bump-allocated from the current chunk without locking; a new chunk
+ * is allocated once the current one is exhausted. Memory is never reused, the whole
+ * arena is released together with the last reference to its slices.
+ */
+final class OffHeapArena {
+    static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private final int chunkSize;
+    private final AtomicLong allocated = new AtomicLong();
+
+    private volatile Chunk current;
+
+    OffHeapArena(final int chunkSize) {
+        assert chunkSize > 0;
+        this.chunkSize = chunkSize;
+        this.current = new Chunk(chunkSize);
+    }
+
+    /**
+     * Copies remaining bytes of the buffer off-heap.
+     *
+     * @return read-only slice of the arena holding the copy
+     */
+    @NotNull
+    ByteBuffer copyOf(@NotNull final ByteBuffer src) {
+        final int size = src.remaining();
+        final ByteBuffer dst = allocate(size);
+        dst.put(src.duplicate());
+        dst.flip();
+        return dst.asReadOnlyBuffer();
+    }
+
+    /**
+     * Total bytes handed out by the arena.
+     */
+    long sizeInBytes() {
+        return allocated.get();
+    }
+
+    @NotNull
+    private ByteBuffer allocate(final int size) {
+        allocated.addAndGet(size);
+
+        // Large chunks would waste the tail of the current chunk
+        if (size > chunkSize / 4) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        while (true) {
+            final Chunk chunk = current;
+            final ByteBuffer slice = chunk.slice(size);
+            if (slice != null) {
+                return slice;
+            }
+
+            synchronized (this) {
+                if (current == chunk) {
+                    current = new Chunk(chunkSize);
+                }
+            }
+        }
+    }
+
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private final AtomicInteger position = new AtomicInteger();
+
+        Chunk(final int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+
+        @Nullable
+        ByteBuffer slice(final int size) {
+            final int offset = position.getAndAdd(size);
+            if (offset + size > buffer.capacity()) {
+                return null;
+            }
+
+            final ByteBuffer result = buffer.duplicate();
+            result.limit(offset + size).position(offset);
+            return result.slice();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Iters;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Splits a range scan of a table set into sub-ranges scanned independently.
+ *
+ * <p>The range is cut at the first keys of table blocks, so a sub-range never starts
+ * in the middle of a block. Each sub-range is weighted by the average number of entries
+ * in the blocks starting within it, which gives the size estimates splits are balanced by.
+ * Memtable entries are spread over the sub-ranges proportionally. All the sub-ranges read
+ * the same table set at the same sequence number, so together they see a consistent state.
+ * The table sets of several shards are scanned as one, merging the shards within each sub-range.
+ */
+final class RangeSpliterator implements Spliterator<Record> {
+    private static final int CHARACTERISTICS = ORDERED | SORTED | DISTINCT | NONNULL | IMMUTABLE;
+
+    /**
+     * Table sets over disjoint keys, those of the shards of a {@link ShardedDAO}, each read at its sequence number.
+     */
+    private final List<LsmDAO.View> views;
+    /**
+     * Range start, split points, then range end or {@code null} for the end of the data.
+     */
+    private final ByteBuffer[] bounds;
+    /**
+     * Estimated number of entries before each bound.
+     */
+    private final double[] estimates;
+    /**
+     * Covered sub-ranges, the sub-range i spans [bounds[i], bounds[i + 1]).
+     */
+    private int low;
+    private final int high;
+    @Nullable
+    private Iterator<Record> records;
+
+    private RangeSpliterator(
+            @NotNull final List<LsmDAO.View> views,
+            @NotNull final ByteBuffer[] bounds,
+            @NotNull final double[] estimates,
+            final int low,
+            final int high) {
+        this.views = views;
+        this.bounds = bounds;
+        this.estimates = estimates;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Prepares a scan of the records within [from, to) seen by the snapshot.
+     *
+     * @param to end of the range (exclusive), {@code null} to scan to the end
+     */
+    @NotNull
+    static RangeSpliterator of(
+            @NotNull final TableSet tables,
+            final long sequence,
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        return of(List.of(new LsmDAO.View(tables, sequence)), from, to);
+    }
+
+    /**
+     * Prepares a scan of the records within [from, to) merging the views, whose keys must not overlap.
+     * The sub-ranges are cut at the blocks of the tables of all the views.
+     *
+     * @param to end of the range (exclusive), {@code null} to scan to the end
+     */
+    @NotNull
+    static RangeSpliterator of(
+            @NotNull final List<LsmDAO.View> views,
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        // Blocks of different tables may start with the same key
+        final NavigableMap<ByteBuffer, Double> points = new TreeMap<>();
+        double first = 0;
+        long memEntries = 0;
+        for (final LsmDAO.View view : views) {
+            for (final SSTable table : view.tables.ssTables) {
+                if (table.isEmpty()) {
+                    continue;
+                }
+
+                final double perBlock = table.entriesPerBlock();
+                if (table.minKey().compareTo(from) < 0) {
+                    // The block holding the start of the range
+                    first += perBlock;
+                }
+                for (final ByteBuffer key : table.blockKeys(from, to)) {
+                    points.merge(key, perBlock, Double::sum);
+                }
+            }
+
+            memEntries += view.tables.memTable.entryCount();
+            if (view.tables.flushing != null) {
+                memEntries += view.tables.flushing.entryCount();
+            }
+        }
+
+        final ByteBuffer[] bounds = new ByteBuffer[points.size() + 2];
+        final double[] weights = new double[points.size() + 1];
+        bounds[0] = from;
+        weights[0] = first;
+        int i = 1;
+        for (final Map.Entry<ByteBuffer, Double> point : points.entrySet()) {
+            bounds[i] = point.getKey();
+            weights[i] = point.getValue();
+            i++;
+        }
+        bounds[i] = to;
+        return new RangeSpliterator(views, bounds, estimates(weights, memEntries), 0, weights.length);
+    }
+
+    @NotNull
+    private static double[] estimates(
+            @NotNull final double[] weights,
+            final long memEntries) {
+        final double total = Arrays.stream(weights).sum();
+        final double[] result = new double[weights.length + 1];
+        for (int i = 0; i < weights.length; i++) {
+            final double weight = total == 0
+                    ? (double) memEntries / weights.length
+                    : weights[i] * (1 + memEntries / total);
+            result[i + 1] = result[i] + weight;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean tryAdvance(@NotNull final Consumer<? super Record> action) {
+        final Iterator<Record> iterator = records();
+        if (!iterator.hasNext()) {
+            return false;
+        }
+        action.accept(iterator.next());
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(@NotNull final Consumer<? super Record> action) {
+        records().forEachRemaining(action);
+    }
+
+    /**
+     * Gives away the first half of the sub-ranges by estimated size unless the scan has started.
+     */
+    @Nullable
+    @Override
+    public Spliterator<Record> trySplit() {
+        if (records != null || high - low < 2) {
+            return null;
+        }
+
+        final double half = (estimates[low] + estimates[high]) / 2;
+        int middle = Arrays.binarySearch(estimates, low + 1, high, half);
+        if (middle < 0) {
+            middle = -middle - 1;
+        }
+        middle = Math.max(low + 1, Math.min(high - 1, middle));
+
+        final RangeSpliterator prefix = new RangeSpliterator(views, bounds, estimates, low, middle);
+        low = middle;
+        return prefix;
+    }
+
+    /**
+     * Estimates the number of entries in the sub-ranges, versions and tombstones included.
+     */
+    @Override
+    public long estimateSize() {
+        return (long) Math.ceil(estimates[high] - estimates[low]);
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    /**
+     * Records are {@link Comparable}, so the natural order is reported.
+     */
+    @Nullable
+    @Override
+    public Comparator<? super Record> getComparator() {
+        return null;
+    }
+
+    @NotNull
+    private Iterator<Record> records() {
+        if (records == null) {
+            final Iterator<Record> all;
+            if (views.size() == 1) {
+                all = LsmDAO.iterator(views.get(0).tables, bounds[low], views.get(0).sequence);
+            } else {
+                final List<Iterator<Record>> iterators = new ArrayList<>(views.size());
+                for (final LsmDAO.View view : views) {
+                    iterators.add(LsmDAO.iterator(view.tables, bounds[low], view.sequence));
+                }
+                all = Iters.merge(iterators);
+            }
+            final ByteBuffer to = bounds[high];
+            records = to == null ? all : Iters.until(all, Record.of(to, ByteBuffer.allocate(0)));
+        }
+        return records;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Removal of all the keys within [from, to) written with the given sequence number.
+ * It hides the versions of the keys older than itself, newer ones are not affected.
+ */
+final class RangeTombstone {
+    @NotNull
+    private final ByteBuffer from;
+    @NotNull
+    private final ByteBuffer to;
+    private final long sequence;
+
+    RangeTombstone(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to,
+            final long sequence) {
+        assert from.compareTo(to) < 0;
+        this.from = from;
+        this.to = to;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Returns the first removed key.
+     */
+    @NotNull
+    ByteBuffer from() {
+        return from.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the key the removal ends at (exclusive).
+     */
+    @NotNull
+    ByteBuffer to() {
+        return to.asReadOnlyBuffer();
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Checks whether all the keys within [first, last] (both inclusive) are removed.
+     */
+    boolean covers(
+            @NotNull final ByteBuffer first,
+            @NotNull final ByteBuffer last) {
+        return from.compareTo(first) <= 0 && to.compareTo(last) > 0;
+    }
+}
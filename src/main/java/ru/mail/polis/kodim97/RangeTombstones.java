@@ -0,0 +1,235 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Immutable set of {@link RangeTombstone}s looked up by key.
+ *
+ * <p>The bounds of the tombstones cut the key space into fragments, each holding
+ * the sequence numbers of the tombstones covering it in ascending order. A lookup is
+ * a binary search for the fragment, then one for the sequence number.
+ */
+final class RangeTombstones {
+    private static final long[] NONE = new long[0];
+
+    static final RangeTombstones EMPTY = new RangeTombstones(Collections.emptyList());
+
+    private final List<RangeTombstone> tombstones;
+    /**
+     * Distinct bounds of the tombstones in ascending order.
+     */
+    private final ByteBuffer[] bounds;
+    /**
+     * Sequence numbers of the tombstones covering [bounds[i], bounds[i + 1]).
+     */
+    private final long[][] sequences;
+
+    private RangeTombstones(@NotNull final List<RangeTombstone> tombstones) {
+        this.tombstones = Collections.unmodifiableList(tombstones);
+
+        final TreeSet<ByteBuffer> points = new TreeSet<>();
+        for (final RangeTombstone tombstone : tombstones) {
+            points.add(tombstone.from());
+            points.add(tombstone.to());
+        }
+        this.bounds = points.toArray(new ByteBuffer[0]);
+
+        final int fragments = Math.max(0, bounds.length - 1);
+        final int[] counts = new int[fragments];
+        for (final RangeTombstone tombstone : tombstones) {
+            for (int i = bound(tombstone.from()); i < bound(tombstone.to()); i++) {
+                counts[i]++;
+            }
+        }
+        this.sequences = new long[fragments][];
+        for (int i = 0; i < fragments; i++) {
+            sequences[i] = new long[counts[i]];
+            counts[i] = 0;
+        }
+        for (final RangeTombstone tombstone : tombstones) {
+            for (int i = bound(tombstone.from()); i < bound(tombstone.to()); i++) {
+                sequences[i][counts[i]++] = tombstone.sequence();
+            }
+        }
+        for (final long[] fragment : sequences) {
+            Arrays.sort(fragment);
+        }
+    }
+
+    private RangeTombstones(
+            @NotNull final List<RangeTombstone> tombstones,
+            @NotNull final ByteBuffer[] bounds,
+            @NotNull final long[][] sequences) {
+        this.tombstones = Collections.unmodifiableList(tombstones);
+        this.bounds = bounds;
+        this.sequences = sequences;
+    }
+
+    @NotNull
+    static RangeTombstones of(@NotNull final Collection<RangeTombstone> tombstones) {
+        return tombstones.isEmpty() ? EMPTY : new RangeTombstones(new ArrayList<>(tombstones));
+    }
+
+    /**
+     * Returns the set with the tombstone added. Only the fragments the tombstone covers
+     * are split and copied, the rest are shared with this set.
+     */
+    @NotNull
+    RangeTombstones with(@NotNull final RangeTombstone tombstone) {
+        final List<RangeTombstone> result = new ArrayList<>(tombstones.size() + 1);
+        result.addAll(tombstones);
+        result.add(tombstone);
+
+        final ByteBuffer from = tombstone.from();
+        final ByteBuffer to = tombstone.to();
+        final int fromIndex = bound(from);
+        final int toIndex = bound(to);
+        // Positions of the bounds of the tombstone among the bounds of the set
+        final int first = fromIndex >= 0 ? fromIndex : -fromIndex - 1;
+        final int last = toIndex >= 0 ? toIndex : -toIndex - 1;
+        final int fromAdded = fromIndex >= 0 ? 0 : 1;
+        final int toAdded = toIndex >= 0 ? 0 : 1;
+
+        final ByteBuffer[] points = new ByteBuffer[bounds.length + fromAdded + toAdded];
+        System.arraycopy(bounds, 0, points, 0, first);
+        points[first] = from;
+        System.arraycopy(bounds, first, points, first + fromAdded, last - first);
+        points[last + fromAdded] = to;
+        System.arraycopy(bounds, last, points, last + fromAdded + toAdded, bounds.length - last);
+
+        final long[][] fragments = new long[points.length - 1][];
+        for (int i = 0; i < fragments.length; i++) {
+            final long[] covering;
+            if (i < first) {
+                covering = fragment(i);
+            } else if (i == first) {
+                // A new bound splits the fragment it falls into
+                covering = fragment(first - fromAdded);
+            } else if (i < last + fromAdded) {
+                covering = fragment(i - fromAdded);
+            } else if (i == last + fromAdded) {
+                covering = fragment(last - toAdded);
+            } else {
+                covering = fragment(i - fromAdded - toAdded);
+            }
+            fragments[i] = i >= first && i < last + fromAdded ? add(covering, tombstone.sequence()) : covering;
+        }
+        return new RangeTombstones(result, points, fragments);
+    }
+
+    boolean isEmpty() {
+        return tombstones.isEmpty();
+    }
+
+    /**
+     * Lists the tombstones in the order they were added.
+     */
+    @NotNull
+    List<RangeTombstone> tombstones() {
+        return tombstones;
+    }
+
+    /**
+     * Returns the smallest removed key, the set must not be empty.
+     */
+    @NotNull
+    ByteBuffer lowerBound() {
+        assert !isEmpty();
+        return bounds[0].asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the key all the removals end before, the set must not be empty.
+     */
+    @NotNull
+    ByteBuffer upperBound() {
+        assert !isEmpty();
+        return bounds[bounds.length - 1].asReadOnlyBuffer();
+    }
+
+    /**
+     * Finds the newest tombstone covering the key seen by the snapshot.
+     *
+     * @return its sequence number, 0 if there is none, so that the versions
+     *         with smaller sequence numbers are hidden from the snapshot
+     */
+    long covering(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        final long[] fragment = fragment(key);
+        if (fragment.length == 0) {
+            return 0;
+        }
+
+        final int index = Arrays.binarySearch(fragment, sequence);
+        if (index >= 0) {
+            return sequence;
+        }
+        final int insertion = -index - 1;
+        return insertion == 0 ? 0 : fragment[insertion - 1];
+    }
+
+    /**
+     * Finds the oldest tombstone covering the key written after the version.
+     *
+     * @return its sequence number, the first one of the snapshots not seeing the version
+     *         any more, {@link Long#MAX_VALUE} if there is none
+     */
+    long hiding(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        final long[] fragment = fragment(key);
+        final int index = Arrays.binarySearch(fragment, sequence);
+        final int next = index >= 0 ? index + 1 : -index - 1;
+        return next < fragment.length ? fragment[next] : Long.MAX_VALUE;
+    }
+
+    @NotNull
+    private long[] fragment(@NotNull final ByteBuffer key) {
+        int left = 0;
+        int right = bounds.length - 1;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            if (bounds[mid].compareTo(key) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        // The last bound not greater than the key starts the fragment, the last one starts none
+        return right < 0 || right >= sequences.length ? NONE : sequences[right];
+    }
+
+    /**
+     * Returns the sequence numbers of the fragment starting at the bound, none for the last bound.
+     */
+    @NotNull
+    private long[] fragment(final int bound) {
+        return bound >= 0 && bound < sequences.length ? sequences[bound] : NONE;
+    }
+
+    @NotNull
+    private static long[] add(
+            @NotNull final long[] sorted,
+            final long sequence) {
+        final int index = Arrays.binarySearch(sorted, sequence);
+        final int insertion = index >= 0 ? index : -index - 1;
+        final long[] result = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, insertion);
+        result[insertion] = sequence;
+        System.arraycopy(sorted, insertion, result, insertion + 1, sorted.length - insertion);
+        return result;
+    }
+
+    private int bound(@NotNull final ByteBuffer key) {
+        return Arrays.binarySearch(bounds, key);
+    }
+}
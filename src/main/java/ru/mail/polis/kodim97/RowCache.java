@@ -0,0 +1,386 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the latest values of hot keys, so that repeated lookups of a key
+ * cost a hash lookup instead of a search through the tables.
+ *
+ * <p>Each shard follows W-TinyLFU: new entries enter a small LRU window, and an entry
+ * leaving the window replaces the victim of the main segmented LRU only if the
+ * {@link FrequencySketch} saw its key more often. A burst of keys read once passes
+ * through the window without displacing the hot ones.
+ *
+ * <p>Writes invalidate their keys before they become visible, and a lookup caches the value
+ * it read only if no write to the shard newer than the lookup happened meanwhile, so
+ * the cache never serves a value older than the latest visible write.
+ */
+final class RowCache {
+    private static final int SHARDS = 16;
+    private static final double WINDOW_SHARE = 0.01;
+    private static final double PROTECTED_SHARE = 0.8;
+    /**
+     * Approximate heap bytes of an entry besides its key and value.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long capacity;
+    private final Shard[] shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates the cache.
+     *
+     * @param capacity maximum heap size of cached entries in bytes, 0 disables caching
+     */
+    RowCache(final long capacity) {
+        assert capacity >= 0;
+        this.capacity = capacity;
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(capacity / SHARDS);
+        }
+    }
+
+    /**
+     * Returns the cached value of the key or {@code null} counting a miss.
+     *
+     * @param now current time in milliseconds since the epoch, expired values are misses
+     */
+    @Nullable
+    ByteBuffer get(
+            @NotNull final ByteBuffer key,
+            final long now) {
+        if (capacity == 0) {
+            return null;
+        }
+
+        final ByteBuffer result = shard(key).get(key, now);
+        if (result == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return result;
+    }
+
+    /**
+     * Caches a copy of the value unless a write newer than the lookup which read it invalidated the shard.
+     *
+     * @param expiresAt time the value expires at, {@link Cell#NEVER} if it doesn't
+     * @param sequence  sequence number the value was read at
+     */
+    void put(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long expiresAt,
+            final long sequence) {
+        if (capacity == 0) {
+            return;
+        }
+
+        shard(key).put(key, value, expiresAt, sequence);
+    }
+
+    /**
+     * Drops the value of the key written with the given sequence number, before the write is visible.
+     */
+    void invalidate(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        if (capacity == 0) {
+            return;
+        }
+
+        shard(key).invalidate(key, sequence);
+    }
+
+    /**
+     * Drops all the values, for a write touching an unknown number of keys.
+     */
+    void invalidateAll(final long sequence) {
+        if (capacity == 0) {
+            return;
+        }
+
+        for (final Shard shard : shards) {
+            shard.invalidateAll(sequence);
+        }
+    }
+
+    @NotNull
+    CacheStats stats() {
+        long size = 0;
+        for (final Shard shard : shards) {
+            size += shard.size();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size);
+    }
+
+    private static int hash(@NotNull final ByteBuffer key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ h >>> 16;
+    }
+
+    @NotNull
+    private Shard shard(@NotNull final ByteBuffer key) {
+        return shards[hash(key) & (SHARDS - 1)];
+    }
+
+    private static final class Entry {
+        final ByteBuffer key;
+        final ByteBuffer value;
+        final long expiresAt;
+        final int size;
+
+        Entry(
+                @NotNull final ByteBuffer key,
+                @NotNull final ByteBuffer value,
+                final long expiresAt,
+                final int size) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    private final class Shard {
+        private final long capacity;
+        private final long windowCapacity;
+        private final long protectedCapacity;
+        private final FrequencySketch sketch;
+        private final LinkedHashMap<ByteBuffer, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<ByteBuffer, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<ByteBuffer, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long windowSize;
+        private long probationSize;
+        private long protectedSize;
+        /**
+         * Sequence number of the newest write invalidating a key of the shard.
+         */
+        private long invalidated;
+
+        Shard(final long capacity) {
+            this.capacity = capacity;
+            this.windowCapacity = (long) (capacity * WINDOW_SHARE);
+            this.protectedCapacity = (long) ((capacity - windowCapacity) * PROTECTED_SHARE);
+            this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, capacity / ENTRY_OVERHEAD));
+        }
+
+        synchronized long size() {
+            return windowSize + probationSize + protectedSize;
+        }
+
+        @Nullable
+        synchronized ByteBuffer get(
+                @NotNull final ByteBuffer key,
+                final long now) {
+            sketch.increment(hash(key));
+            Entry entry = window.get(key);
+            if (entry == null) {
+                entry = protectedSegment.get(key);
+            }
+            if (entry == null) {
+                entry = probation.remove(key);
+                if (entry != null) {
+                    promote(entry);
+                }
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= now) {
+                remove(key);
+                return null;
+            }
+            return entry.value.duplicate();
+        }
+
+        synchronized void put(
+                @NotNull final ByteBuffer key,
+                @NotNull final ByteBuffer value,
+                final long expiresAt,
+                final long sequence) {
+            final int size = key.remaining() + value.remaining() + ENTRY_OVERHEAD;
+            if (invalidated > sequence || size > capacity - windowCapacity || contains(key)) {
+                return;
+            }
+
+            final ByteBuffer keyCopy = ByteBuffer.allocate(key.remaining()).put(key.duplicate()).flip();
+            final ByteBuffer valueCopy = ByteBuffer.allocate(value.remaining()).put(value.duplicate()).flip();
+            window.put(keyCopy, new Entry(keyCopy, valueCopy.asReadOnlyBuffer(), expiresAt, size));
+            windowSize += size;
+
+            final Iterator<Map.Entry<ByteBuffer, Entry>> eldest = window.entrySet().iterator();
+            while (windowSize > windowCapacity && eldest.hasNext()) {
+                final Map.Entry<ByteBuffer, Entry> candidate = eldest.next();
+                eldest.remove();
+                windowSize -= candidate.getValue().size;
+                admit(candidate.getValue());
+            }
+        }
+
+        synchronized void invalidate(
+                @NotNull final ByteBuffer key,
+                final long sequence) {
+            invalidated = Math.max(invalidated, sequence);
+            remove(key);
+        }
+
+        synchronized void invalidateAll(final long sequence) {
+            invalidated = Math.max(invalidated, sequence);
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            windowSize = 0;
+            probationSize = 0;
+            protectedSize = 0;
+        }
+
+        private boolean contains(@NotNull final ByteBuffer key) {
+            return window.containsKey(key) || probation.containsKey(key) || protectedSegment.containsKey(key);
+        }
+
+        private void remove(@NotNull final ByteBuffer key) {
+            Entry entry = window.remove(key);
+            if (entry != null) {
+                windowSize -= entry.size;
+                return;
+            }
+            entry = probation.remove(key);
+            if (entry != null) {
+                probationSize -= entry.size;
+                return;
+            }
+            entry = protectedSegment.remove(key);
+            if (entry != null) {
+                protectedSize -= entry.size;
+            }
+        }
+
+        /**
+         * Moves the entry hit again from the probation segment to the protected one
+         * demoting the coldest protected entries.
+         */
+        private void promote(@NotNull final Entry entry) {
+            probationSize -= entry.size;
+            protectedSegment.put(entry.key, entry);
+            protectedSize += entry.size;
+            final Iterator<Map.Entry<ByteBuffer, Entry>> coldest = protectedSegment.entrySet().iterator();
+            while (protectedSize > protectedCapacity && coldest.hasNext()) {
+                final Map.Entry<ByteBuffer, Entry> demoted = coldest.next();
+                coldest.remove();
+                protectedSize -= demoted.getValue().size;
+                probation.put(demoted.getKey(), demoted.getValue());
+                probationSize += demoted.getValue().size;
+            }
+        }
+
+        /**
+         * Lets the entry leaving the window into the main segments if its key is more frequent
+         * than the ones it would evict.
+         */
+        private void admit(@NotNull final Entry entry) {
+            final long mainCapacity = capacity - windowCapacity;
+            final int frequency = sketch.frequency(hash(entry.key));
+            while (probationSize + protectedSize + entry.size > mainCapacity) {
+                final boolean fromProbation = !probation.isEmpty();
+                final Iterator<Map.Entry<ByteBuffer, Entry>> eldest =
+                        (fromProbation ? probation : protectedSegment).entrySet().iterator();
+                final Map.Entry<ByteBuffer, Entry> victim = eldest.next();
+                if (sketch.frequency(hash(victim.getKey())) >= frequency) {
+                    evictions.increment();
+                    return;
+                }
+
+                eldest.remove();
+                if (fromProbation) {
+                    probationSize -= victim.getValue().size;
+                } else {
+                    protectedSize -= victim.getValue().size;
+                }
+                evictions.increment();
+            }
+            probation.put(entry.key, entry);
+            probationSize += entry.size;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often keys were looked up recently.
+     * All the counters are halved once the number of increments reaches ten times the width,
+     * so that keys which stopped being hot lose their history.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final int MAX_COUNT = 15;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(final int entries) {
+            final int width = Integer.highestOneBit(Math.max(64, Math.min(entries, 1 << 24)) - 1) << 1;
+            this.table = new long[width / 16];
+            this.sampleSize = width * 10;
+        }
+
+        int frequency(final int hash) {
+            int result = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                result = Math.min(result, (int) (table[index(hash, i)] >>> offset(hash, i)) & MAX_COUNT);
+            }
+            return result;
+        }
+
+        void increment(final int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                final int index = index(hash, i);
+                final int offset = offset(hash, i);
+                if ((table[index] >>> offset & MAX_COUNT) != MAX_COUNT) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) {
+                reset();
+            }
+        }
+
+        private int index(
+                final int hash,
+                final int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        private static int offset(
+                final int hash,
+                final int i) {
+            // Each counter of a long belongs to a different row
+            return ((hash >>> (i << 3) & 3) << 2 | i) << 2;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = table[i] >>> 1 & RESET_MASK;
+            }
+            additions /= 2;
+        }
+    }
+}
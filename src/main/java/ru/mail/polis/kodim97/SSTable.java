@@ -0,0 +1,675 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable sorted table read through a memory mapped file.
+ *
+ * <p>File layout:
+ * <pre>
+ * block*       {@link Block} of entries with prefix-compressed keys, possibly compressed as a whole
+ * filter       {@link BloomFilter} of all the keys
+ * valueRefs    (segment(long) bytes(long))* of {@link ValueLog} segments holding the values
+ * ranges       count(int) (sequence(long) fromLength(int) from toLength(int) to)* of {@link RangeTombstone}s
+ * index        indexEntry* indexEntryOffset(int)*
+ * indexEntry   blockOffset(long) blockLength(int) rawLength(int) keyLength(int) firstKey
+ * footer       indexOffset(long) blockCount(int) entryCount(long) generation(long) level(int)
+ *              filterOffset(long) valueRefsOffset(long) rangesOffset(long) maxSequence(long)
+ *              expiresAt(long) compression(int) magic(int)
+ * </pre>
+ * Entries are sorted by {@link Cell#COMPARATOR}, a key has several versions only
+ * when snapshots pinned them. Both the sparse index and the block restart points are
+ * binary searched, so a seek costs O(log n) and returned values are slices of the mapping.
+ * Point lookups consult the filter first and don't touch the index for most absent keys.
+ *
+ * <p>Range tombstones are loaded on open, as there are few of them. A table holding only
+ * range tombstones has no blocks, its key range is the one of the tombstones.
+ *
+ * <p>The footer keeps the time the last of the values expires at, so that a table
+ * whose values have all expired can be dropped without reading it.
+ *
+ * <p>The generation stored in the footer orders tables by data recency and may
+ * differ from the file name: a compacted table inherits the newest generation of its inputs.
+ *
+ * <p>Blocks are read through the shared {@link BlockCache}, the mapping only backs
+ * the blocks missing from it and the index. A block is compressed with the {@link Codec}
+ * of the table {@link Compression} unless its length equals the raw one, the cache keeps
+ * blocks decompressed so that hits cost no decompression.
+ *
+ * <p>The table keeps the value log segments it references, so their values stay readable
+ * through its records even after the segments are collected.
+ */
+final class SSTable implements Table {
+    static final int MAGIC = 0x4C534D09;
+    static final int FOOTER_SIZE = Long.BYTES * 8 + Integer.BYTES * 4;
+
+    private final Path file;
+    private final ByteBuffer mapped;
+    private final long indexOffset;
+    private final int blockCount;
+    private final long entryCount;
+    private final long generation;
+    private final int level;
+    private final long maxSequence;
+    private final long expiresAt;
+    private final BloomFilter filter;
+    private final RangeTombstones ranges;
+    private final Map<Long, ValueLog.Segment> segments;
+    private final Map<Long, Long> valueBytes;
+    @Nullable
+    private final Codec codec;
+    /**
+     * Decoded on first use, so that opening a table reads only its footer.
+     */
+    @Nullable
+    private volatile ByteBuffer maxKey;
+    private final BlockCache cache;
+    private final long cacheId;
+    private final LongAdder filterChecks = new LongAdder();
+    private final LongAdder filterNegatives = new LongAdder();
+    private final LongAdder filterFalsePositives = new LongAdder();
+
+    private SSTable(
+            @NotNull final Path file,
+            @NotNull final ByteBuffer mapped,
+            @NotNull final BlockCache cache,
+            @NotNull final ValueLog values) throws IOException {
+        this.file = file;
+        this.mapped = mapped;
+        this.cache = cache;
+        this.cacheId = cache.newTableId();
+
+        final int footer = mapped.limit() - FOOTER_SIZE;
+        if (footer < 0 || mapped.getInt(mapped.limit() - Integer.BYTES) != MAGIC) {
+            throw new IOException("Not a table: " + file);
+        }
+        this.indexOffset = mapped.getLong(footer);
+        this.blockCount = mapped.getInt(footer + Long.BYTES);
+        this.entryCount = mapped.getLong(footer + Long.BYTES + Integer.BYTES);
+        this.generation = mapped.getLong(footer + Long.BYTES * 2 + Integer.BYTES);
+        this.level = mapped.getInt(footer + Long.BYTES * 3 + Integer.BYTES);
+        final long filterOffset = mapped.getLong(footer + Long.BYTES * 3 + Integer.BYTES * 2);
+        final long refsOffset = mapped.getLong(footer + Long.BYTES * 4 + Integer.BYTES * 2);
+        final long rangesOffset = mapped.getLong(footer + Long.BYTES * 5 + Integer.BYTES * 2);
+        this.maxSequence = mapped.getLong(footer + Long.BYTES * 6 + Integer.BYTES * 2);
+        this.expiresAt = mapped.getLong(footer + Long.BYTES * 7 + Integer.BYTES * 2);
+        final Compression compression;
+        try {
+            compression = Compression.byId(mapped.getInt(footer + Long.BYTES * 8 + Integer.BYTES * 2));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unsupported table: " + file, e);
+        }
+        this.codec = compression == Compression.NONE ? null : Codec.of(compression);
+        this.filter = BloomFilter.wrap(Buffers.slice(mapped, (int) filterOffset, (int) (refsOffset - filterOffset)));
+
+        final Map<Long, ValueLog.Segment> referenced = new HashMap<>();
+        final Map<Long, Long> bytes = new HashMap<>();
+        for (long ref = refsOffset; ref < rangesOffset; ref += Long.BYTES * 2) {
+            final long id = mapped.getLong((int) ref);
+            referenced.put(id, values.segment(id));
+            bytes.put(id, mapped.getLong((int) ref + Long.BYTES));
+        }
+        this.segments = referenced;
+        this.valueBytes = Collections.unmodifiableMap(bytes);
+        this.ranges = readRanges(mapped, (int) rangesOffset);
+    }
+
+    @NotNull
+    private static RangeTombstones readRanges(
+            @NotNull final ByteBuffer mapped,
+            final int offset) {
+        final int count = mapped.getInt(offset);
+        final List<RangeTombstone> result = new ArrayList<>(count);
+        int position = offset + Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            final long sequence = mapped.getLong(position);
+            final int fromLength = mapped.getInt(position + Long.BYTES);
+            final ByteBuffer from = Buffers.slice(mapped, position + Long.BYTES + Integer.BYTES, fromLength);
+            position += Long.BYTES + Integer.BYTES + fromLength;
+            final int toLength = mapped.getInt(position);
+            final ByteBuffer to = Buffers.slice(mapped, position + Integer.BYTES, toLength);
+            position += Integer.BYTES + toLength;
+            result.add(new RangeTombstone(from, to, sequence));
+        }
+        return RangeTombstones.of(result);
+    }
+
+    /**
+     * Maps the table file into memory.
+     *
+     * @param file   table file
+     * @param cache  cache to keep the table blocks in
+     * @param values log holding the values the table points to
+     */
+    @NotNull
+    static SSTable open(
+            @NotNull final Path file,
+            @NotNull final BlockCache cache,
+            @NotNull final ValueLog values) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Table is too big: " + file);
+            }
+            return new SSTable(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, size), cache, values);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(
+            @NotNull final ByteBuffer from,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        return Versions.visible(cells(from, true), sequence, ranges);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> descendingIterator(
+            @NotNull final ByteBuffer from,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        return Versions.visibleDescending(new DescendingIterator(from), sequence, ranges);
+    }
+
+    /**
+     * Provides all the versions bypassing the block cache, so that bulk reads
+     * like compaction don't evict the blocks of user requests.
+     */
+    @NotNull
+    @Override
+    public Iterator<Cell> cells(@NotNull final ByteBuffer from) {
+        return cells(from, false);
+    }
+
+    @NotNull
+    @Override
+    public TableCursor cursor(@NotNull final ByteBuffer from) {
+        return cursor(from, true);
+    }
+
+    @Nullable
+    @Override
+    public Cell get(
+            @NotNull final ByteBuffer key,
+            final long sequence) {
+        if (blockCount == 0) {
+            return null;
+        }
+        filterChecks.increment();
+        if (!filter.mightContain(key)) {
+            filterNegatives.increment();
+            return null;
+        }
+
+        final Iterator<Cell> versions = cells(key, true);
+        boolean found = false;
+        while (versions.hasNext()) {
+            final Cell cell = versions.next();
+            if (!cell.hasKey(key)) {
+                break;
+            }
+            found = true;
+            if (cell.sequence() <= sequence) {
+                return cell;
+            }
+        }
+        if (!found) {
+            filterFalsePositives.increment();
+        }
+        return null;
+    }
+
+    @NotNull
+    @Override
+    public RangeTombstones rangeTombstones() {
+        return ranges;
+    }
+
+    @Override
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * Compaction level, flushed tables start at level 0.
+     */
+    int level() {
+        return level;
+    }
+
+    @NotNull
+    Path file() {
+        return file;
+    }
+
+    long entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Average number of entries in a block.
+     */
+    double entriesPerBlock() {
+        return blockCount == 0 ? 0 : (double) entryCount / blockCount;
+    }
+
+    /**
+     * Returns the first keys of the blocks starting within (from, to), the points where
+     * a scan of the range may be split without cutting blocks.
+     *
+     * @param to end of the range (exclusive), {@code null} for the end of the table
+     */
+    @NotNull
+    List<ByteBuffer> blockKeys(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final List<ByteBuffer> result = new ArrayList<>();
+        for (int i = floorBlock(from) + 1; i < blockCount; i++) {
+            final ByteBuffer key = firstKey(i);
+            if (to != null && key.compareTo(to) >= 0) {
+                break;
+            }
+            result.add(key);
+        }
+        return result;
+    }
+
+    /**
+     * Sequence number of the newest version or range tombstone in the table.
+     */
+    long maxSequence() {
+        return maxSequence;
+    }
+
+    /**
+     * Time the last of the values in the table expires at, {@link Cell#NEVER} if some never do
+     * and 0 if there are no values.
+     */
+    long expiresAt() {
+        return expiresAt;
+    }
+
+    long sizeInBytes() {
+        return mapped.limit();
+    }
+
+    /**
+     * Number of point lookups which consulted the filter.
+     */
+    long filterChecks() {
+        return filterChecks.sum();
+    }
+
+    /**
+     * Number of point lookups the filter answered without reading blocks.
+     */
+    long filterNegatives() {
+        return filterNegatives.sum();
+    }
+
+    /**
+     * Number of point lookups the filter let through for absent keys.
+     */
+    long filterFalsePositives() {
+        return filterFalsePositives.sum();
+    }
+
+    /**
+     * Returns the number of value bytes the table references by value log segment identifiers.
+     */
+    @NotNull
+    Map<Long, Long> valueBytes() {
+        return valueBytes;
+    }
+
+    boolean isEmpty() {
+        return blockCount == 0 && ranges.isEmpty();
+    }
+
+    /**
+     * Returns the smallest key or start of a range tombstone, the table must not be empty.
+     */
+    @NotNull
+    ByteBuffer minKey() {
+        assert !isEmpty();
+        if (ranges.isEmpty()) {
+            return firstKey(0);
+        }
+        if (blockCount == 0) {
+            return ranges.lowerBound();
+        }
+        final ByteBuffer first = firstKey(0);
+        final ByteBuffer lower = ranges.lowerBound();
+        return first.compareTo(lower) <= 0 ? first : lower;
+    }
+
+    /**
+     * Returns the largest key or end of a range tombstone, the table must not be empty.
+     */
+    @NotNull
+    ByteBuffer maxKey() {
+        assert !isEmpty();
+        ByteBuffer result = maxKey;
+        if (result == null) {
+            // Racing threads decode the same key
+            result = blockCount == 0 ? ranges.upperBound() : lastKey();
+            if (!ranges.isEmpty() && ranges.upperBound().compareTo(result) > 0) {
+                result = ranges.upperBound();
+            }
+            maxKey = result;
+        }
+        return result.asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks whether the table may contain keys within [from, to] (both inclusive).
+     */
+    boolean overlaps(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to) {
+        return !isEmpty() && minKey().compareTo(to) <= 0 && maxKey().compareTo(from) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return file.getFileName() + "@L" + level + "#" + generation;
+    }
+
+    private int indexEntry(final int blockIndex) {
+        final int offsets = mapped.limit() - FOOTER_SIZE - blockCount * Integer.BYTES;
+        return (int) indexOffset + mapped.getInt(offsets + blockIndex * Integer.BYTES);
+    }
+
+    @NotNull
+    private ByteBuffer firstKey(final int blockIndex) {
+        final int entry = indexEntry(blockIndex);
+        final int keyLength = mapped.getInt(entry + Long.BYTES + Integer.BYTES * 2);
+        return Buffers.slice(mapped, entry + Long.BYTES + Integer.BYTES * 3, keyLength);
+    }
+
+    @NotNull
+    private Iterator<Cell> cells(
+            @NotNull final ByteBuffer from,
+            final boolean fillCache) {
+        return new TableIterator(cursor(from, fillCache));
+    }
+
+    @NotNull
+    private BlockCursor cursor(
+            @NotNull final ByteBuffer from,
+            final boolean fillCache) {
+        if (blockCount == 0) {
+            return new BlockCursor(0, null, fillCache);
+        }
+
+        final int blockIndex = Math.max(0, lowerBlock(from));
+        return new BlockCursor(blockIndex, block(blockIndex, fillCache).seek(from), fillCache);
+    }
+
+    /**
+     * Decodes the last block to find the largest key, keys aren't stored in full.
+     */
+    @NotNull
+    private ByteBuffer lastKey() {
+        final Block.Cursor cursor = block(blockCount - 1, false).first();
+        ByteBuffer last = null;
+        while (cursor.isValid()) {
+            final ByteBuffer key = cursor.key();
+            last = ByteBuffer.allocate(key.remaining()).put(key.duplicate()).flip();
+            cursor.next();
+        }
+        assert last != null;
+        return last;
+    }
+
+    /**
+     * Finds the last block starting with a key not greater than the given one, -1 if none.
+     */
+    private int floorBlock(@NotNull final ByteBuffer key) {
+        int left = 0;
+        int right = blockCount - 1;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            if (firstKey(mid).compareTo(key) <= 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return right;
+    }
+
+    /**
+     * Finds the last block starting before the key, -1 if none.
+     *
+     * <p>Versions of the key may continue from the previous block, so a block
+     * starting with the key itself doesn't do.
+     */
+    private int lowerBlock(@NotNull final ByteBuffer key) {
+        int left = 0;
+        int right = blockCount - 1;
+        while (left <= right) {
+            final int mid = (left + right) >>> 1;
+            final int cmp = firstKey(mid).compareTo(key);
+            if (cmp < 0) {
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        return right;
+    }
+
+    @NotNull
+    private Block block(
+            final int blockIndex,
+            final boolean fillCache) {
+        final ByteBuffer cached = cache.get(cacheId, blockIndex);
+        if (cached != null) {
+            return new Block(cached);
+        }
+
+        final int entry = indexEntry(blockIndex);
+        final long offset = mapped.getLong(entry);
+        final int length = mapped.getInt(entry + Long.BYTES);
+        final int rawLength = mapped.getInt(entry + Long.BYTES + Integer.BYTES);
+        ByteBuffer block = Buffers.slice(mapped, (int) offset, length);
+        if (length != rawLength) {
+            assert codec != null;
+            final ByteBuffer raw = ByteBuffer.allocate(rawLength);
+            codec.decompress(block, raw);
+            block = raw.flip();
+        }
+        return new Block(fillCache ? cache.put(cacheId, blockIndex, block) : block);
+    }
+
+    /**
+     * Moves through the blocks one by one, allocating only on moving to the next block.
+     */
+    private final class BlockCursor implements TableCursor {
+        private final boolean fillCache;
+        private int blockIndex;
+        @Nullable
+        private Block.Cursor current;
+
+        BlockCursor(
+                final int blockIndex,
+                @Nullable final Block.Cursor current,
+                final boolean fillCache) {
+            this.fillCache = fillCache;
+            this.blockIndex = blockIndex;
+            this.current = current;
+            skipExhaustedBlocks();
+        }
+
+        @Override
+        public boolean isValid() {
+            return current != null;
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer key() {
+            return current().key();
+        }
+
+        @Override
+        public long sequence() {
+            return current().sequence();
+        }
+
+        @Override
+        public boolean isTombstone() {
+            return current().isTombstone();
+        }
+
+        @Override
+        public long expiresAt() {
+            return current().expiresAt();
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer value() {
+            final Block.Cursor cursor = current();
+            final ByteBuffer value = cursor.value();
+            if (!cursor.isPointer()) {
+                return value;
+            }
+
+            final ValueLog.Segment segment = segments.get(value.getLong(value.position()));
+            try {
+                return segment.read(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't read value from " + segment, e);
+            }
+        }
+
+        @NotNull
+        Cell cell() {
+            return current().cell(segments::get);
+        }
+
+        @Override
+        public void next() {
+            current().next();
+            skipExhaustedBlocks();
+        }
+
+        @NotNull
+        private Block.Cursor current() {
+            assert current != null;
+            return current;
+        }
+
+        private void skipExhaustedBlocks() {
+            while (current != null && !current.isValid()) {
+                blockIndex++;
+                current = blockIndex < blockCount ? block(blockIndex, fillCache).first() : null;
+            }
+        }
+    }
+
+    /**
+     * Provides the versions in reverse {@link Cell#COMPARATOR} order starting from the last one
+     * with key not greater than the given one, reading blocks a restart interval at a time.
+     */
+    private final class DescendingIterator implements Iterator<Cell> {
+        private final ByteBuffer from;
+        private final Deque<Cell> pending = new ArrayDeque<>();
+        private int blockIndex;
+        @Nullable
+        private Block block;
+        private int restart;
+
+        DescendingIterator(@NotNull final ByteBuffer from) {
+            this.from = from;
+            // Later blocks start with greater keys
+            this.blockIndex = floorBlock(from) + 1;
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public Cell next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("Table is exhausted");
+            }
+
+            final Cell result = pending.pop();
+            if (pending.isEmpty()) {
+                fill();
+            }
+            return result;
+        }
+
+        private void fill() {
+            while (pending.isEmpty()) {
+                if (block == null || restart == 0) {
+                    if (blockIndex == 0) {
+                        return;
+                    }
+                    blockIndex--;
+                    block = block(blockIndex, true);
+                    restart = block.restartCount();
+                }
+
+                restart--;
+                for (final Cell cell : block.restartInterval(restart, segments::get)) {
+                    if (cell.key().compareTo(from) <= 0) {
+                        pending.push(cell);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class TableIterator implements Iterator<Cell> {
+        private final BlockCursor cursor;
+
+        TableIterator(@NotNull final BlockCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.isValid();
+        }
+
+        @Override
+        public Cell next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("Table is exhausted");
+            }
+
+            final Cell result = cursor.cell();
+            cursor.next();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Writes sorted {@link Cell}s in the {@link SSTable} format.
+ */
+final class SSTableWriter {
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final FileChannel channel;
+    private final int blockSize;
+    private final double falsePositiveRate;
+    private final int restartInterval;
+    private final Compression compression;
+    @Nullable
+    private final Codec codec;
+    private final long generation;
+    private final int level;
+
+    private ByteBuffer block;
+    private ByteBuffer compressed;
+    private int[] restartOffsets = new int[64];
+    private int restartCount;
+    private int blockEntries;
+    private ByteBuffer firstKey;
+    private ByteBuffer previousKey;
+
+    private ByteBuffer index;
+    private int[] indexOffsets = new int[64];
+    private int blockCount;
+
+    private long position;
+    private long entryCount;
+    private long maxSequence;
+    private long expiresAt;
+    /**
+     * Value bytes referenced by pointers in each value log segment.
+     */
+    private final Map<ValueLog.Segment, Long> valueBytes = new IdentityHashMap<>();
+
+    private SSTableWriter(
+            @NotNull final FileChannel channel,
+            @NotNull final Config config,
+            final long generation,
+            final int level) {
+        this.channel = channel;
+        this.blockSize = config.getBlockSize();
+        this.falsePositiveRate = config.getBloomFalsePositiveRate();
+        this.restartInterval = config.getRestartInterval();
+        this.compression = config.getCompression();
+        this.codec = compression == Compression.NONE ? null : Codec.of(compression);
+        this.generation = generation;
+        this.level = level;
+        this.block = ByteBuffer.allocate(blockSize * 2);
+        this.compressed = ByteBuffer.allocate(blockSize * 2);
+        this.index = ByteBuffer.allocate(blockSize);
+    }
+
+    /**
+     * Atomically creates the table file from cells in {@link Cell#COMPARATOR} order.
+     * Value log segments the cells point to are forced to disk before the file is committed,
+     * and the file is durably named once this returns, so it may be added to the {@link Manifest}.
+     *
+     * @param file       target file, replaced if a failed flush left it
+     * @param cells      versions to write including tombstones
+     * @param ranges     range tombstones to write, taken once the cells are written
+     * @param config     block size, compression and filter options
+     * @param generation recency of the data, see {@link SSTable}
+     * @param level      compaction level of the table
+     */
+    static void write(
+            @NotNull final Path file,
+            @NotNull final Iterator<Cell> cells,
+            @NotNull final Supplier<List<RangeTombstone>> ranges,
+            @NotNull final Config config,
+            final long generation,
+            final int level) throws IOException {
+        final Path tmp = file.resolveSibling(file.getFileName() + TMP_SUFFIX);
+        try {
+            writeTo(tmp, cells, ranges, config, generation, level);
+        } catch (IOException e) {
+            // Flushes are retried with the same file
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        Directories.sync(file.getParent());
+    }
+
+    private static void writeTo(
+            @NotNull final Path tmp,
+            @NotNull final Iterator<Cell> cells,
+            @NotNull final Supplier<List<RangeTombstone>> ranges,
+            @NotNull final Config config,
+            final long generation,
+            final int level) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                tmp,
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            final SSTableWriter writer = new SSTableWriter(channel, config, generation, level);
+            try {
+                while (cells.hasNext()) {
+                    writer.add(cells.next());
+                }
+            } catch (UncheckedIOException e) {
+                // Thrown by cells moving values to the log
+                throw e.getCause();
+            }
+            writer.finish(ranges.get());
+            for (final ValueLog.Segment segment : writer.valueBytes.keySet()) {
+                segment.sync();
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Checks whether the file is an unfinished table left by a crash.
+     */
+    static boolean isTemporary(@NotNull final Path file) {
+        return file.getFileName().toString().endsWith(TMP_SUFFIX);
+    }
+
+    private void add(@NotNull final Cell cell) throws IOException {
+        final ByteBuffer key = cell.key();
+        // Varints take at most a byte more than fixed-size numbers
+        final int maxSize = Integer.BYTES * 3 + key.remaining() + Long.BYTES * 2 + 6
+                + (cell.isTombstone() ? 0 : cell.value().remaining());
+
+        if (blockEntries > 0 && block.position() + maxSize > blockSize) {
+            flushBlock();
+        }
+
+        final int shared;
+        if (blockEntries % restartInterval == 0) {
+            if (blockEntries == 0) {
+                firstKey = key;
+            }
+            restartOffsets = ensureCapacity(restartOffsets, restartCount);
+            restartOffsets[restartCount++] = block.position();
+            shared = 0;
+        } else {
+            final int mismatch = previousKey.mismatch(key);
+            shared = mismatch < 0 ? key.remaining() : mismatch;
+        }
+
+        block = Buffers.ensureRemaining(block, maxSize);
+        Buffers.putVarInt(block, shared);
+        Buffers.putVarInt(block, key.remaining() - shared);
+        block.put(Buffers.slice(key, key.position() + shared, key.remaining() - shared));
+        Buffers.putVarLong(block, cell.sequence());
+        if (cell.isTombstone()) {
+            block.put(Block.FLAG_TOMBSTONE);
+        } else {
+            final ByteBuffer data = cell.value();
+            byte flags = 0;
+            if (cell.isPointer()) {
+                flags |= Block.FLAG_POINTER;
+                final int length = data.getInt(data.position() + Long.BYTES * 2);
+                valueBytes.merge(cell.segment(), (long) length, Long::sum);
+            }
+            if (cell.expiresAt() != Cell.NEVER) {
+                flags |= Block.FLAG_EXPIRING;
+            }
+            block.put(flags);
+            if (cell.expiresAt() != Cell.NEVER) {
+                Buffers.putVarLong(block, cell.expiresAt());
+            }
+            expiresAt = Math.max(expiresAt, cell.expiresAt());
+            Buffers.putVarInt(block, data.remaining());
+            block.put(data);
+        }
+        previousKey = key;
+        blockEntries++;
+        entryCount++;
+        maxSequence = Math.max(maxSequence, cell.sequence());
+    }
+
+    private void flushBlock() throws IOException {
+        block = Buffers.ensureRemaining(block, (restartCount + 1) * Integer.BYTES);
+        for (int i = 0; i < restartCount; i++) {
+            block.putInt(restartOffsets[i]);
+        }
+        block.putInt(restartCount);
+        block.flip();
+        final int rawLength = block.remaining();
+        final ByteBuffer stored = compress(block);
+
+        final int entrySize = Long.BYTES + Integer.BYTES * 3 + firstKey.remaining();
+        index = Buffers.ensureRemaining(index, entrySize);
+        indexOffsets = ensureCapacity(indexOffsets, blockCount);
+        indexOffsets[blockCount++] = index.position();
+        index.putLong(position);
+        index.putInt(stored.remaining());
+        index.putInt(rawLength);
+        index.putInt(firstKey.remaining());
+        index.put(firstKey.duplicate());
+
+        position += writeFully(stored);
+        block.clear();
+        blockEntries = 0;
+        restartCount = 0;
+    }
+
+    /**
+     * Compresses the block unless it saves less than an eighth of it,
+     * a block is stored as is if its length equals the raw one.
+     */
+    @NotNull
+    private ByteBuffer compress(@NotNull final ByteBuffer raw) {
+        if (codec == null) {
+            return raw;
+        }
+
+        if (compressed.capacity() < raw.remaining()) {
+            compressed = ByteBuffer.allocate(raw.remaining());
+        }
+        compressed.clear().limit(raw.remaining() - raw.remaining() / 8 - 1);
+        if (!codec.compress(raw.duplicate(), compressed)) {
+            return raw;
+        }
+        return compressed.flip();
+    }
+
+    private void finish(@NotNull final List<RangeTombstone> ranges) throws IOException {
+        if (blockEntries > 0) {
+            flushBlock();
+        }
+
+        final long filterOffset = position;
+        position += writeFilter();
+
+        final long refsOffset = position;
+        final ByteBuffer refs = ByteBuffer.allocate(valueBytes.size() * Long.BYTES * 2);
+        valueBytes.forEach((segment, bytes) -> refs.putLong(segment.id()).putLong(bytes));
+        position += writeFully(refs.flip());
+
+        final long rangesOffset = position;
+        position += writeRanges(ranges);
+
+        final long indexOffset = position;
+        index = Buffers.ensureRemaining(index, blockCount * Integer.BYTES + SSTable.FOOTER_SIZE);
+        for (int i = 0; i < blockCount; i++) {
+            index.putInt(indexOffsets[i]);
+        }
+        index.putLong(indexOffset);
+        index.putInt(blockCount);
+        index.putLong(entryCount);
+        index.putLong(generation);
+        index.putInt(level);
+        index.putLong(filterOffset);
+        index.putLong(refsOffset);
+        index.putLong(rangesOffset);
+        index.putLong(maxSequence);
+        index.putLong(expiresAt);
+        index.putInt(compression.id());
+        index.putInt(SSTable.MAGIC);
+        index.flip();
+        position += writeFully(index);
+    }
+
+    private int writeRanges(@NotNull final List<RangeTombstone> ranges) throws IOException {
+        int size = Integer.BYTES;
+        for (final RangeTombstone range : ranges) {
+            size += Long.BYTES + Integer.BYTES * 2 + range.from().remaining() + range.to().remaining();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(ranges.size());
+        for (final RangeTombstone range : ranges) {
+            buffer.putLong(range.sequence());
+            buffer.putInt(range.from().remaining()).put(range.from());
+            buffer.putInt(range.to().remaining()).put(range.to());
+            maxSequence = Math.max(maxSequence, range.sequence());
+        }
+        return writeFully(buffer.flip());
+    }
+
+    /**
+     * Fills the filter right in the file from the keys of written blocks,
+     * so that no per-key state is kept on heap however large the table is.
+     */
+    private int writeFilter() throws IOException {
+        final int size = BloomFilter.sizeInBytes(entryCount, falsePositiveRate);
+        if (position + size > Integer.MAX_VALUE) {
+            throw new IOException("Table is too big");
+        }
+
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, position + size);
+        final BloomFilter filter = BloomFilter.create(Buffers.slice(mapped, (int) position, size), falsePositiveRate);
+        for (int i = 0; i < blockCount; i++) {
+            final int entry = indexOffsets[i];
+            final int offset = (int) index.getLong(entry);
+            final int length = index.getInt(entry + Long.BYTES);
+            final int rawLength = index.getInt(entry + Long.BYTES + Integer.BYTES);
+            ByteBuffer data = Buffers.slice(mapped, offset, length);
+            if (length != rawLength) {
+                assert codec != null;
+                block.clear().limit(rawLength);
+                codec.decompress(data, block);
+                data = block.flip();
+            }
+            for (Block.Cursor cursor = new Block(data).first();
+                    cursor.isValid();
+                    cursor.next()) {
+                filter.add(cursor.key());
+            }
+        }
+        mapped.force();
+
+        channel.position(position + size);
+        return size;
+    }
+
+    private int writeFully(@NotNull final ByteBuffer buffer) throws IOException {
+        final int size = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return size;
+    }
+
+    @NotNull
+    private static int[] ensureCapacity(
+            @NotNull final int[] array,
+            final int index) {
+        return index < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.Cursor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Merges the cursors of the shards of a {@link ShardedDAO} in key order without allocating per step.
+ *
+ * <p>Sources are kept in a binary heap ordered by the current key, as {@link MergedCursor} does.
+ * Shards hold disjoint keys, so there are no versions to resolve, the top of the heap is the next record.
+ */
+final class ShardedCursor implements Cursor {
+    private final Cursor[] sources;
+    private final int[] heap;
+    private int size;
+    private boolean started;
+
+    /**
+     * Merges the sources, which must not share keys.
+     */
+    ShardedCursor(@NotNull final List<Cursor> sources) {
+        this.sources = sources.toArray(new Cursor[0]);
+        this.heap = new int[this.sources.length];
+    }
+
+    @Override
+    public boolean next() {
+        if (!started) {
+            started = true;
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].next()) {
+                    heap[size++] = i;
+                }
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+        } else if (size > 0) {
+            if (!sources[heap[0]].next()) {
+                heap[0] = heap[--size];
+            }
+            siftDown(0);
+        }
+        return size > 0;
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer key() {
+        return current().key();
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer value() {
+        return current().value();
+    }
+
+    @Override
+    public void copyKeyTo(@NotNull final ByteBuffer dst) {
+        current().copyKeyTo(dst);
+    }
+
+    @Override
+    public void copyValueTo(@NotNull final ByteBuffer dst) {
+        current().copyValueTo(dst);
+    }
+
+    @NotNull
+    private Cursor current() {
+        if (size == 0) {
+            throw new IllegalStateException("Cursor is not at a record");
+        }
+        return sources[heap[0]];
+    }
+
+    private void siftDown(final int from) {
+        int parent = from;
+        while (true) {
+            final int left = parent * 2 + 1;
+            if (left >= size) {
+                return;
+            }
+
+            final int right = left + 1;
+            final int child = right < size && less(heap[right], heap[left]) ? right : left;
+            if (!less(heap[child], heap[parent])) {
+                return;
+            }
+            final int swap = heap[child];
+            heap[child] = heap[parent];
+            heap[parent] = swap;
+            parent = child;
+        }
+    }
+
+    private boolean less(
+            final int left,
+            final int right) {
+        return sources[left].key().compareTo(sources[right].key()) < 0;
+    }
+}
@@ -0,0 +1,493 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.AsyncCalls;
+import ru.mail.polis.AsyncDAO;
+import ru.mail.polis.Cursor;
+import ru.mail.polis.DAO;
+import ru.mail.polis.Iters;
+import ru.mail.polis.Record;
+import ru.mail.polis.Snapshot;
+import ru.mail.polis.WriteBatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * {@link DAO} hash partitioning the keys over {@link Config#getShards()} independent
+ * {@link LsmDAO}s, so that writes to different shards contend for neither a memtable nor a log.
+ *
+ * <p>Each shard lives in the {@code shard-<index>} subdirectory and flushes and compacts
+ * on its own. The shard of a key depends only on the key bytes and the number of shards,
+ * which is fixed when the storage is created. The {@value #LAYOUT} file records the number
+ * of shards and the hash partitioning the keys, so a storage is never opened with others.
+ *
+ * <p>Layout file:
+ * <pre>
+ * layout       magic(int) hash(int) shards(int)
+ * </pre>
+ *
+ * <p>The shards share a single block cache and I/O pool, and split the memtable and row cache
+ * budgets of the {@link Config}, so that the storage takes as much memory as an unsharded one.
+ *
+ * <p>Scans, cursors and streams merge the shards in key order, and {@link #async()} passes
+ * the calls for a key to its shard. The shards share no sequence numbers, so guarantees
+ * spanning keys hold within a shard only: a batch must keep to the keys of one shard, see
+ * {@link #shardOf}, and a snapshot is consistent within each shard but not across them.
+ */
+public final class ShardedDAO implements DAO {
+    static final String PREFIX = "shard-";
+    static final String LAYOUT = "SHARDS";
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedDAO.class);
+    private static final int MAGIC = 0x4C534D53;
+    /**
+     * Identifies the hash of {@link #shardOf}, a new hash must get a new one.
+     */
+    private static final int HASH = 1;
+    private static final int LAYOUT_SIZE = Integer.BYTES * 3;
+    private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final File storage;
+    private final LsmDAO[] shards;
+    private final ThreadPoolExecutor io;
+    private final AsyncDAO async = new ShardedAsyncDAO();
+
+    private ShardedDAO(
+            @NotNull final File storage,
+            @NotNull final LsmDAO[] shards,
+            @NotNull final ThreadPoolExecutor io) {
+        this.storage = storage;
+        this.shards = shards;
+        this.io = io;
+    }
+
+    /**
+     * Opens the storage in the given directory, a new one is created with the configured shards.
+     *
+     * @param storage directory to persist the data to
+     * @param config  tuning options of the whole storage
+     */
+    @NotNull
+    public static ShardedDAO open(
+            @NotNull final File storage,
+            @NotNull final Config config) throws IOException {
+        final Path root = storage.toPath();
+        final Path layout = root.resolve(LAYOUT);
+        if (Files.exists(layout)) {
+            final int found = readLayout(layout);
+            if (found != config.getShards()) {
+                throw new IOException("Storage in " + storage + " has " + found
+                        + " shards, configured " + config.getShards());
+            }
+        } else if (hasShards(root)) {
+            throw new IOException("Storage in " + storage + " has shards but no " + LAYOUT + " file");
+        } else if (Files.exists(root.resolve(Manifest.FILE_NAME))) {
+            throw new IOException("Storage in " + storage + " is not sharded");
+        } else {
+            writeLayout(root, config.getShards());
+        }
+
+        final Config shardConfig = config.perShard();
+        final BlockCache blockCache = LsmDAO.newBlockCache(config);
+        final ThreadPoolExecutor io = LsmDAO.newIoPool(config);
+        final LsmDAO[] shards = new LsmDAO[config.getShards()];
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                final Path dir = Files.createDirectories(root.resolve(PREFIX + i));
+                shards[i] = new LsmDAO(dir.toFile(), shardConfig, blockCache, io);
+            }
+        } catch (IOException e) {
+            io.shutdownNow();
+            close(shards, e);
+            throw e;
+        }
+        log.debug("Opened {} shards in {}", shards.length, storage);
+        return new ShardedDAO(storage, shards, io);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> iterator(@NotNull final ByteBuffer from) {
+        final List<Iterator<Record>> iterators = new ArrayList<>(shards.length);
+        for (final LsmDAO shard : shards) {
+            iterators.add(shard.iterator(from));
+        }
+        return Iters.merge(iterators);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Record> descendingIterator(@NotNull final ByteBuffer from) {
+        final List<Iterator<Record>> iterators = new ArrayList<>(shards.length);
+        for (final LsmDAO shard : shards) {
+            iterators.add(shard.descendingIterator(from));
+        }
+        return Iters.mergeDescending(iterators);
+    }
+
+    /**
+     * Streams the records of all the shards as of the call, a parallel stream scans parts
+     * of the range concurrently, each part merging the shards.
+     */
+    @NotNull
+    @Override
+    public Stream<Record> stream(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to,
+            final boolean parallel) {
+        final List<LsmDAO.View> views = new ArrayList<>(shards.length);
+        for (final LsmDAO shard : shards) {
+            views.add(shard.view());
+        }
+        return StreamSupport.stream(RangeSpliterator.of(views, from, to), parallel);
+    }
+
+    /**
+     * Merges the cursors of the shards, neither allocating per record.
+     */
+    @NotNull
+    @Override
+    public Cursor cursor(
+            @NotNull final ByteBuffer from,
+            @Nullable final ByteBuffer to) {
+        final List<Cursor> cursors = new ArrayList<>(shards.length);
+        for (final LsmDAO shard : shards) {
+            cursors.add(shard.cursor(from, to));
+        }
+        return new ShardedCursor(cursors);
+    }
+
+    @NotNull
+    @Override
+    public ByteBuffer get(@NotNull final ByteBuffer key) throws NoSuchElementException {
+        return shard(key).get(key);
+    }
+
+    /**
+     * Takes the snapshots of the shards one after another, so a write made meanwhile may be seen
+     * in one shard while an earlier write to another shard is not. Each shard is consistent on its own.
+     */
+    @NotNull
+    @Override
+    public Snapshot snapshot() {
+        final Snapshot[] snapshots = new Snapshot[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            snapshots[i] = shards[i].snapshot();
+        }
+        return new ShardedSnapshot(snapshots);
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value) throws IOException {
+        shard(key).upsert(key, value);
+    }
+
+    @Override
+    public void upsert(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            @NotNull final Duration ttl) throws IOException {
+        shard(key).upsert(key, value, ttl);
+    }
+
+    @Override
+    public void remove(@NotNull final ByteBuffer key) throws IOException {
+        shard(key).remove(key);
+    }
+
+    /**
+     * Removes the range from every shard, as the keys of the range are spread over all of them.
+     */
+    @Override
+    public void removeRange(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to) throws IOException {
+        for (final LsmDAO shard : shards) {
+            shard.removeRange(from, to);
+        }
+    }
+
+    /**
+     * Checkpoints the shards one after another to the {@code shard-<index>} subdirectories
+     * of the target, so each shard is consistent on its own, like a snapshot. The layout
+     * is written last, so an incomplete checkpoint can't be opened.
+     */
+    @Override
+    public void checkpoint(@NotNull final File target) throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].checkpoint(new File(target, PREFIX + i));
+        }
+        writeLayout(target.toPath(), shards.length);
+    }
+
+    /**
+     * Applies the batch atomically to the shard of its keys, as a batch spanning shards
+     * could be recovered partially.
+     *
+     * @throws IllegalArgumentException if the keys of the batch belong to several shards
+     */
+    @Override
+    public void write(@NotNull final WriteBatch batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int index = -1;
+        for (final Record record : batch) {
+            final int shard = shardOf(record.getKey());
+            if (index >= 0 && shard != index) {
+                throw new IllegalArgumentException("Batch spans shards " + index + " and " + shard);
+            }
+            index = shard;
+        }
+        shards[index].write(batch);
+    }
+
+    /**
+     * Returns the non-blocking view of the storage routing the calls to the shards,
+     * valid until the storage is closed.
+     */
+    @NotNull
+    public AsyncDAO async() {
+        return async;
+    }
+
+    /**
+     * Returns the shards, each publishing its own metrics.
+     */
+    @NotNull
+    public List<LsmDAO> getShards() {
+        return List.of(shards);
+    }
+
+    /**
+     * Returns the index of the shard holding the key, so that batches can be grouped by shards.
+     *
+     * <p>The mapping is persistent, so the hash is frozen and shared with nothing else:
+     * 64-bit FNV-1a of the remaining bytes finalized with the fmix64 step of MurmurHash3,
+     * whose upper 32 bits are scaled to the number of shards.
+     */
+    public int shardOf(@NotNull final ByteBuffer key) {
+        long h = FNV_OFFSET;
+        for (int i = key.position(); i < key.limit(); i++) {
+            h ^= key.get(i) & 0xFFL;
+            h *= FNV_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (int) (((h >>> 32) * shards.length) >>> 32);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            // Accepted asynchronous calls complete before their shards close
+            LsmDAO.shutdown(io, storage);
+        } finally {
+            close(shards, null);
+        }
+    }
+
+    /**
+     * Closes all the shards, the first failure is thrown with the following ones suppressed.
+     */
+    private static void close(
+            @NotNull final LsmDAO[] shards,
+            @Nullable final IOException failure) throws IOException {
+        IOException first = null;
+        for (final LsmDAO shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure != null) {
+                    failure.addSuppressed(e);
+                } else if (first == null) {
+                    first = e;
+                } else {
+                    first.addSuppressed(e);
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    private static boolean hasShards(@NotNull final Path root) throws IOException {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, PREFIX + "*")) {
+            for (final Path dir : dirs) {
+                if (Files.isDirectory(dir)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the number of shards, checking that the keys are partitioned by {@link #shardOf}.
+     */
+    private static int readLayout(@NotNull final Path file) throws IOException {
+        final ByteBuffer layout = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (layout.limit() != LAYOUT_SIZE || layout.getInt(0) != MAGIC) {
+            throw new IOException("Not a shard layout: " + file);
+        }
+        if (layout.getInt(Integer.BYTES) != HASH) {
+            throw new IOException("Keys of " + file.getParent() + " are partitioned by unknown hash "
+                    + layout.getInt(Integer.BYTES));
+        }
+        final int shards = layout.getInt(Integer.BYTES * 2);
+        if (shards <= 0) {
+            throw new IOException("Non-positive number of shards in " + file);
+        }
+        return shards;
+    }
+
+    /**
+     * Durably writes the layout of a storage in the directory.
+     */
+    private static void writeLayout(
+            @NotNull final Path root,
+            final int shards) throws IOException {
+        final Path tmp = root.resolve(LAYOUT + ".tmp");
+        final ByteBuffer layout = ByteBuffer.allocate(LAYOUT_SIZE)
+                .putInt(MAGIC)
+                .putInt(HASH)
+                .putInt(shards)
+                .flip();
+        try (FileChannel channel = FileChannel.open(
+                tmp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            while (layout.hasRemaining()) {
+                channel.write(layout);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, root.resolve(LAYOUT), StandardCopyOption.ATOMIC_MOVE);
+        Directories.sync(root);
+    }
+
+    @NotNull
+    private LsmDAO shard(@NotNull final ByteBuffer key) {
+        return shards[shardOf(key)];
+    }
+
+    private final class ShardedSnapshot implements Snapshot {
+        private final Snapshot[] snapshots;
+
+        ShardedSnapshot(@NotNull final Snapshot[] snapshots) {
+            this.snapshots = snapshots;
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Record> iterator(@NotNull final ByteBuffer from) throws IOException {
+            final List<Iterator<Record>> iterators = new ArrayList<>(snapshots.length);
+            for (final Snapshot snapshot : snapshots) {
+                iterators.add(snapshot.iterator(from));
+            }
+            return Iters.merge(iterators);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<Record> descendingIterator(@NotNull final ByteBuffer from) throws IOException {
+            final List<Iterator<Record>> iterators = new ArrayList<>(snapshots.length);
+            for (final Snapshot snapshot : snapshots) {
+                iterators.add(snapshot.descendingIterator(from));
+            }
+            return Iters.mergeDescending(iterators);
+        }
+
+        @NotNull
+        @Override
+        public Cursor cursor(
+                @NotNull final ByteBuffer from,
+                @Nullable final ByteBuffer to) throws IOException {
+            final List<Cursor> cursors = new ArrayList<>(snapshots.length);
+            for (final Snapshot snapshot : snapshots) {
+                cursors.add(snapshot.cursor(from, to));
+            }
+            return new ShardedCursor(cursors);
+        }
+
+        @NotNull
+        @Override
+        public ByteBuffer get(@NotNull final ByteBuffer key) throws IOException, NoSuchElementException {
+            return snapshots[shardOf(key)].get(key);
+        }
+
+        @Override
+        public void close() {
+            for (final Snapshot snapshot : snapshots) {
+                snapshot.close();
+            }
+        }
+    }
+
+    /**
+     * {@link AsyncDAO} passing the calls for a key to its shard, scans merge the shards on the shared I/O pool.
+     */
+    private final class ShardedAsyncDAO implements AsyncDAO {
+        @NotNull
+        @Override
+        public CompletableFuture<ByteBuffer> getAsync(@NotNull final ByteBuffer key) {
+            return shard(key).async().getAsync(key);
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> upsertAsync(
+                @NotNull final ByteBuffer key,
+                @NotNull final ByteBuffer value) {
+            return shard(key).async().upsertAsync(key, value);
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Void> removeAsync(@NotNull final ByteBuffer key) {
+            return shard(key).async().removeAsync(key);
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<List<Record>> rangeAsync(
+                @NotNull final ByteBuffer from,
+                @Nullable final ByteBuffer to,
+                final int limit) {
+            return AsyncCalls.range(ShardedDAO.this, from, to, limit, io);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges runs of adjacent tables of similar size into a single table.
+ *
+ * <p>Each table is written O(log n) times, while reads touch O(log n) tables.
+ */
+final class SizeTieredStrategy implements CompactionStrategy {
+    private static final int MAX_THRESHOLD = 32;
+
+    private final int threshold;
+
+    /**
+     * Creates the strategy.
+     *
+     * @param threshold minimum number of similar tables to merge
+     */
+    SizeTieredStrategy(final int threshold) {
+        assert threshold > 1;
+        this.threshold = threshold;
+    }
+
+    @Nullable
+    @Override
+    public CompactionTask pick(
+            @NotNull final List<SSTable> tables,
+            @NotNull final Set<SSTable> busy) {
+        final List<SSTable> bucket = new ArrayList<>();
+        long bucketSize = 0;
+        for (final SSTable table : tables) {
+            final boolean fits = !bucket.isEmpty() && isSimilar(table.sizeInBytes(), bucketSize / bucket.size());
+            if (busy.contains(table) || !fits) {
+                if (bucket.size() >= threshold) {
+                    return task(tables, bucket);
+                }
+                bucket.clear();
+                bucketSize = 0;
+            }
+            if (busy.contains(table)) {
+                continue;
+            }
+
+            bucket.add(table);
+            bucketSize += table.sizeInBytes();
+            if (bucket.size() == MAX_THRESHOLD) {
+                return task(tables, bucket);
+            }
+        }
+        return bucket.size() >= threshold ? task(tables, bucket) : null;
+    }
+
+    /**
+     * Counts the tables in the largest run of similar ones, busy tables included.
+     */
+    @Override
+    public int backlog(@NotNull final List<SSTable> tables) {
+        int result = 0;
+        int run = 0;
+        long runSize = 0;
+        for (final SSTable table : tables) {
+            if (run > 0 && !isSimilar(table.sizeInBytes(), runSize / run)) {
+                run = 0;
+                runSize = 0;
+            }
+            run++;
+            runSize += table.sizeInBytes();
+            result = Math.max(result, run);
+        }
+        return result;
+    }
+
+    private static boolean isSimilar(
+            final long size,
+            final long average) {
+        return size >= average / 2 && size <= average * 3 / 2;
+    }
+
+    @NotNull
+    private static CompactionTask task(
+            @NotNull final List<SSTable> tables,
+            @NotNull final List<SSTable> bucket) {
+        final boolean bottommost = CompactionStrategy.isBottommost(tables, bucket);
+        return new CompactionTask(bucket, 0, bottommost, Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,182 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Collects the statistics of a {@link LsmDAO}.
+ *
+ * <p>Operations only record into histograms and adders, the gauges like table counts
+ * are computed from the current table set when read.
+ */
+final class StorageMetrics implements StorageMetricsMXBean {
+    final LatencyHistogram get = new LatencyHistogram();
+    final LatencyHistogram upsert = new LatencyHistogram();
+    final LatencyHistogram remove = new LatencyHistogram();
+    final LatencyHistogram iterator = new LatencyHistogram();
+    final LatencyHistogram walSync = new LatencyHistogram();
+    final LatencyHistogram flush = new LatencyHistogram();
+    final LatencyHistogram writeStall = new LatencyHistogram();
+
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder compactionBytesRead = new LongAdder();
+    private final LongAdder compactionBytesWritten = new LongAdder();
+    /**
+     * Filter counters of the tables replaced by compactions.
+     */
+    private final LongAdder retiredFilterChecks = new LongAdder();
+    private final LongAdder retiredFilterNegatives = new LongAdder();
+    private final LongAdder retiredFilterFalsePositives = new LongAdder();
+
+    private final Supplier<TableSet> tables;
+    private final IntSupplier backlog;
+    private final BlockCache blockCache;
+    private final RowCache rowCache;
+
+    StorageMetrics(
+            @NotNull final Supplier<TableSet> tables,
+            @NotNull final IntSupplier backlog,
+            @NotNull final BlockCache blockCache,
+            @NotNull final RowCache rowCache) {
+        this.tables = tables;
+        this.backlog = backlog;
+        this.blockCache = blockCache;
+        this.rowCache = rowCache;
+    }
+
+    /**
+     * Accounts a completed compaction, its inputs are no longer in the table set.
+     */
+    void compacted(
+            @NotNull final Collection<SSTable> inputs,
+            @NotNull final Collection<SSTable> outputs) {
+        compactions.increment();
+        for (final SSTable input : inputs) {
+            compactionBytesRead.add(input.sizeInBytes());
+            retiredFilterChecks.add(input.filterChecks());
+            retiredFilterNegatives.add(input.filterNegatives());
+            retiredFilterFalsePositives.add(input.filterFalsePositives());
+        }
+        for (final SSTable output : outputs) {
+            compactionBytesWritten.add(output.sizeInBytes());
+        }
+    }
+
+    @Override
+    public LatencyStats getGetLatency() {
+        return get.snapshot();
+    }
+
+    @Override
+    public LatencyStats getUpsertLatency() {
+        return upsert.snapshot();
+    }
+
+    @Override
+    public LatencyStats getRemoveLatency() {
+        return remove.snapshot();
+    }
+
+    @Override
+    public LatencyStats getIteratorLatency() {
+        return iterator.snapshot();
+    }
+
+    @Override
+    public LatencyStats getWalSyncLatency() {
+        return walSync.snapshot();
+    }
+
+    @Override
+    public LatencyStats getFlushLatency() {
+        return flush.snapshot();
+    }
+
+    @Override
+    public LatencyStats getWriteStallLatency() {
+        return writeStall.snapshot();
+    }
+
+    @Override
+    public int getCompactionBacklog() {
+        return backlog.getAsInt();
+    }
+
+    @Override
+    public long getMemTableSizeInBytes() {
+        final TableSet current = tables.get();
+        final MemTable flushing = current.flushing;
+        return current.memTable.sizeInBytes() + (flushing == null ? 0 : flushing.sizeInBytes());
+    }
+
+    @Override
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    @Override
+    public long getCompactionBytesRead() {
+        return compactionBytesRead.sum();
+    }
+
+    @Override
+    public long getCompactionBytesWritten() {
+        return compactionBytesWritten.sum();
+    }
+
+    @Override
+    public int[] getTablesPerLevel() {
+        final List<SSTable> ssTables = tables.get().ssTables;
+        int levels = 0;
+        for (final SSTable table : ssTables) {
+            levels = Math.max(levels, table.level() + 1);
+        }
+        final int[] counts = new int[levels];
+        for (final SSTable table : ssTables) {
+            counts[table.level()]++;
+        }
+        return counts;
+    }
+
+    @Override
+    public long getBloomFilterChecks() {
+        long checks = retiredFilterChecks.sum();
+        for (final SSTable table : tables.get().ssTables) {
+            checks += table.filterChecks();
+        }
+        return checks;
+    }
+
+    @Override
+    public long getBloomFilterNegatives() {
+        long negatives = retiredFilterNegatives.sum();
+        for (final SSTable table : tables.get().ssTables) {
+            negatives += table.filterNegatives();
+        }
+        return negatives;
+    }
+
+    @Override
+    public long getBloomFilterFalsePositives() {
+        long falsePositives = retiredFilterFalsePositives.sum();
+        for (final SSTable table : tables.get().ssTables) {
+            falsePositives += table.filterFalsePositives();
+        }
+        return falsePositives;
+    }
+
+    @Override
+    public CacheStats getBlockCacheStats() {
+        return blockCache.stats();
+    }
+
+    @Override
+    public CacheStats getRowCacheStats() {
+        return rowCache.stats();
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mail.polis.kodim97;
+
+/**
+ * Runtime statistics of a {@link LsmDAO}, registered in the platform MBean server as
+ * {@code ru.mail.polis.kodim97:type=LsmDAO,storage=<directory>}.
+ *
+ * <p>Counters are cumulative since the storage was opened.
+ */
+public interface StorageMetricsMXBean {
+    LatencyStats getGetLatency();
+
+    LatencyStats getUpsertLatency();
+
+    LatencyStats getRemoveLatency();
+
+    /**
+     * Latency of creating iterators and cursors, not of iterating them.
+     */
+    LatencyStats getIteratorLatency();
+
+    /**
+     * Latency of forcing the write-ahead log to disk.
+     */
+    LatencyStats getWalSyncLatency();
+
+    /**
+     * Durations of memtable flushes, the count is the number of flushes.
+     */
+    LatencyStats getFlushLatency();
+
+    /**
+     * Delays of writes waiting for flushes and compactions, the count is the number of delayed writes.
+     */
+    LatencyStats getWriteStallLatency();
+
+    /**
+     * Number of tables waiting for compaction as writes are throttled by.
+     */
+    int getCompactionBacklog();
+
+    /**
+     * Bytes held by the current memtable and the one being flushed.
+     */
+    long getMemTableSizeInBytes();
+
+    long getCompactionCount();
+
+    long getCompactionBytesRead();
+
+    long getCompactionBytesWritten();
+
+    /**
+     * Number of tables at each level, indexed by level.
+     */
+    int[] getTablesPerLevel();
+
+    /**
+     * Number of table lookups which consulted a Bloom filter.
+     */
+    long getBloomFilterChecks();
+
+    /**
+     * Number of table lookups a Bloom filter answered without reading the table.
+     */
+    long getBloomFilterNegatives();
+
+    /**
+     * Number of table lookups a Bloom filter let through for absent keys.
+     */
+    long getBloomFilterFalsePositives();
+
+    CacheStats getBlockCacheStats();
+
+    CacheStats getRowCacheStats();
+}
@@ -0,0 +1,19 @@
+package ru.mail.polis.kodim97;
+
+/**
+ * Selects when {@link LsmDAO} forces the write-ahead log to disk.
+ */
+public enum SyncMode {
+    /**
+     * Leaves it to the OS, writes survive a process crash but not a power loss.
+     */
+    NONE,
+    /**
+     * Forces the log every {@link Config#getWalSyncIntervalMillis()}, losing at most that much writes.
+     */
+    PERIODIC,
+    /**
+     * Forces the log before a write returns, concurrent writes share a single sync.
+     */
+    PER_WRITE
+}
@@ -0,0 +1,77 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * Sorted source of versioned {@link Cell}s.
+ *
+ * <p>All the versions of a key in a table are newer than those in older tables,
+ * so the version seen by a snapshot is found in the newest table having any.
+ */
+interface Table {
+    /**
+     * Provides records seen by the snapshot starting at "from" key (inclusive)
+     * in ascending key order, tombstones included.
+     *
+     * @param from     key to start with
+     * @param sequence snapshot sequence number
+     * @param ranges   range tombstones of all the tables, versions they hide are seen as tombstones
+     */
+    @NotNull
+    Iterator<Record> iterator(
+            @NotNull ByteBuffer from,
+            long sequence,
+            @NotNull RangeTombstones ranges);
+
+    /**
+     * Provides records seen by the snapshot starting at "from" key (inclusive)
+     * in descending key order, tombstones included.
+     *
+     * @param from     key to start with
+     * @param sequence snapshot sequence number
+     * @param ranges   range tombstones of all the tables, versions they hide are seen as tombstones
+     */
+    @NotNull
+    Iterator<Record> descendingIterator(
+            @NotNull ByteBuffer from,
+            long sequence,
+            @NotNull RangeTombstones ranges);
+
+    /**
+     * Provides all the versions starting at "from" key (inclusive) in {@link Cell#COMPARATOR} order.
+     */
+    @NotNull
+    Iterator<Cell> cells(@NotNull ByteBuffer from);
+
+    /**
+     * Positions a cursor over all the versions at the first one with key not less than "from".
+     */
+    @NotNull
+    TableCursor cursor(@NotNull ByteBuffer from);
+
+    /**
+     * Looks up the version of the key seen by the snapshot, range tombstones aside.
+     *
+     * @return the value or tombstone, {@code null} if the table knows nothing about the key
+     */
+    @Nullable
+    Cell get(
+            @NotNull ByteBuffer key,
+            long sequence);
+
+    /**
+     * Range tombstones written to the table, they may hide versions in older tables.
+     */
+    @NotNull
+    RangeTombstones rangeTombstones();
+
+    /**
+     * Generation of the table, newer tables have greater generations.
+     */
+    long generation();
+}
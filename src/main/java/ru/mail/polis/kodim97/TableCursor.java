@@ -0,0 +1,36 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Position over the versions of a {@link Table} in {@link Cell#COMPARATOR} order,
+ * moving without allocation.
+ *
+ * <p>Buffers returned are views reused by the cursor: each call repositions them,
+ * so callers may consume them, but they are valid only until the cursor moves.
+ */
+interface TableCursor {
+    boolean isValid();
+
+    @NotNull
+    ByteBuffer key();
+
+    long sequence();
+
+    boolean isTombstone();
+
+    /**
+     * Returns the time the value of the current version expires at, {@link Cell#NEVER} if it doesn't.
+     */
+    long expiresAt();
+
+    /**
+     * Returns the value of the current version, resolving pointers to the {@link ValueLog}.
+     */
+    @NotNull
+    ByteBuffer value();
+
+    void next();
+}
@@ -0,0 +1,158 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable snapshot of the tables making up the storage.
+ *
+ * <p>Readers grab the current instance once and keep using it, so flushes
+ * never block them: a frozen memtable stays readable until its table is published.
+ *
+ * <p>Range tombstones of all the tables are merged once per table set, those of the current
+ * memtable are added to the merged set on the first read after the memtable adds them.
+ */
+final class TableSet {
+    /**
+     * Read order of flushed tables: by level, then from the newest generation to the oldest.
+     */
+    static final Comparator<SSTable> ORDER =
+            Comparator.comparingInt(SSTable::level)
+                    .thenComparing(Comparator.comparingLong(SSTable::generation).reversed());
+
+    @NotNull
+    final MemTable memTable;
+    @Nullable
+    final MemTable flushing;
+    /**
+     * Flushed tables in {@link #ORDER}.
+     */
+    @NotNull
+    final List<SSTable> ssTables;
+    /**
+     * Range tombstones of the frozen memtable and the flushed tables.
+     */
+    private final RangeTombstones frozenRanges;
+    @Nullable
+    private volatile MergedRanges merged;
+
+    TableSet(
+            @NotNull final MemTable memTable,
+            @Nullable final MemTable flushing,
+            @NotNull final List<SSTable> ssTables) {
+        this.memTable = memTable;
+        this.flushing = flushing;
+        this.ssTables = Collections.unmodifiableList(ssTables);
+
+        final List<RangeTombstone> ranges = new ArrayList<>();
+        if (flushing != null) {
+            ranges.addAll(flushing.rangeTombstones().tombstones());
+        }
+        for (final SSTable table : ssTables) {
+            ranges.addAll(table.rangeTombstones().tombstones());
+        }
+        this.frozenRanges = RangeTombstones.of(ranges);
+    }
+
+    /**
+     * Freezes the current memtable replacing it with the fresh one.
+     */
+    @NotNull
+    TableSet startFlush(@NotNull final MemTable fresh) {
+        assert flushing == null;
+        return new TableSet(fresh, memTable, ssTables);
+    }
+
+    /**
+     * Replaces the frozen memtable with its flushed table.
+     */
+    @NotNull
+    TableSet finishFlush(@NotNull final SSTable flushed) {
+        assert flushing != null && flushing.generation() == flushed.generation();
+        final List<SSTable> result = new ArrayList<>(ssTables.size() + 1);
+        result.add(flushed);
+        result.addAll(ssTables);
+        return new TableSet(memTable, null, result);
+    }
+
+    /**
+     * Atomically swaps compacted tables for the compaction output.
+     */
+    @NotNull
+    TableSet replace(
+            @NotNull final Collection<SSTable> removed,
+            @NotNull final Collection<SSTable> added) {
+        final List<SSTable> result = new ArrayList<>(ssTables.size() - removed.size() + added.size());
+        for (final SSTable table : ssTables) {
+            if (!removed.contains(table)) {
+                result.add(table);
+            }
+        }
+        result.addAll(added);
+        result.sort(ORDER);
+        return new TableSet(memTable, flushing, result);
+    }
+
+    /**
+     * Returns the range tombstones of all the tables, the current memtable may add more.
+     */
+    @NotNull
+    RangeTombstones ranges() {
+        final RangeTombstones fresh = memTable.rangeTombstones();
+        if (fresh.isEmpty()) {
+            return frozenRanges;
+        }
+
+        final MergedRanges last = merged;
+        if (last != null && last.fresh == fresh) {
+            return last.all;
+        }
+
+        // The memtable only appends tombstones, so those added since the last merge are added to it
+        final List<RangeTombstone> added = fresh.tombstones();
+        RangeTombstones all = frozenRanges;
+        int next = 0;
+        if (last != null && last.fresh.tombstones().size() <= added.size()) {
+            all = last.all;
+            next = last.fresh.tombstones().size();
+        }
+        for (int i = next; i < added.size(); i++) {
+            all = all.with(added.get(i));
+        }
+        // Racing readers may store an older merge, the next read extends it again
+        merged = new MergedRanges(fresh, all);
+        return all;
+    }
+
+    /**
+     * Lists all the tables from the newest to the oldest.
+     */
+    @NotNull
+    List<Table> all() {
+        final List<Table> result = new ArrayList<>(ssTables.size() + 2);
+        result.add(memTable);
+        if (flushing != null) {
+            result.add(flushing);
+        }
+        result.addAll(ssTables);
+        return result;
+    }
+
+    private static final class MergedRanges {
+        final RangeTombstones fresh;
+        final RangeTombstones all;
+
+        MergedRanges(
+                @NotNull final RangeTombstones fresh,
+                @NotNull final RangeTombstones all) {
+            this.fresh = fresh;
+            this.all = all;
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package ru.mail.polis.kodim97;
+
+import com.google.common.collect.Iterators;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Append-only log of large values kept out of tables, so that compactions
+ * rewrite small pointers instead of the values themselves.
+ *
+ * <p>The log is a sequence of segment files {@code <id>.vlog} holding raw values.
+ * A table stores {@link #POINTER_SIZE}-byte pointers
+ * <pre>
+ * segment(long) offset(long) length(int)
+ * </pre>
+ * and records how many bytes of each segment it references. A segment no table refers
+ * to is deleted, while live values of mostly dead segments are moved to the current one
+ * by compactions passing through {@link #separate}.
+ *
+ * <p>Values are forced to disk before a table referencing them is committed, so a crash
+ * leaves at most unreferenced bytes which are collected on open. Sealed segments are mapped
+ * whole once, and the mappings outlive the files, so readers holding older tables never fail.
+ * The current segment is read with positional reads, as it grows with every value appended.
+ */
+final class ValueLog implements Closeable {
+    static final String SUFFIX = ".vlog";
+    static final int POINTER_SIZE = Long.BYTES * 2 + Integer.BYTES;
+
+    private static final Logger log = LoggerFactory.getLogger(ValueLog.class);
+
+    private final Path storage;
+    private final int threshold;
+    private final long segmentSize;
+    private final double gcRatio;
+    private final ConcurrentMap<Long, Segment> segments = new ConcurrentHashMap<>();
+    /**
+     * Reference counts of the first segments writers may reference in tables not published yet.
+     */
+    private final NavigableMap<Long, Integer> pins = new TreeMap<>();
+
+    private long nextId;
+    @Nullable
+    private Segment active;
+
+    private ValueLog(
+            @NotNull final Path storage,
+            @NotNull final Config config) {
+        this.storage = storage;
+        this.threshold = config.getValueThreshold();
+        this.segmentSize = config.getValueLogSegmentSize();
+        this.gcRatio = config.getValueLogGcRatio();
+    }
+
+    /**
+     * Finds the segments in the directory, unreferenced ones are only deleted by {@link #collect}.
+     *
+     * @param storage directory of the segments
+     * @param config  separation and garbage collection options
+     */
+    @NotNull
+    static ValueLog open(
+            @NotNull final Path storage,
+            @NotNull final Config config) throws IOException {
+        final ValueLog result = new ValueLog(storage, config);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storage, "*" + SUFFIX)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final long id;
+                try {
+                    id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unexpected file name: " + file, e);
+                }
+                result.segments.put(id, result.new Segment(id, file, Files.size(file)));
+                result.nextId = Math.max(result.nextId, id + 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the segment referenced by a table.
+     *
+     * @throws IOException if the segment is missing
+     */
+    @NotNull
+    Segment segment(final long id) throws IOException {
+        final Segment result = segments.get(id);
+        if (result == null) {
+            throw new IOException("Missing value log segment " + id + " in " + storage);
+        }
+        return result;
+    }
+
+    /**
+     * Moves values over the threshold to the log and live values out of mostly dead segments.
+     * Other cells are passed as is.
+     *
+     * <p>The caller must {@link #pin} the log until the table made of the cells is published.
+     */
+    @NotNull
+    Iterator<Cell> separate(@NotNull final Iterator<Cell> cells) {
+        return Iterators.transform(cells, cell -> {
+            assert cell != null;
+            try {
+                if (cell.isTombstone()) {
+                    return cell;
+                }
+                if (cell.isPointer()) {
+                    final Segment segment = cell.segment();
+                    return isSparse(segment) ? append(cell, segment.read(cell.value())) : cell;
+                }
+                return threshold > 0 && cell.value().remaining() >= threshold ? append(cell, cell.value()) : cell;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Protects the segments appended from now on from {@link #collect} until unpinned.
+     *
+     * @return the token to {@link #unpin} with
+     */
+    synchronized long pin() {
+        final long id = active == null ? nextId : active.id;
+        pins.merge(id, 1, Integer::sum);
+        return id;
+    }
+
+    synchronized void unpin(final long token) {
+        pins.computeIfPresent(token, (id, count) -> count == 1 ? null : count - 1);
+    }
+
+    /**
+     * Deletes the segments not referenced by the tables and refreshes the amount of live bytes
+     * in the rest, which makes compactions move the values out of mostly dead segments.
+     *
+     * @param tables all the current tables
+     */
+    synchronized void collect(@NotNull final List<SSTable> tables) throws IOException {
+        final Map<Long, Long> live = new HashMap<>();
+        for (final SSTable table : tables) {
+            table.valueBytes().forEach((id, bytes) -> live.merge(id, bytes, Long::sum));
+        }
+
+        final long protectedFrom = pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey();
+        final Iterator<Segment> iterator = segments.values().iterator();
+        while (iterator.hasNext()) {
+            final Segment segment = iterator.next();
+            segment.live = live.getOrDefault(segment.id, 0L);
+            if (segment.live == 0 && segment != active && segment.id < protectedFrom) {
+                // Readers of older tables may still need the values
+                segment.map();
+                iterator.remove();
+                Files.delete(segment.file);
+                log.debug("Deleted value log segment {}", segment.file);
+            }
+        }
+    }
+
+    /**
+     * Hard links the segments referenced by the tables into the directory. The current segment
+     * is sealed if it is one of them, so that the linked files are never appended to.
+     */
+    synchronized void link(
+            @NotNull final List<SSTable> tables,
+            @NotNull final Path target) throws IOException {
+        final Set<Long> referenced = new TreeSet<>();
+        for (final SSTable table : tables) {
+            referenced.addAll(table.valueBytes().keySet());
+        }
+        if (active != null && referenced.contains(active.id)) {
+            active.seal();
+            active = null;
+        }
+        for (final long id : referenced) {
+            final Segment segment = segment(id);
+            Files.createLink(target.resolve(segment.file.getFileName()), segment.file);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (active != null) {
+            active.seal();
+            active = null;
+        }
+    }
+
+    private boolean isSparse(@NotNull final Segment segment) {
+        return segment.live >= 0 && segment.live < segment.size * (1 - gcRatio) && segment != currentSegment();
+    }
+
+    @Nullable
+    private synchronized Segment currentSegment() {
+        return active;
+    }
+
+    @NotNull
+    private synchronized Cell append(
+            @NotNull final Cell cell,
+            @NotNull final ByteBuffer value) throws IOException {
+        final int length = value.remaining();
+        if (active == null || active.size > 0 && active.size + length > segmentSize) {
+            if (active != null) {
+                active.seal();
+            }
+            final long id = nextId++;
+            final Segment segment = new Segment(id, storage.resolve(id + SUFFIX), 0);
+            segment.channel = FileChannel.open(segment.file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                segment.reader = FileChannel.open(segment.file, StandardOpenOption.READ);
+            } catch (IOException e) {
+                segment.channel.close();
+                throw e;
+            }
+            segments.put(id, segment);
+            // Forcing the values doesn't make the name of the segment durable
+            Directories.sync(storage);
+            active = segment;
+        }
+
+        final long offset = active.size;
+        final ByteBuffer source = value.duplicate();
+        while (source.hasRemaining()) {
+            active.channel.write(source, offset + length - source.remaining());
+        }
+        active.size += length;
+
+        final ByteBuffer pointer = ByteBuffer.allocate(POINTER_SIZE)
+                .putLong(active.id)
+                .putLong(offset)
+                .putInt(length)
+                .flip();
+        return Cell.pointer(cell.key(), cell.sequence(), pointer, active, cell.expiresAt());
+    }
+
+    /**
+     * Segment file of the log, only the current one is appended to.
+     */
+    final class Segment {
+        private final long id;
+        private final Path file;
+        private volatile long size;
+        /**
+         * Bytes referenced by tables as of the last collection, -1 if unknown yet.
+         */
+        private volatile long live = -1;
+        /**
+         * Channel appending to the current segment, guarded by the log.
+         */
+        @Nullable
+        private FileChannel channel;
+        /**
+         * Channel reading the current segment, {@code null} once the segment is sealed.
+         * Kept apart from the appending one, as an interrupted read closes the channel.
+         */
+        @Nullable
+        private volatile FileChannel reader;
+        /**
+         * Mapping of the whole sealed segment, made on first read.
+         */
+        private volatile ByteBuffer mapping;
+
+        private Segment(
+                final long id,
+                @NotNull final Path file,
+                final long size) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
+        }
+
+        long id() {
+            return id;
+        }
+
+        /**
+         * Forces the values appended to the segment to disk.
+         */
+        void sync() throws IOException {
+            // Completed segments have been forced already
+            synchronized (ValueLog.this) {
+                if (channel != null) {
+                    channel.force(false);
+                }
+            }
+        }
+
+        /**
+         * Reads the value by its pointer, without copying unless the segment is still appended to.
+         */
+        @NotNull
+        ByteBuffer read(@NotNull final ByteBuffer pointer) throws IOException {
+            assert pointer.getLong(pointer.position()) == id;
+            final long offset = pointer.getLong(pointer.position() + Long.BYTES);
+            final int length = pointer.getInt(pointer.position() + Long.BYTES * 2);
+            ByteBuffer current = mapping;
+            if (current == null) {
+                // Mapping the growing segment would map all of it again for every value appended since
+                final ByteBuffer appended = readAppended(offset, length);
+                if (appended != null) {
+                    return appended;
+                }
+                current = map();
+            }
+            if (offset + length > current.limit()) {
+                throw new IOException("Value past the end of " + file);
+            }
+            return Buffers.slice(current, (int) offset, length);
+        }
+
+        /**
+         * Reads the value from the segment being appended to.
+         *
+         * @return a copy of the value or {@code null} if the segment is sealed
+         */
+        @Nullable
+        private ByteBuffer readAppended(
+                final long offset,
+                final int length) throws IOException {
+            FileChannel current = reader;
+            while (current != null) {
+                try {
+                    final ByteBuffer result = ByteBuffer.allocate(length);
+                    while (result.hasRemaining()) {
+                        if (current.read(result, offset + result.position()) < 0) {
+                            throw new IOException("Value past the end of " + file);
+                        }
+                    }
+                    return result.flip().asReadOnlyBuffer();
+                } catch (ClosedByInterruptException e) {
+                    throw e;
+                } catch (ClosedChannelException e) {
+                    // Sealed or closed by an interrupted reader
+                    current = reopen(current);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Replaces the reader closed under a read unless the segment is sealed.
+         */
+        @Nullable
+        private synchronized FileChannel reopen(@NotNull final FileChannel closed) throws IOException {
+            if (reader == closed) {
+                reader = FileChannel.open(file, StandardOpenOption.READ);
+            }
+            return reader;
+        }
+
+        /**
+         * Maps the whole segment, which must be sealed so that it doesn't grow any more.
+         */
+        @NotNull
+        private synchronized ByteBuffer map() throws IOException {
+            if (mapping != null) {
+                return mapping;
+            }
+            assert reader == null;
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapping = source.map(FileChannel.MapMode.READ_ONLY, 0, source.size()).asReadOnlyBuffer();
+                return mapping;
+            }
+        }
+
+        private void seal() throws IOException {
+            assert channel != null;
+            channel.force(false);
+            channel.close();
+            channel = null;
+
+            // Later reads map the segment
+            final FileChannel current;
+            synchronized (this) {
+                current = reader;
+                reader = null;
+            }
+            if (current != null) {
+                current.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file.getFileName().toString();
+        }
+    }
+}
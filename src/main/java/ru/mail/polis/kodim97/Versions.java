@@ -0,0 +1,269 @@
+package ru.mail.polis.kodim97;
+
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.Record;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Operations over {@link Cell}s in {@link Cell#COMPARATOR} order.
+ *
+ * <p>Expired values read as tombstones as of the time the operation starts.
+ */
+final class Versions {
+    private Versions() {
+        // Not instantiatable
+    }
+
+    /**
+     * Picks the version of each key seen by the snapshot, tombstones are kept.
+     *
+     * @param cells    versions of the keys
+     * @param sequence snapshot sequence number
+     * @param ranges   range tombstones, a version they hide from the snapshot is seen as a tombstone
+     */
+    @NotNull
+    static Iterator<Record> visible(
+            @NotNull final Iterator<Cell> cells,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        return new VisibleIterator(cells, sequence, ranges);
+    }
+
+    /**
+     * Picks the version of each key seen by the snapshot from cells in reverse
+     * {@link Cell#COMPARATOR} order, that is from the oldest version of a key. Tombstones are kept.
+     *
+     * @param cells    versions of the keys in descending key order
+     * @param sequence snapshot sequence number
+     * @param ranges   range tombstones, a version they hide from the snapshot is seen as a tombstone
+     */
+    @NotNull
+    static Iterator<Record> visibleDescending(
+            @NotNull final Iterator<Cell> cells,
+            final long sequence,
+            @NotNull final RangeTombstones ranges) {
+        return new VisibleDescendingIterator(cells, sequence, ranges);
+    }
+
+    /**
+     * Drops the versions no reader can see.
+     *
+     * <p>A version is seen by the snapshots starting at its sequence number up to
+     * the next version of the key or the next range tombstone covering it, so it is kept
+     * only when a snapshot falls within that range. The newest version is always kept
+     * for new readers unless a range tombstone hides it. Expired values are turned into
+     * tombstones, so they go along with the tombstones once nothing older is left.
+     *
+     * @param cells          versions of the keys
+     * @param snapshots      sequence numbers of live snapshots in ascending order
+     * @param dropTombstones whether there are no older versions elsewhere, so tombstones
+     *                       with nothing to shadow can go
+     * @param ranges         range tombstones kept along with the versions
+     */
+    @NotNull
+    static Iterator<Cell> retained(
+            @NotNull final Iterator<Cell> cells,
+            @NotNull final long[] snapshots,
+            final boolean dropTombstones,
+            @NotNull final RangeTombstones ranges) {
+        return new RetainedIterator(cells, snapshots, dropTombstones, ranges);
+    }
+
+    /**
+     * Converts the version seen by the snapshot to a record, a tombstone if it has expired
+     * by the given time or a range tombstone hides it.
+     */
+    @NotNull
+    static Record toRecord(
+            @NotNull final Cell cell,
+            final long sequence,
+            @NotNull final RangeTombstones ranges,
+            final long now) {
+        final ByteBuffer key = cell.key();
+        return cell.isRemovedAt(now) || ranges.covering(key, sequence) > cell.sequence()
+                ? Record.tombstone(key)
+                : cell.toRecord();
+    }
+
+    private static final class VisibleIterator implements Iterator<Record> {
+        private final Iterator<Cell> cells;
+        private final long sequence;
+        private final RangeTombstones ranges;
+        private final long now = System.currentTimeMillis();
+        private Record next;
+
+        VisibleIterator(
+                @NotNull final Iterator<Cell> cells,
+                final long sequence,
+                @NotNull final RangeTombstones ranges) {
+            this.cells = cells;
+            this.sequence = sequence;
+            this.ranges = ranges;
+            advance(null);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) {
+                throw new NoSuchElementException("No more records");
+            }
+
+            final Record result = next;
+            advance(result.getKey());
+            return result;
+        }
+
+        private void advance(final ByteBuffer previous) {
+            next = null;
+            while (cells.hasNext()) {
+                final Cell cell = cells.next();
+                // Skip the versions too new and older than the returned one
+                if (cell.sequence() <= sequence && (previous == null || !cell.hasKey(previous))) {
+                    next = toRecord(cell, sequence, ranges, now);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final class VisibleDescendingIterator implements Iterator<Record> {
+        private final PeekingIterator<Cell> cells;
+        private final long sequence;
+        private final RangeTombstones ranges;
+        private final long now = System.currentTimeMillis();
+        private Record next;
+
+        VisibleDescendingIterator(
+                @NotNull final Iterator<Cell> cells,
+                final long sequence,
+                @NotNull final RangeTombstones ranges) {
+            this.cells = Iterators.peekingIterator(cells);
+            this.sequence = sequence;
+            this.ranges = ranges;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Record next() {
+            if (next == null) {
+                throw new NoSuchElementException("No more records");
+            }
+
+            final Record result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && cells.hasNext()) {
+                // The newest version seen is the last one before the versions get too new
+                final ByteBuffer key = cells.peek().key();
+                Cell seen = null;
+                while (cells.hasNext() && cells.peek().hasKey(key)) {
+                    final Cell cell = cells.next();
+                    if (cell.sequence() <= sequence) {
+                        seen = cell;
+                    }
+                }
+                if (seen != null) {
+                    next = toRecord(seen, sequence, ranges, now);
+                }
+            }
+        }
+    }
+
+    private static final class RetainedIterator implements Iterator<Cell> {
+        private final PeekingIterator<Cell> cells;
+        private final long[] snapshots;
+        private final boolean dropTombstones;
+        private final RangeTombstones ranges;
+        private final long now = System.currentTimeMillis();
+        private final Deque<Cell> ready = new ArrayDeque<>();
+
+        RetainedIterator(
+                @NotNull final Iterator<Cell> cells,
+                @NotNull final long[] snapshots,
+                final boolean dropTombstones,
+                @NotNull final RangeTombstones ranges) {
+            this.cells = Iterators.peekingIterator(cells);
+            this.snapshots = snapshots;
+            this.dropTombstones = dropTombstones;
+            this.ranges = ranges;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (ready.isEmpty() && cells.hasNext()) {
+                retainKey();
+            }
+            return !ready.isEmpty();
+        }
+
+        @Override
+        public Cell next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException("No more cells");
+            }
+            return ready.removeFirst();
+        }
+
+        private void retainKey() {
+            Cell cell = expire(cells.next());
+            final ByteBuffer key = cell.key();
+            long newer = Long.MAX_VALUE;
+            while (true) {
+                final long until = Math.min(newer, ranges.hiding(key, cell.sequence()));
+                // Only the newest version may be seen up to the end
+                if (cell.sequence() != newer && (until == Long.MAX_VALUE || pinned(cell.sequence(), until))) {
+                    ready.addLast(cell);
+                }
+                newer = cell.sequence();
+                if (!cells.hasNext() || !cells.peek().hasKey(key)) {
+                    break;
+                }
+                cell = expire(cells.next());
+            }
+
+            while (dropTombstones && !ready.isEmpty() && ready.peekLast().isTombstone()) {
+                ready.removeLast();
+            }
+        }
+
+        @NotNull
+        private Cell expire(@NotNull final Cell cell) {
+            return cell.isTombstone() || !cell.isRemovedAt(now) ? cell : Cell.tombstone(cell.key(), cell.sequence());
+        }
+
+        /**
+         * Checks whether a snapshot falls within [from, to).
+         */
+        private boolean pinned(
+                final long from,
+                final long to) {
+            int index = Arrays.binarySearch(snapshots, from);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return index < snapshots.length && snapshots[index] < to;
+        }
+    }
+}
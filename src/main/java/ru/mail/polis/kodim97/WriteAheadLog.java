@@ -0,0 +1,324 @@
+package ru.mail.polis.kodim97;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.mail.polis.Record;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the writes to a single memtable, deleted once the memtable is flushed.
+ *
+ * <p>File layout:
+ * <pre>
+ * entry        length(int) checksum(int) sequence(long) operation*
+ * operation    flags(byte) keyLength(int) key [valueLength(int) value] [expiresAt(long)]
+ * </pre>
+ * An entry holds a whole batch of writes numbered consecutively from the sequence. A crash may leave a torn entry at the end,
+ * replay stops at the first entry which is incomplete or doesn't match its checksum,
+ * so a batch is recovered entirely or not at all. An entry whose write fails midway is truncated,
+ * so that replay doesn't stop at it before the entries appended later. A range removal is logged
+ * as an entry of its own, with the start of the range as the key and the end as the value.
+ * So is an expiring write, followed by the time it expires at.
+ *
+ * <p>Syncs are group committed: a writer forcing the file covers everything
+ * appended so far, so writers queued behind it return without another sync.
+ */
+final class WriteAheadLog implements Closeable {
+    static final String SUFFIX = ".wal";
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final int HEADER_SIZE = Integer.BYTES * 2;
+    private static final byte FLAG_TOMBSTONE = 1;
+    private static final byte FLAG_RANGE = 2;
+    private static final byte FLAG_EXPIRING = 4;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Object syncLock = new Object();
+
+    /**
+     * Bytes appended, guarded by this.
+     */
+    private long written;
+    /**
+     * Failure which left a torn entry the log couldn't be truncated from, guarded by this.
+     */
+    @Nullable
+    private IOException torn;
+    private volatile long synced;
+
+    private WriteAheadLog(
+            @NotNull final Path file,
+            @NotNull final FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty log, the file must not exist. The directory entry is forced,
+     * so that syncs of the log are not lost together with the file.
+     */
+    @NotNull
+    static WriteAheadLog create(@NotNull final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            Directories.sync(file.getParent());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new WriteAheadLog(file, channel);
+    }
+
+    @NotNull
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Appends the writes as a single entry, holding the monitor of the log orders
+     * them with the following appends.
+     *
+     * @param records  written records, tombstones for removals
+     * @param sequence sequence number of the first record
+     * @return log position to {@link #sync(long)} up to make the writes durable
+     */
+    synchronized long append(
+            @NotNull final Iterable<Record> records,
+            final long sequence) throws IOException {
+        long size = Long.BYTES;
+        for (final Record record : records) {
+            size += Byte.BYTES + Integer.BYTES + record.getKey().remaining();
+            if (!record.isTombstone()) {
+                size += Integer.BYTES + record.getValue().remaining();
+            }
+        }
+        if (size > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Too big batch: " + size);
+        }
+
+        final ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + (int) size);
+        entry.position(HEADER_SIZE);
+        entry.putLong(sequence);
+        for (final Record record : records) {
+            write(entry, record.getKey(), record.isTombstone() ? null : record.getValue());
+        }
+        return writeEntry(entry);
+    }
+
+    /**
+     * Appends the removal of the keys within [from, to) as a single entry.
+     *
+     * @param sequence sequence number of the removal
+     * @return log position to {@link #sync(long)} up to make the removal durable
+     */
+    synchronized long appendRange(
+            @NotNull final ByteBuffer from,
+            @NotNull final ByteBuffer to,
+            final long sequence) throws IOException {
+        final long size = Long.BYTES + Byte.BYTES + Integer.BYTES * 2L + from.remaining() + to.remaining();
+        if (size > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Too big range: " + size);
+        }
+
+        final ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + (int) size);
+        entry.position(HEADER_SIZE);
+        entry.putLong(sequence);
+        entry.put(FLAG_RANGE).putInt(from.remaining()).put(from.duplicate());
+        entry.putInt(to.remaining()).put(to.duplicate());
+        return writeEntry(entry);
+    }
+
+    /**
+     * Appends the write of a value expiring at the given time as a single entry.
+     *
+     * @param sequence sequence number of the write
+     * @return log position to {@link #sync(long)} up to make the write durable
+     */
+    synchronized long appendExpiring(
+            @NotNull final ByteBuffer key,
+            @NotNull final ByteBuffer value,
+            final long expiresAt,
+            final long sequence) throws IOException {
+        final long size = Long.BYTES * 2L + Byte.BYTES + Integer.BYTES * 2L + key.remaining() + value.remaining();
+        if (size > Integer.MAX_VALUE - HEADER_SIZE) {
+            throw new IOException("Too big record: " + size);
+        }
+
+        final ByteBuffer entry = ByteBuffer.allocate(HEADER_SIZE + (int) size);
+        entry.position(HEADER_SIZE);
+        entry.putLong(sequence);
+        entry.put(FLAG_EXPIRING).putInt(key.remaining()).put(key.duplicate());
+        entry.putInt(value.remaining()).put(value.duplicate());
+        entry.putLong(expiresAt);
+        return writeEntry(entry);
+    }
+
+    /**
+     * Fills the header of the entry and writes it out, the monitor of the log must be held.
+     * If a torn entry can't be truncated, the log refuses further appends.
+     */
+    private long writeEntry(@NotNull final ByteBuffer entry) throws IOException {
+        if (torn != null) {
+            throw new IOException("Log " + file + " holds a torn entry", torn);
+        }
+
+        final int length = entry.position() - HEADER_SIZE;
+        final CRC32C checksum = new CRC32C();
+        checksum.update(entry.array(), HEADER_SIZE, length);
+        entry.putInt(0, length).putInt(Integer.BYTES, (int) checksum.getValue());
+        entry.flip();
+        try {
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+        } catch (IOException e) {
+            try {
+                // Moves the position back as well
+                channel.truncate(written);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+                torn = e;
+            }
+            throw e;
+        }
+        written += entry.limit();
+        return written;
+    }
+
+    private static void write(
+            @NotNull final ByteBuffer entry,
+            @NotNull final ByteBuffer key,
+            @Nullable final ByteBuffer value) {
+        entry.put(value == null ? FLAG_TOMBSTONE : 0).putInt(key.remaining()).put(key);
+        if (value != null) {
+            entry.putInt(value.remaining()).put(value);
+        }
+    }
+
+    /**
+     * Forces the log to disk up to the given position unless somebody did it already.
+     */
+    void sync(final long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+
+        synchronized (syncLock) {
+            // The previous leader could have covered us
+            if (synced >= position) {
+                return;
+            }
+
+            final long target;
+            synchronized (this) {
+                target = written;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // Closed logs belong to flushed memtables
+                return;
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * Forces everything appended so far.
+     */
+    void sync() throws IOException {
+        final long position;
+        synchronized (this) {
+            position = written;
+        }
+        sync(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Applies the logged writes to the memtable.
+     *
+     * @return sequence number of the last replayed write, 0 if none
+     */
+    static long replay(
+            @NotNull final Path file,
+            @NotNull final MemTable memTable) throws IOException {
+        final ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Log is too big: " + file);
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        long sequence = 0;
+        int offset = 0;
+        final CRC32C checksum = new CRC32C();
+        while (offset + HEADER_SIZE <= mapped.limit()) {
+            final int length = mapped.getInt(offset);
+            if (length < Long.BYTES || length > mapped.limit() - offset - HEADER_SIZE) {
+                break;
+            }
+
+            final ByteBuffer operations = Buffers.slice(mapped, offset + HEADER_SIZE, length);
+            checksum.reset();
+            checksum.update(operations.duplicate());
+            if ((int) checksum.getValue() != mapped.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+
+            sequence = apply(operations, memTable);
+            offset += HEADER_SIZE + length;
+        }
+
+        if (offset < mapped.limit()) {
+            log.warn("Skipped torn tail of {} bytes in {}", mapped.limit() - offset, file);
+        }
+        return sequence;
+    }
+
+    private static long apply(
+            @NotNull final ByteBuffer operations,
+            @NotNull final MemTable memTable) {
+        long sequence = operations.getLong(0) - 1;
+        int offset = Long.BYTES;
+        while (offset < operations.limit()) {
+            final byte flags = operations.get(offset);
+            final int keyLength = operations.getInt(offset + Byte.BYTES);
+            final ByteBuffer key = Buffers.slice(operations, offset + Byte.BYTES + Integer.BYTES, keyLength);
+            offset += Byte.BYTES + Integer.BYTES + keyLength;
+            sequence++;
+            if ((flags & FLAG_TOMBSTONE) != 0) {
+                memTable.remove(key, sequence);
+            } else {
+                final int valueLength = operations.getInt(offset);
+                final ByteBuffer value = Buffers.slice(operations, offset + Integer.BYTES, valueLength);
+                offset += Integer.BYTES + valueLength;
+                if ((flags & FLAG_RANGE) != 0) {
+                    memTable.removeRange(key, value, sequence);
+                } else if ((flags & FLAG_EXPIRING) != 0) {
+                    memTable.upsert(key, value, sequence, operations.getLong(offset));
+                    offset += Long.BYTES;
+                } else {
+                    memTable.upsert(key, value, sequence);
+                }
+            }
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.LsmDAO;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link AsyncDAO}.
+ */
+class AsyncTest extends TestBase {
+    private static final Config SYNCED = small()
+            .walSyncMode(SyncMode.PER_WRITE)
+            .ioThreads(4)
+            .build();
+
+    @Test
+    void matchesBlockingCalls(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (LsmDAO dao = (LsmDAO) DAOFactory.create(data, SYNCED)) {
+            final AsyncDAO async = dao.async();
+            // Enough for a few flushes on the I/O pool
+            final List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                writes.add(async.upsertAsync(key, value));
+                expected.put(key, value);
+            }
+            final ByteBuffer removed = expected.firstKey();
+            writes.add(async.removeAsync(removed));
+            expected.remove(removed);
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+
+            for (final ByteBuffer key : expected.keySet()) {
+                assertEquals(expected.get(key), async.getAsync(key).join());
+            }
+            final CompletionException missing = assertThrows(
+                    CompletionException.class,
+                    () -> async.getAsync(removed).join());
+            assertTrue(missing.getCause() instanceof NoSuchElementException);
+
+            final ByteBuffer from = expected.keySet().stream().skip(100).findFirst().orElseThrow();
+            final List<Record> range = async.rangeAsync(from, null, 50).join();
+            assertEquals(50, range.size());
+            assertEquals(
+                    new ArrayList<>(expected.tailMap(from).keySet()).subList(0, 50),
+                    range.stream().map(Record::getKey).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void cachedReadsAndUnsyncedWritesCompleteInline(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data, SYNCED)) {
+            dao.upsert(key, value);
+        }
+
+        final Config periodic = Config.builder()
+                .walSyncMode(SyncMode.PERIODIC)
+                .rowCacheSize(1024 * 1024)
+                .build();
+        try (LsmDAO dao = new LsmDAO(data, periodic)) {
+            // The first read caches the row
+            assertEquals(value, dao.get(key));
+            final CompletableFuture<ByteBuffer> hit = dao.async().getAsync(key);
+            assertTrue(hit.isDone());
+            assertEquals(value, hit.join());
+
+            final ByteBuffer written = randomKey();
+            assertTrue(dao.async().upsertAsync(written, value).isDone());
+            final CompletableFuture<ByteBuffer> fresh = dao.async().getAsync(written);
+            assertTrue(fresh.isDone());
+            assertEquals(value, fresh.join());
+
+            assertTrue(dao.async().removeAsync(written).isDone());
+            final CompletableFuture<ByteBuffer> removed = dao.async().getAsync(written);
+            assertTrue(removed.isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void rejectedCallsFail(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            final AsyncDAO async = AsyncDAO.of(dao, command -> {
+                throw new RejectedExecutionException("Overloaded");
+            });
+            final CompletionException rejected = assertThrows(
+                    CompletionException.class,
+                    () -> async.getAsync(randomKey()).join());
+            assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    void writesOverflowingPoolAreRejected(@TempDir File data) throws IOException {
+        final Config overloaded = Config.builder()
+                .walSyncMode(SyncMode.PER_WRITE)
+                .ioThreads(1)
+                .ioQueueSize(1)
+                .build();
+        try (LsmDAO dao = new LsmDAO(data, overloaded)) {
+            // Every write waits for a sync, which the single thread can't keep up with
+            final List<ByteBuffer> keys = new ArrayList<>();
+            final List<CompletableFuture<Void>> writes = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                keys.add(key);
+                writes.add(dao.async().upsertAsync(key, randomValue()));
+            }
+
+            int rejected = 0;
+            for (int i = 0; i < writes.size(); i++) {
+                try {
+                    writes.get(i).join();
+                } catch (CompletionException e) {
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                    // A rejected write is not applied
+                    final ByteBuffer key = keys.get(i);
+                    assertThrows(NoSuchElementException.class, () -> dao.get(key));
+                    rejected++;
+                }
+            }
+            assertTrue(rejected > 0);
+        }
+    }
+}
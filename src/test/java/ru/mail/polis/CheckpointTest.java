@@ -0,0 +1,96 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#checkpoint(File)}.
+ */
+class CheckpointTest extends TestBase {
+    private static final Config SEPARATED = small()
+            .compactionThreshold(2)
+            .valueThreshold(512)
+            .build();
+
+    private static File storage(final File root) throws IOException {
+        final File result = new File(root, "data");
+        assertTrue(result.mkdir());
+        return result;
+    }
+
+    @Test
+    void checkpointIsOpenable(@TempDir File root) throws IOException {
+        final File data = storage(root);
+        final File checkpoint = new File(root, "checkpoint");
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            fill(dao, expected, 500);
+            dao.checkpoint(checkpoint);
+
+            // Tables are shared rather than copied
+            try (DirectoryStream<Path> tables = java.nio.file.Files.newDirectoryStream(checkpoint.toPath(), "*.sst")) {
+                for (final Path table : tables) {
+                    final Path source = data.toPath().resolve(table.getFileName());
+                    if (java.nio.file.Files.exists(source)) {
+                        assertTrue(java.nio.file.Files.isSameFile(table, source));
+                    }
+                }
+            }
+
+            // Later writes and the compactions they cause don't affect the checkpoint
+            final Iterator<ByteBuffer> keys = expected.keySet().iterator();
+            for (int i = 0; i < 100; i++) {
+                dao.remove(keys.next());
+            }
+            fill(dao, new TreeMap<>(), 500);
+        }
+
+        try (DAO dao = DAOFactory.create(checkpoint, SEPARATED)) {
+            assertContents(expected, dao);
+            fill(dao, expected, 10);
+        }
+        try (DAO dao = DAOFactory.create(checkpoint, SEPARATED)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void nonEmptyTargetIsRejected(@TempDir File root) throws IOException {
+        final File checkpoint = new File(root, "checkpoint");
+        try (DAO dao = DAOFactory.create(storage(root), SEPARATED)) {
+            dao.upsert(randomKey(), randomValue());
+            dao.checkpoint(checkpoint);
+            assertThrows(IOException.class, () -> dao.checkpoint(checkpoint));
+        }
+    }
+
+    @Test
+    void shardsAreCheckpointed(@TempDir File root) throws IOException {
+        final File checkpoint = new File(root, "checkpoint");
+        final Config sharded = small()
+                .shards(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(storage(root), sharded)) {
+            fill(dao, expected, 200);
+            dao.checkpoint(checkpoint);
+            fill(dao, new TreeMap<>(), 10);
+        }
+
+        try (DAO dao = DAOFactory.create(checkpoint, sharded)) {
+            assertContents(expected, dao);
+        }
+    }
+}
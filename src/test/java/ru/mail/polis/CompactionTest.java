@@ -0,0 +1,133 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.CompactionStyle;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.LsmDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compaction tests for {@link DAO} implementations.
+ */
+class CompactionTest extends TestBase {
+    private static Config config(final CompactionStyle style) {
+        return small()
+                .compactionStyle(style)
+                .compactionThreshold(2)
+                .tableSize(4 * FLUSH_THRESHOLD)
+                .build();
+    }
+
+    @Test
+    void sizeTieredOverwrites(@TempDir File data) throws IOException {
+        overwrites(CompactionStyle.SIZE_TIERED, data);
+    }
+
+    @Test
+    void leveledOverwrites(@TempDir File data) throws IOException {
+        overwrites(CompactionStyle.LEVELED, data);
+    }
+
+    @Test
+    void sizeTieredRemoves(@TempDir File data) throws IOException {
+        removes(CompactionStyle.SIZE_TIERED, data);
+    }
+
+    @Test
+    void leveledRemoves(@TempDir File data) throws IOException {
+        removes(CompactionStyle.LEVELED, data);
+    }
+
+    @Test
+    void writesWaitForBacklog(@TempDir File data) throws IOException {
+        final Config throttled = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .compactionThreshold(2)
+                .slowdownBacklog(2)
+                .stopBacklog(3)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (LsmDAO dao = (LsmDAO) DAOFactory.create(data, throttled)) {
+            for (int i = 0; i < 3000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomBuffer(256);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            assertTrue(dao.getMetrics().getWriteStallLatency().getCount() > 0);
+            assertTrue(dao.getMetrics().getFlushLatency().getCount() > 1);
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> Config.builder().slowdownBacklog(4).stopBacklog(3).build());
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> Config.builder().compactionThreshold(8).stopBacklog(4).build());
+    }
+
+    private static void overwrites(
+            final CompactionStyle style,
+            final File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomKey());
+        }
+
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config(style))) {
+            for (int round = 0; round < 50; round++) {
+                for (final ByteBuffer key : keys) {
+                    final ByteBuffer value = randomValue();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        // 5 MB of updates to 100 KB of live data
+        assertTrue(Files.directorySize(data) < 10 * keys.size() * 1024);
+
+        try (DAO dao = DAOFactory.create(data, config(style))) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    private static void removes(
+            final CompactionStyle style,
+            final File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final List<ByteBuffer> removed = new ArrayList<>();
+        try (DAO dao = DAOFactory.create(data, config(style))) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = expected.firstKey();
+                dao.remove(key);
+                expected.remove(key);
+                removed.add(key);
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config(style))) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            for (final ByteBuffer key : removed) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(key));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Multi-threaded unit tests for {@link DAO} implementations.
+ */
+class ConcurrentTest extends TestBase {
+    private static final int THREADS = 4;
+    private static final int PER_THREAD = 1000;
+
+    @Test
+    void concurrentUpserts(@TempDir File data) throws Exception {
+        try (DAO dao = DAOFactory.create(data)) {
+            final Map<ByteBuffer, ByteBuffer> expected = upsertConcurrently(dao);
+            assertEquals(THREADS * PER_THREAD, expected.size());
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void concurrentSyncedUpserts(@TempDir File data) throws Exception {
+        final Config config = Config.builder()
+                .walSyncMode(SyncMode.PER_WRITE)
+                .build();
+        // Never closed, every acknowledged write must be recovered from the log
+        final Map<ByteBuffer, ByteBuffer> expected = upsertConcurrently(DAOFactory.create(data, config));
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void concurrentRemoves(@TempDir File data) throws Exception {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        try (DAO dao = DAOFactory.create(data)) {
+            for (int i = 0; i < THREADS * PER_THREAD; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, randomValue());
+                keys.add(key);
+            }
+
+            final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            try {
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    final List<ByteBuffer> part = keys.subList(t * PER_THREAD, (t + 1) * PER_THREAD);
+                    futures.add(executor.submit(() -> {
+                        for (final ByteBuffer key : part) {
+                            dao.remove(key);
+                        }
+                        return null;
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } finally {
+                executor.shutdown();
+            }
+
+            assertFalse(dao.iterator(ByteBuffer.allocate(0)).hasNext());
+        }
+    }
+
+    private static Map<ByteBuffer, ByteBuffer> upsertConcurrently(final DAO dao) throws Exception {
+        final Map<ByteBuffer, ByteBuffer> expected = new ConcurrentHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < PER_THREAD; i++) {
+                        final ByteBuffer key = randomKey();
+                        final ByteBuffer value = randomValue();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return expected;
+    }
+}
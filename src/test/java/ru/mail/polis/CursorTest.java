@@ -0,0 +1,117 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#cursor}.
+ */
+class CursorTest extends TestBase {
+    private static final Config SEPARATED = small()
+            .valueThreshold(2048)
+            .build();
+
+    @Test
+    void matchesIterator(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            // Overwrites and removals spread over the memtable and several tables
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 300; i++) {
+                    final ByteBuffer key = randomKey();
+                    final ByteBuffer value = i % 10 == 0 ? randomBuffer(4096) : randomValue();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+                int i = 0;
+                for (final ByteBuffer key : expected.keySet().toArray(new ByteBuffer[0])) {
+                    if (i++ % 7 == round) {
+                        dao.remove(key);
+                        expected.remove(key);
+                    } else if (i % 11 == round) {
+                        final ByteBuffer value = randomValue();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                }
+            }
+
+            assertCursor(expected, dao.cursor(ByteBuffer.allocate(0), null));
+            final ByteBuffer from = expected.keySet().stream().skip(100).findFirst().orElseThrow();
+            final ByteBuffer to = expected.keySet().stream().skip(200).findFirst().orElseThrow();
+            assertCursor(expected.subMap(from, true, to, false), dao.cursor(from, to));
+            assertCursor(expected.tailMap(to, true), dao.cursor(to, null));
+            assertFalse(dao.cursor(to, from).next());
+        }
+    }
+
+    @Test
+    void snapshotCursor(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            dao.upsert(key, value);
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.upsert(key, randomValue());
+                dao.upsert(randomKey(), randomValue());
+
+                final Cursor cursor = snapshot.cursor(ByteBuffer.allocate(0), null);
+                assertTrue(cursor.next());
+                assertEquals(key, cursor.key());
+                assertEquals(value, cursor.value());
+                assertFalse(cursor.next());
+            }
+        }
+    }
+
+    @Test
+    void buffersAreReused(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+
+            final Cursor cursor = dao.cursor(ByteBuffer.allocate(0), null);
+            final ByteBuffer key = ByteBuffer.allocate(KEY_LENGTH);
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertTrue(cursor.next());
+                // Views may be consumed, they are repositioned on the next access
+                cursor.key().get(new byte[KEY_LENGTH]);
+                key.clear();
+                cursor.copyKeyTo(key);
+                assertEquals(entry.getKey(), key.flip());
+                assertEquals(entry.getValue(), cursor.value());
+            }
+            assertFalse(cursor.next());
+            assertThrows(IllegalStateException.class, cursor::key);
+        }
+    }
+
+    private static void assertCursor(
+            final Map<ByteBuffer, ByteBuffer> expected,
+            final Cursor cursor) {
+        final Iterator<Map.Entry<ByteBuffer, ByteBuffer>> entries = expected.entrySet().iterator();
+        while (cursor.next()) {
+            assertTrue(entries.hasNext());
+            final Map.Entry<ByteBuffer, ByteBuffer> entry = entries.next();
+            assertEquals(entry.getKey(), cursor.key());
+            assertEquals(entry.getValue(), cursor.value());
+        }
+        assertFalse(entries.hasNext());
+    }
+}
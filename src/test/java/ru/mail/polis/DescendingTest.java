@@ -0,0 +1,88 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#descendingIterator} and {@link DAO#descendingRange}.
+ */
+class DescendingTest extends TestBase {
+    private static final Config RESTARTS = small()
+            .restartInterval(4)
+            .build();
+
+    @Test
+    void matchesAscendingOrder(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, RESTARTS)) {
+            // Overwrites and removals spread over the memtable and several tables
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 300; i++) {
+                    final ByteBuffer key = randomKey();
+                    final ByteBuffer value = randomValue();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+                int i = 0;
+                for (final ByteBuffer key : expected.keySet().toArray(new ByteBuffer[0])) {
+                    if (i++ % 7 == round) {
+                        dao.remove(key);
+                        expected.remove(key);
+                    } else if (i % 11 == round) {
+                        final ByteBuffer value = randomValue();
+                        dao.upsert(key, value);
+                        expected.put(key, value);
+                    }
+                }
+            }
+
+            final ByteBuffer last = expected.lastKey();
+            assertRecords(expected.descendingMap(), dao.descendingIterator(last));
+            assertRecords(expected.descendingMap(), dao.descendingIterator(join(last, randomKey())));
+            assertFalse(dao.descendingIterator(ByteBuffer.allocate(0)).hasNext());
+
+            final ByteBuffer from = expected.keySet().stream().skip(200).findFirst().orElseThrow();
+            final ByteBuffer to = expected.keySet().stream().skip(100).findFirst().orElseThrow();
+            assertRecords(expected.subMap(to, false, from, true).descendingMap(), dao.descendingRange(from, to));
+            assertFalse(dao.descendingRange(to, from).hasNext());
+
+            // A key between the stored ones
+            final ByteBuffer between = join(to, ByteBuffer.allocate(1));
+            assertRecords(expected.headMap(between, true).descendingMap(), dao.descendingIterator(between));
+        }
+    }
+
+    @Test
+    void snapshotSeesOlderVersions(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, RESTARTS)) {
+            for (int i = 0; i < 200; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+
+            try (Snapshot snapshot = dao.snapshot()) {
+                // Newer versions end up next to the pinned ones in the same tables
+                for (final ByteBuffer key : expected.keySet()) {
+                    dao.upsert(key, randomValue());
+                }
+                for (final ByteBuffer key : expected.keySet()) {
+                    dao.remove(key);
+                    dao.upsert(randomKey(), randomValue());
+                }
+                assertRecords(expected.descendingMap(), snapshot.descendingIterator(expected.lastKey()));
+            }
+        }
+    }
+}
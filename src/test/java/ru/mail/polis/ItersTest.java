@@ -4,6 +4,10 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
@@ -39,4 +43,56 @@ class ItersTest {
                 ImmutableList.of(1, 2, 3, 5, 6),
                 ImmutableList.copyOf(collapsed));
     }
+
+    @Test
+    void merge() {
+        assertFalse(Iters.merge(ImmutableList.of()).hasNext());
+        assertFalse(Iters.merge(ImmutableList.of(Iters.empty(), Iters.empty())).hasNext());
+
+        final List<Iterator<Record>> sources = ImmutableList.of(
+                ImmutableList.of(record(2, 20), Record.tombstone(key(3)), record(6, 60)).iterator(),
+                ImmutableList.of(record(1, 1), record(2, 2), record(3, 3), record(5, 5)).iterator(),
+                ImmutableList.of(Record.tombstone(key(1)), record(4, 4), Record.tombstone(key(5))).iterator());
+        assertEquals(
+                ImmutableList.of(record(1, 1), record(2, 20), record(4, 4), record(5, 5), record(6, 60)),
+                ImmutableList.copyOf(Iters.merge(sources)));
+    }
+
+    @Test
+    void mergeOnlyTombstones() {
+        final List<Iterator<Record>> sources = ImmutableList.of(
+                ImmutableList.of(Record.tombstone(key(1)), Record.tombstone(key(2))).iterator(),
+                ImmutableList.of(record(1, 1), record(2, 2)).iterator());
+        assertFalse(Iters.merge(sources).hasNext());
+    }
+
+    @Test
+    void mergeDescending() {
+        final List<Iterator<Record>> sources = ImmutableList.of(
+                ImmutableList.of(record(6, 60), Record.tombstone(key(3)), record(2, 20)).iterator(),
+                ImmutableList.of(record(5, 5), record(3, 3), record(2, 2), record(1, 1)).iterator(),
+                ImmutableList.of(Record.tombstone(key(5)), record(4, 4), Record.tombstone(key(1))).iterator());
+        assertEquals(
+                ImmutableList.of(record(6, 60), record(5, 5), record(4, 4), record(2, 20), record(1, 1)),
+                ImmutableList.copyOf(Iters.mergeDescending(sources)));
+    }
+
+    @Test
+    void downTo() {
+        final List<Integer> sixNumbers = ImmutableList.of(6, 5, 4, 3, 2, 1);
+        assertFalse(Iters.downTo(Iters.empty(), 0).hasNext());
+        assertFalse(Iters.downTo(sixNumbers.iterator(), 6).hasNext());
+        assertEquals(2, Iterators.size(Iters.downTo(sixNumbers.iterator(), 4)));
+        assertEquals(6, Iterators.size(Iters.downTo(sixNumbers.iterator(), 0)));
+    }
+
+    private static ByteBuffer key(final int key) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, key);
+    }
+
+    private static Record record(
+            final int key,
+            final int value) {
+        return Record.of(key(key), ByteBuffer.allocate(Integer.BYTES).putInt(0, value));
+    }
 }
@@ -0,0 +1,117 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.LsmDAO;
+import ru.mail.polis.kodim97.StorageMetricsMXBean;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the storage statistics.
+ */
+class MetricsTest extends TestBase {
+    private static final Config COMPACTING = small()
+            .compactionThreshold(2)
+            .build();
+
+    @Test
+    void operationsAreCounted(@TempDir File data) throws IOException {
+        try (LsmDAO dao = (LsmDAO) DAOFactory.create(data, COMPACTING)) {
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, randomValue());
+                keys.add(key);
+            }
+            for (final ByteBuffer key : keys) {
+                assertNotNull(dao.get(key));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(randomKey()));
+            }
+            dao.remove(keys.get(0));
+            dao.iterator(ByteBuffer.allocate(0));
+
+            final StorageMetricsMXBean metrics = dao.getMetrics();
+            assertEquals(500, metrics.getUpsertLatency().getCount());
+            assertEquals(600, metrics.getGetLatency().getCount());
+            assertEquals(1, metrics.getRemoveLatency().getCount());
+            assertEquals(1, metrics.getIteratorLatency().getCount());
+            assertTrue(metrics.getGetLatency().getMaxNanos() > 0);
+            assertTrue(metrics.getFlushLatency().getCount() > 0);
+            assertTrue(metrics.getMemTableSizeInBytes() > 0);
+
+            int tables = 0;
+            for (final int count : metrics.getTablesPerLevel()) {
+                tables += count;
+            }
+            assertTrue(tables > 0);
+            // Absent keys are mostly rejected by filters
+            assertTrue(metrics.getBloomFilterChecks() > 0);
+            assertTrue(metrics.getBloomFilterNegatives() > metrics.getBloomFilterFalsePositives());
+            assertTrue(metrics.getBlockCacheStats().getHits() + metrics.getBlockCacheStats().getMisses() > 0);
+        }
+    }
+
+    @Test
+    void rowCacheServesHotKeys(@TempDir File data) throws IOException {
+        final Config cached = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .rowCacheSize(1024 * 1024)
+                .build();
+        try (LsmDAO dao = (LsmDAO) DAOFactory.create(data, cached)) {
+            final List<ByteBuffer> keys = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final ByteBuffer key = randomKey();
+                dao.upsert(key, randomValue());
+                keys.add(key);
+            }
+            final ByteBuffer hot = keys.get(0);
+            for (int i = 0; i < 100; i++) {
+                dao.get(hot);
+            }
+            assertTrue(dao.getMetrics().getRowCacheStats().getHits() > 0);
+
+            // Writes of every kind invalidate the cached value
+            final ByteBuffer value = randomValue();
+            dao.upsert(hot, value);
+            assertEquals(value, dao.get(hot));
+            dao.write(new WriteBatch().remove(hot));
+            assertThrows(NoSuchElementException.class, () -> dao.get(hot));
+            dao.upsert(hot, value);
+            assertEquals(value, dao.get(hot));
+            dao.removeRange(hot, join(hot, ByteBuffer.wrap(new byte[]{0})));
+            assertThrows(NoSuchElementException.class, () -> dao.get(hot));
+        }
+    }
+
+    @Test
+    void publishedThroughJmx(@TempDir File data) throws IOException, JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(
+                "ru.mail.polis.kodim97:type=LsmDAO,storage=" + ObjectName.quote(data.getAbsolutePath()));
+        try (DAO dao = DAOFactory.create(data, COMPACTING)) {
+            dao.upsert(randomKey(), randomValue());
+
+            final CompositeData upserts = (CompositeData) server.getAttribute(name, "UpsertLatency");
+            assertEquals(1L, upserts.get("count"));
+            final CompositeData cache = (CompositeData) server.getAttribute(name, "BlockCacheStats");
+            assertNotNull(cache.get("hitRate"));
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
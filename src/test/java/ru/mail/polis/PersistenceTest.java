@@ -0,0 +1,211 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Persistence tests for {@link DAO} implementations.
+ */
+class PersistenceTest extends TestBase {
+    @Test
+    void reopen(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void closeTwice(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final DAO dao = DAOFactory.create(data);
+        dao.upsert(key, value);
+        dao.close();
+        // Neither flushes nor deletes anything again
+        dao.close();
+        try (DAO reopened = DAOFactory.create(data)) {
+            assertEquals(value, reopened.get(key));
+        }
+    }
+
+    @Test
+    void removeSurvivesReopen(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValue());
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.remove(key);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    @Test
+    void overwriteAcrossTables(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, randomValue());
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void manyTables(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+                if (i % 3 == 0) {
+                    final ByteBuffer removed = expected.firstKey();
+                    dao.remove(removed);
+                    expected.remove(removed);
+                }
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+
+            final ByteBuffer middle = expected.keySet().stream().skip(expected.size() / 2).findFirst().get();
+            assertRecords(expected.tailMap(middle, true), dao.iterator(middle));
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void recoverAfterCrash(@TempDir File data) throws IOException {
+        final Config durable = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .walSyncMode(SyncMode.PER_WRITE)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        // Never closed, so the tail of the writes is only in the log
+        final DAO crashed = DAOFactory.create(data, durable);
+        for (int i = 0; i < 500; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            crashed.upsert(key, value);
+            expected.put(key, value);
+            if (i % 5 == 0) {
+                crashed.remove(key);
+                expected.remove(key);
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, durable)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        try (DAO dao = DAOFactory.create(data)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void recoverTornLog(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final DAO crashed = DAOFactory.create(data);
+        crashed.upsert(key, value);
+        crashed.upsert(randomKey(), randomValue());
+
+        // Simulate a partially written entry
+        final File[] logs = data.listFiles((dir, name) -> name.endsWith(".wal"));
+        assertNotNull(logs);
+        assertEquals(1, logs.length);
+        Files.write(logs[0].toPath(), new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+
+    @Test
+    void tablesMissingFromManifestAreDeleted(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+        }
+
+        // Left by a flush which crashed before its manifest edit
+        final File[] tables = data.listFiles((dir, name) -> name.endsWith(".sst"));
+        assertNotNull(tables);
+        assertEquals(1, tables.length);
+        final File orphan = new File(data, "1000.sst");
+        Files.copy(tables[0].toPath(), orphan.toPath());
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+        assertFalse(orphan.exists());
+    }
+
+    @Test
+    void storageWithoutManifest(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            for (int i = 0; i < 200; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        // Storages written before manifests list their tables in the directory only
+        Files.delete(new File(data, "MANIFEST").toPath());
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+        assertTrue(new File(data, "MANIFEST").exists());
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        }
+    }
+
+    @Test
+    void tornManifestEdit(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+        }
+
+        Files.write(new File(data, "MANIFEST").toPath(), new byte[]{0, 0, 0, 42, 1}, StandardOpenOption.APPEND);
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(key));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.CompactionStyle;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#removeRange(ByteBuffer, ByteBuffer)}.
+ */
+class RangeDeleteTest extends TestBase {
+    private static final Config COMPACTING = small()
+            .compactionThreshold(2)
+            .build();
+
+    @Test
+    void removesRange(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, COMPACTING)) {
+            fill(dao, expected, 1000);
+            final ByteBuffer from = nthKey(expected, 200);
+            final ByteBuffer to = nthKey(expected, 700);
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.removeRange(from, to);
+                assertEquals(expected.get(from), snapshot.get(from));
+                assertEquals(1000, count(snapshot.iterator(ByteBuffer.allocate(0))));
+            }
+            expected.subMap(from, to).clear();
+            assertThrows(NoSuchElementException.class, () -> dao.get(from));
+            assertEquals(expected.get(to), dao.get(to));
+            assertContents(expected, dao);
+
+            // Writes after the removal are not affected
+            final ByteBuffer value = randomValue();
+            dao.upsert(from, value);
+            expected.put(from, value);
+            assertContents(expected, dao);
+        }
+
+        try (DAO dao = DAOFactory.create(data, COMPACTING)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void rangeRecoveredFromLog(@TempDir File data) throws IOException {
+        final Config durable = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .walSyncMode(SyncMode.PER_WRITE)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        // Never closed, so the removal is only in the log
+        final DAO crashed = DAOFactory.create(data, durable);
+        fill(crashed, expected, 200);
+        final ByteBuffer from = nthKey(expected, 50);
+        final ByteBuffer to = nthKey(expected, 150);
+        crashed.removeRange(from, to);
+        expected.subMap(from, to).clear();
+        fill(crashed, expected, 10);
+
+        try (DAO dao = DAOFactory.create(data, durable)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void emptyRangeRemovesNothing(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data)) {
+            fill(dao, expected, 10);
+            dao.removeRange(expected.lastKey(), expected.firstKey());
+            dao.removeRange(expected.firstKey(), expected.firstKey());
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void compactionDropsRemovedData(@TempDir File data) throws IOException {
+        final Config leveled = small()
+                .compactionStyle(CompactionStyle.LEVELED)
+                .compactionThreshold(2)
+                .tableSize(4 * FLUSH_THRESHOLD)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, leveled)) {
+            fill(dao, expected, 2000);
+            dao.removeRange(ByteBuffer.allocate(0), lastKey());
+            expected.clear();
+            fill(dao, expected, 300);
+        }
+
+        // 2 MB removed, 300 KB left
+        assertTrue(Files.directorySize(data) < 1024 * 1024);
+        try (DAO dao = DAOFactory.create(data, leveled)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void shardsRemoveRange(@TempDir File data) throws IOException {
+        final Config sharded = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .shards(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, sharded)) {
+            fill(dao, expected, 500);
+            final ByteBuffer from = nthKey(expected, 100);
+            final ByteBuffer to = nthKey(expected, 400);
+            dao.removeRange(from, to);
+            expected.subMap(from, to).clear();
+            assertContents(expected, dao);
+        }
+    }
+
+    private static ByteBuffer nthKey(
+            final NavigableMap<ByteBuffer, ByteBuffer> map,
+            final int n) {
+        final Iterator<ByteBuffer> keys = map.keySet().iterator();
+        for (int i = 0; i < n; i++) {
+            keys.next();
+        }
+        return keys.next();
+    }
+
+    private static int count(final Iterator<Record> records) {
+        int result = 0;
+        while (records.hasNext()) {
+            records.next();
+            result++;
+        }
+        return result;
+    }
+}
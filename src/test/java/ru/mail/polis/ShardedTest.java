@@ -0,0 +1,207 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.LsmDAO;
+import ru.mail.polis.kodim97.ShardedDAO;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link ShardedDAO}.
+ */
+class ShardedTest extends TestBase {
+    private static final Config SHARDED = small()
+            .shards(4)
+            .build();
+
+    @Test
+    void mergesShardsInOrder(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SHARDED)) {
+            assertTrue(dao instanceof ShardedDAO);
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final ShardedDAO sharded = (ShardedDAO) dao;
+            final ByteBuffer removed = expected.firstKey();
+            final WriteBatch batch = new WriteBatch().remove(removed);
+            final NavigableMap<ByteBuffer, ByteBuffer> batched = new TreeMap<>();
+            while (batched.size() < 10) {
+                final ByteBuffer key = randomKey();
+                if (sharded.shardOf(key) == sharded.shardOf(removed)) {
+                    final ByteBuffer value = randomValue();
+                    batch.upsert(key, value);
+                    batched.put(key, value);
+                }
+            }
+            dao.write(batch);
+            expected.putAll(batched);
+            expected.remove(removed);
+
+            // A batch spanning shards is rejected as a whole
+            ByteBuffer key;
+            do {
+                key = randomKey();
+            } while (sharded.shardOf(key) == sharded.shardOf(removed));
+            final ByteBuffer other = key;
+            final WriteBatch spanning = new WriteBatch()
+                    .remove(batched.firstKey())
+                    .upsert(other, randomValue());
+            assertThrows(IllegalArgumentException.class, () -> dao.write(spanning));
+            assertEquals(batched.firstEntry().getValue(), dao.get(batched.firstKey()));
+            assertThrows(NoSuchElementException.class, () -> dao.get(other));
+
+            // Every shard gets a share of the keys
+            for (final LsmDAO shard : ((ShardedDAO) dao).getShards()) {
+                assertTrue(shard.iterator(ByteBuffer.allocate(0)).hasNext());
+            }
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+        }
+
+        try (DAO dao = DAOFactory.create(data, SHARDED)) {
+            assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+            final ByteBuffer from = expected.keySet().stream().skip(500).findFirst().orElseThrow();
+            final ByteBuffer to = expected.keySet().stream().skip(1500).findFirst().orElseThrow();
+            assertRecords(expected.subMap(from, true, to, false), dao.range(from, to));
+
+            final List<ByteBuffer> descending = new ArrayList<>();
+            dao.descendingRange(to, from).forEachRemaining(record -> descending.add(record.getKey()));
+            assertEquals(new ArrayList<>(expected.subMap(from, false, to, true).descendingKeySet()), descending);
+
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.remove(from);
+                assertEquals(expected.get(from), snapshot.get(from));
+                assertRecords(expected, snapshot.iterator(ByteBuffer.allocate(0)));
+            }
+        }
+    }
+
+    @Test
+    void cursorsStreamsAndAsyncCallsSpanShards(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SHARDED)) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+            final ByteBuffer from = expected.keySet().stream().skip(500).findFirst().orElseThrow();
+            final ByteBuffer to = expected.keySet().stream().skip(1500).findFirst().orElseThrow();
+            final NavigableMap<ByteBuffer, ByteBuffer> range = expected.subMap(from, true, to, false);
+
+            final Cursor cursor = dao.cursor(from, to);
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : range.entrySet()) {
+                assertTrue(cursor.next());
+                assertEquals(entry.getKey(), cursor.key());
+                assertEquals(entry.getValue(), cursor.value());
+            }
+            assertFalse(cursor.next());
+            try (Snapshot snapshot = dao.snapshot()) {
+                final Cursor all = snapshot.cursor(ByteBuffer.allocate(0), null);
+                int count = 0;
+                while (all.next()) {
+                    count++;
+                }
+                assertEquals(expected.size(), count);
+            }
+
+            // Tables of all the shards split the range
+            assertNotNull(dao.stream(ByteBuffer.allocate(0), null, true).spliterator().trySplit());
+            assertEquals(
+                    new ArrayList<>(range.keySet()),
+                    dao.stream(from, to, true).map(Record::getKey).collect(Collectors.toList()));
+
+            final AsyncDAO async = ((ShardedDAO) dao).async();
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            async.upsertAsync(key, value).join();
+            assertEquals(value, async.getAsync(key).join());
+            async.removeAsync(key).join();
+            final CompletionException missing = assertThrows(
+                    CompletionException.class,
+                    () -> async.getAsync(key).join());
+            assertTrue(missing.getCause() instanceof NoSuchElementException);
+            assertEquals(
+                    new ArrayList<>(range.keySet()).subList(0, 100),
+                    async.rangeAsync(from, to, 100).join().stream()
+                            .map(Record::getKey)
+                            .collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void shardsShareBlockCache(@TempDir File data) throws IOException {
+        final Config config = Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .blockCacheSize(256 * 1024)
+                .shards(8)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (int i = 0; i < 2000; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        try (DAO dao = DAOFactory.create(data, config)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+
+            final List<LsmDAO> shards = ((ShardedDAO) dao).getShards();
+            final long cached = shards.get(0).getBlockCacheStats().getSizeInBytes();
+            assertTrue(cached > 0);
+            assertTrue(cached <= 256 * 1024);
+            for (final LsmDAO shard : shards) {
+                assertEquals(cached, shard.getBlockCacheStats().getSizeInBytes());
+            }
+        }
+    }
+
+    @Test
+    void shardCountIsFixed(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, SHARDED)) {
+            dao.upsert(randomKey(), randomValue());
+        }
+        assertThrows(IOException.class, () -> DAOFactory.create(data, Config.builder().shards(2).build()));
+        assertThrows(IOException.class, () -> DAOFactory.create(data));
+    }
+
+    @Test
+    void layoutIsRecorded(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data, SHARDED)) {
+            // The mapping is persistent, so these must never change
+            final ShardedDAO sharded = (ShardedDAO) dao;
+            assertEquals(3, sharded.shardOf(ByteBuffer.allocate(0)));
+            assertEquals(2, sharded.shardOf(ByteBuffer.wrap("a".getBytes(StandardCharsets.UTF_8))));
+            assertEquals(3, sharded.shardOf(ByteBuffer.wrap("key".getBytes(StandardCharsets.UTF_8))));
+            assertEquals(0, sharded.shardOf(ByteBuffer.wrap("0123456789".getBytes(StandardCharsets.UTF_8))));
+        }
+
+        java.nio.file.Files.delete(data.toPath().resolve("SHARDS"));
+        assertThrows(IOException.class, () -> DAOFactory.create(data, SHARDED));
+    }
+}
@@ -0,0 +1,133 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#snapshot()} and iterator isolation.
+ */
+class SnapshotTest extends TestBase {
+    private static final Config COMPACTING = small()
+            .compactionThreshold(2)
+            .build();
+
+    @Test
+    void snapshotIgnoresLaterWrites(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final ByteBuffer added = randomKey();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+            try (Snapshot snapshot = dao.snapshot()) {
+                dao.upsert(key, randomValue());
+                dao.upsert(added, randomValue());
+                assertEquals(value, snapshot.get(key));
+                assertThrows(NoSuchElementException.class, () -> snapshot.get(added));
+
+                dao.remove(key);
+                assertEquals(value, snapshot.get(key));
+                final Iterator<Record> records = snapshot.iterator(ByteBuffer.allocate(0));
+                assertEquals(Record.of(key, value), records.next());
+                assertFalse(records.hasNext());
+            }
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    @Test
+    void iteratorIgnoresLaterWrites(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(key, value);
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            dao.upsert(key, randomValue());
+            dao.upsert(randomKey(), randomValue());
+            assertEquals(Record.of(key, value), records.next());
+            assertFalse(records.hasNext());
+        }
+    }
+
+    @Test
+    void snapshotSurvivesCompaction(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        final List<ByteBuffer> values = new ArrayList<>();
+        try (DAO dao = DAOFactory.create(data, COMPACTING)) {
+            for (int i = 0; i < 100; i++) {
+                keys.add(randomKey());
+                values.add(randomValue());
+                dao.upsert(keys.get(i), values.get(i));
+            }
+
+            try (Snapshot snapshot = dao.snapshot()) {
+                // Enough overwrites for many flushes and compactions
+                for (int round = 0; round < 20; round++) {
+                    for (final ByteBuffer key : keys) {
+                        dao.upsert(key, randomValue());
+                    }
+                    dao.remove(keys.get(round));
+                }
+
+                for (int i = 0; i < keys.size(); i++) {
+                    assertEquals(values.get(i), snapshot.get(keys.get(i)));
+                }
+                final Iterator<Record> records = snapshot.iterator(ByteBuffer.allocate(0));
+                int count = 0;
+                while (records.hasNext()) {
+                    final Record record = records.next();
+                    assertEquals(values.get(keys.indexOf(record.getKey())), record.getValue());
+                    count++;
+                }
+                assertEquals(keys.size(), count);
+            }
+        }
+    }
+
+    @Test
+    void batchesAreNotTorn(@TempDir File data) throws Exception {
+        final ByteBuffer left = randomKey();
+        final ByteBuffer right = randomKey();
+        try (DAO dao = DAOFactory.create(data, COMPACTING)) {
+            dao.write(new WriteBatch().upsert(left, value(0)).upsert(right, value(0)));
+
+            final AtomicBoolean done = new AtomicBoolean();
+            final Thread writer = new Thread(() -> {
+                try {
+                    for (int i = 1; i < 5000; i++) {
+                        dao.write(new WriteBatch().upsert(left, value(i)).upsert(right, value(i)));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    done.set(true);
+                }
+            });
+            writer.start();
+
+            while (!done.get()) {
+                try (Snapshot snapshot = dao.snapshot()) {
+                    assertEquals(snapshot.get(left), snapshot.get(right));
+                }
+                final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+                assertEquals(records.next().getValue(), records.next().getValue());
+            }
+            writer.join();
+        }
+    }
+
+    private static ByteBuffer value(final int version) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, version);
+    }
+}
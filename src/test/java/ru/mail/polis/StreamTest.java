@@ -0,0 +1,81 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#stream}.
+ */
+class StreamTest extends TestBase {
+    @Test
+    void parallelStreamMatchesRange(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data, 2000);
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            final ByteBuffer from = expected.keySet().stream().skip(300).findFirst().orElseThrow();
+            final ByteBuffer to = expected.keySet().stream().skip(1700).findFirst().orElseThrow();
+            for (final boolean parallel : new boolean[]{false, true}) {
+                assertEquals(
+                        new ArrayList<>(expected.keySet()),
+                        dao.stream(ByteBuffer.allocate(0), null, parallel)
+                                .map(Record::getKey)
+                                .collect(Collectors.toList()));
+                assertEquals(
+                        new ArrayList<>(expected.subMap(from, to).values()),
+                        dao.stream(from, to, parallel)
+                                .map(Record::getValue)
+                                .collect(Collectors.toList()));
+                assertEquals(0, dao.stream(to, from, parallel).count());
+            }
+        }
+    }
+
+    @Test
+    void splitsAtBlocks(@TempDir File data) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = fill(data, 2000);
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            final Spliterator<Record> whole = dao.stream(ByteBuffer.allocate(0), null, true).spliterator();
+            final long estimate = whole.estimateSize();
+            assertTrue(estimate >= expected.size() * 0.9 && estimate <= expected.size() * 1.1, "Estimate " + estimate);
+            assertTrue(whole.hasCharacteristics(Spliterator.SORTED));
+
+            final Spliterator<Record> prefix = whole.trySplit();
+            assertNotNull(prefix);
+            assertEquals(estimate, prefix.estimateSize() + whole.estimateSize(), 1);
+            assertTrue(prefix.estimateSize() > estimate / 4 && whole.estimateSize() > estimate / 4);
+
+            // The parts cover the range in order without overlaps
+            final List<ByteBuffer> keys = new ArrayList<>();
+            prefix.forEachRemaining(record -> keys.add(record.getKey()));
+            assertNull(prefix.trySplit());
+            whole.forEachRemaining(record -> keys.add(record.getKey()));
+            assertEquals(new ArrayList<>(expected.keySet()), keys);
+        }
+    }
+
+    private static NavigableMap<ByteBuffer, ByteBuffer> fill(
+            final File data,
+            final int count) throws IOException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, SMALL)) {
+            for (int i = 0; i < count; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+        return expected;
+    }
+}
@@ -17,10 +17,20 @@
 package ru.mail.polis;
 
 import org.jetbrains.annotations.NotNull;
+import ru.mail.polis.kodim97.Config;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 /**
  * Contains utility methods for unit tests.
  *
@@ -28,8 +38,24 @@ import java.util.concurrent.ThreadLocalRandom;
  */
 abstract class TestBase {
     static final int KEY_LENGTH = 16;
+    static final int FLUSH_THRESHOLD = 64 * 1024;
     private static final int VALUE_LENGTH = 1024;
 
+    /**
+     * Flushes tables of small blocks, so that a few thousand records span several of both.
+     */
+    static final Config SMALL = small().build();
+
+    /**
+     * Returns the builder of {@link #SMALL} for tests tuning more options.
+     */
+    @NotNull
+    static Config.Builder small() {
+        return Config.builder()
+                .flushThreshold(FLUSH_THRESHOLD)
+                .blockSize(1024);
+    }
+
     @NotNull
     static ByteBuffer randomBuffer(final int length) {
         assert length > 0;
@@ -48,6 +74,68 @@ abstract class TestBase {
         return randomBuffer(VALUE_LENGTH);
     }
 
+    /**
+     * Returns a key greater than any random one, so that descending scans from it see all the keys.
+     */
+    @NotNull
+    static ByteBuffer lastKey() {
+        final byte[] result = new byte[KEY_LENGTH + 1];
+        Arrays.fill(result, Byte.MAX_VALUE);
+        return ByteBuffer.wrap(result);
+    }
+
+    /**
+     * Upserts random records, which are added to the expected contents.
+     */
+    static void fill(
+            @NotNull final DAO dao,
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected,
+            final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            dao.upsert(key, value);
+            expected.put(key, value);
+        }
+    }
+
+    /**
+     * Checks that the iterator provides exactly the expected records in order.
+     */
+    static void assertRecords(
+            @NotNull final Map<ByteBuffer, ByteBuffer> expected,
+            @NotNull final Iterator<Record> actual) {
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertTrue(actual.hasNext());
+            final Record record = actual.next();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(entry.getValue(), record.getValue());
+        }
+        assertFalse(actual.hasNext());
+    }
+
+    /**
+     * Checks that scans in both directions, cursors and lookups see exactly the expected records.
+     */
+    static void assertContents(
+            @NotNull final NavigableMap<ByteBuffer, ByteBuffer> expected,
+            @NotNull final DAO dao) throws IOException {
+        assertRecords(expected, dao.iterator(ByteBuffer.allocate(0)));
+        assertRecords(expected.descendingMap(), dao.descendingIterator(lastKey()));
+
+        final Cursor cursor = dao.cursor(ByteBuffer.allocate(0), null);
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertTrue(cursor.next());
+            assertEquals(entry.getKey(), cursor.key());
+            assertEquals(entry.getValue(), cursor.value());
+        }
+        assertFalse(cursor.next());
+
+        for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), dao.get(entry.getKey()));
+        }
+    }
+
     @NotNull
     static ByteBuffer join(
             @NotNull final ByteBuffer left,
@@ -0,0 +1,132 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#upsert(ByteBuffer, ByteBuffer, Duration)}.
+ */
+class TtlTest extends TestBase {
+    private static final Duration SHORT = Duration.ofMillis(300);
+    private static final Duration LONG = Duration.ofHours(1);
+
+    @Test
+    void expiredRecordsAreHidden(@TempDir File data) throws IOException, InterruptedException {
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        final ByteBuffer overwritten = randomKey();
+        final ByteBuffer expiring = randomKey();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(overwritten, randomValue());
+            final ByteBuffer value = randomValue();
+            dao.upsert(overwritten, value, SHORT);
+            dao.upsert(expiring, randomValue(), SHORT);
+            for (int i = 0; i < 10; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer permanent = randomValue();
+                if (i % 2 == 0) {
+                    dao.upsert(key, permanent);
+                } else {
+                    dao.upsert(key, permanent, LONG);
+                }
+                expected.put(key, permanent);
+            }
+            assertEquals(value, dao.get(overwritten));
+
+            Thread.sleep(SHORT.toMillis() * 2);
+            // The older version is not resurrected
+            assertThrows(NoSuchElementException.class, () -> dao.get(overwritten));
+            assertThrows(NoSuchElementException.class, () -> dao.get(expiring));
+            assertContents(expected, dao);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertThrows(NoSuchElementException.class, () -> dao.get(overwritten));
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void expiringRecordRecoveredFromLog(@TempDir File data) throws IOException {
+        final Config durable = Config.builder()
+                .walSyncMode(SyncMode.PER_WRITE)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        // Never closed, so the writes are only in the log
+        final DAO crashed = DAOFactory.create(data, durable);
+        for (int i = 0; i < 10; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            crashed.upsert(key, value, LONG);
+            expected.put(key, value);
+        }
+
+        try (DAO dao = DAOFactory.create(data, durable)) {
+            assertContents(expected, dao);
+        }
+    }
+
+    @Test
+    void nonPositiveTtlIsRejected(@TempDir File data) throws IOException {
+        try (DAO dao = DAOFactory.create(data)) {
+            final ByteBuffer key = randomKey();
+            assertThrows(IllegalArgumentException.class, () -> dao.upsert(key, randomValue(), Duration.ZERO));
+            assertThrows(IllegalArgumentException.class, () -> dao.upsert(key, randomValue(), Duration.ofSeconds(-1)));
+            assertThrows(NoSuchElementException.class, () -> dao.get(key));
+        }
+    }
+
+    @Test
+    void expiredTablesAreDropped(@TempDir File data) throws IOException, InterruptedException {
+        final Config small = small()
+                .compactionThreshold(2)
+                .build();
+        try (DAO dao = DAOFactory.create(data, small)) {
+            // 2 MB in tables expiring while the storage is idle
+            for (int i = 0; i < 2000; i++) {
+                dao.upsert(randomKey(), randomValue(), SHORT);
+            }
+
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (Files.directorySize(data) > FLUSH_THRESHOLD * 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(Files.directorySize(data) <= FLUSH_THRESHOLD * 2);
+            assertContents(new TreeMap<>(), dao);
+        }
+    }
+
+    @Test
+    void shardsExpireRecords(@TempDir File data) throws IOException, InterruptedException {
+        final Config sharded = Config.builder()
+                .shards(4)
+                .build();
+        final NavigableMap<ByteBuffer, ByteBuffer> expected = new TreeMap<>();
+        try (DAO dao = DAOFactory.create(data, sharded)) {
+            for (int i = 0; i < 20; i++) {
+                final ByteBuffer key = randomKey();
+                final ByteBuffer value = randomValue();
+                if (i % 2 == 0) {
+                    dao.upsert(key, value, SHORT);
+                } else {
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+
+            Thread.sleep(SHORT.toMillis() * 2);
+            assertContents(expected, dao);
+        }
+    }
+}
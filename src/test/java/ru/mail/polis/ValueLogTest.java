@@ -0,0 +1,134 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of values kept in the value log apart from keys.
+ */
+class ValueLogTest extends TestBase {
+    private static final Config SEPARATED = Config.builder()
+            .valueThreshold(512)
+            .valueLogSegmentSize(256 * 1024)
+            .flushThreshold(128 * 1024)
+            .compactionThreshold(2)
+            .build();
+
+    private static long size(
+            final File data,
+            final String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(data.toPath())) {
+            return files.filter(file -> file.toString().endsWith(suffix))
+                    .mapToLong(file -> file.toFile().length())
+                    .sum();
+        }
+    }
+
+    @Test
+    void largeValuesAreSeparated(@TempDir File data) throws IOException {
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            for (int i = 0; i < 1000; i++) {
+                final ByteBuffer key = randomKey();
+                // Every other value is small enough to stay in tables
+                final ByteBuffer value = i % 2 == 0 ? randomValue() : randomBuffer(100);
+                dao.upsert(key, value);
+                expected.put(key, value);
+            }
+        }
+
+        final long values = 500L * randomValue().remaining();
+        assertTrue(size(data, ".vlog") >= values);
+        assertTrue(size(data, ".sst") < values / 2);
+
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+            final Iterator<Record> records = dao.iterator(ByteBuffer.allocate(0));
+            int count = 0;
+            while (records.hasNext()) {
+                final Record record = records.next();
+                assertEquals(expected.get(record.getKey()), record.getValue());
+                count++;
+            }
+            assertEquals(expected.size(), count);
+        }
+    }
+
+    @Test
+    void deadSegmentsAreCollected(@TempDir File data) throws IOException {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(randomKey());
+        }
+
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            for (int round = 0; round < 50; round++) {
+                for (final ByteBuffer key : keys) {
+                    final ByteBuffer value = randomValue();
+                    dao.upsert(key, value);
+                    expected.put(key, value);
+                }
+            }
+        }
+
+        // About 5 MB written while 100 KB are live
+        assertTrue(size(data, ".vlog") < 2 * 1024 * 1024, "Value log is not collected");
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            for (final ByteBuffer key : keys) {
+                assertEquals(expected.get(key), dao.get(key));
+            }
+        }
+    }
+
+    @Test
+    void snapshotKeepsSeparatedValues(@TempDir File data) throws IOException {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data, SEPARATED)) {
+            dao.upsert(key, value);
+            try (Snapshot snapshot = dao.snapshot()) {
+                for (int i = 0; i < 2000; i++) {
+                    dao.upsert(key, randomValue());
+                }
+                assertEquals(value, snapshot.get(key));
+            }
+        }
+    }
+
+    @Test
+    void lazyValueLoadedOnce() {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer value = randomValue();
+        final AtomicInteger loads = new AtomicInteger();
+        final Record record = Record.lazy(key, () -> {
+            loads.incrementAndGet();
+            return value;
+        });
+
+        assertEquals(key, record.getKey());
+        assertFalse(record.isTombstone());
+        assertEquals(0, loads.get());
+        assertEquals(value, record.getValue());
+        assertEquals(Record.of(key, value), record);
+        assertEquals(1, loads.get());
+    }
+}
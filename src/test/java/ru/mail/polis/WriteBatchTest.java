@@ -0,0 +1,93 @@
+package ru.mail.polis;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.kodim97.Config;
+import ru.mail.polis.kodim97.SyncMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link DAO#write(WriteBatch)}.
+ */
+class WriteBatchTest extends TestBase {
+    private static final Config DURABLE = Config.builder()
+            .walSyncMode(SyncMode.PER_WRITE)
+            .build();
+
+    @Test
+    void laterOperationsWin(@TempDir File data) throws IOException {
+        final ByteBuffer removed = randomKey();
+        final ByteBuffer overwritten = randomKey();
+        final ByteBuffer value = randomValue();
+        try (DAO dao = DAOFactory.create(data)) {
+            dao.upsert(removed, randomValue());
+            dao.write(new WriteBatch()
+                    .remove(removed)
+                    .upsert(overwritten, randomValue())
+                    .upsert(overwritten, value));
+
+            assertThrows(NoSuchElementException.class, () -> dao.get(removed));
+            assertEquals(value, dao.get(overwritten));
+        }
+    }
+
+    @Test
+    void batchSurvivesCrash(@TempDir File data) throws IOException {
+        final WriteBatch batch = new WriteBatch();
+        final Map<ByteBuffer, ByteBuffer> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final ByteBuffer key = randomKey();
+            final ByteBuffer value = randomValue();
+            batch.upsert(key, value);
+            expected.put(key, value);
+        }
+        assertEquals(1000, batch.size());
+
+        // Never closed
+        DAOFactory.create(data, DURABLE).write(batch);
+        try (DAO dao = DAOFactory.create(data)) {
+            for (final Map.Entry<ByteBuffer, ByteBuffer> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), dao.get(entry.getKey()));
+            }
+        }
+    }
+
+    @Test
+    void tornBatchIsDropped(@TempDir File data) throws IOException {
+        final ByteBuffer single = randomKey();
+        final ByteBuffer value = randomValue();
+        final WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 10; i++) {
+            batch.upsert(randomKey(), randomValue());
+        }
+
+        final DAO crashed = DAOFactory.create(data, DURABLE);
+        crashed.upsert(single, value);
+        crashed.write(batch);
+
+        // Cut the batch in the middle
+        final File[] logs = data.listFiles((dir, name) -> name.endsWith(".wal"));
+        assertNotNull(logs);
+        assertEquals(1, logs.length);
+        try (FileChannel channel = FileChannel.open(logs[0].toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - batch.sizeInBytes() / 2);
+        }
+
+        try (DAO dao = DAOFactory.create(data)) {
+            assertEquals(value, dao.get(single));
+            for (final Record record : batch) {
+                assertThrows(NoSuchElementException.class, () -> dao.get(record.getKey()));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BlockCache}.
+ */
+class BlockCacheTest {
+    private static final int BLOCK = 1024;
+    private static final int SHARD_BLOCKS = 16;
+
+    private static ByteBuffer block(final int value) {
+        final ByteBuffer buffer = ByteBuffer.allocate(BLOCK);
+        buffer.putInt(0, value);
+        return buffer;
+    }
+
+    private static BlockCache cache() {
+        // 16 shards of 16 blocks each
+        return new BlockCache(16L * SHARD_BLOCKS * BLOCK);
+    }
+
+    @Test
+    void hitReturnsCopy() {
+        final BlockCache cache = cache();
+        final long table = cache.newTableId();
+        assertNull(cache.get(table, 0));
+
+        final ByteBuffer cached = cache.put(table, 0, block(42));
+        assertTrue(cached.isDirect());
+        assertEquals(cached, cache.get(table, 0));
+        assertEquals(42, cache.get(table, 0).getInt(0));
+
+        final CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(BLOCK, stats.getSizeInBytes());
+    }
+
+    @Test
+    void tablesDontCollide() {
+        final BlockCache cache = cache();
+        final long first = cache.newTableId();
+        final long second = cache.newTableId();
+        cache.put(first, 0, block(1));
+        cache.put(second, 0, block(2));
+        assertEquals(1, cache.get(first, 0).getInt(0));
+        assertEquals(2, cache.get(second, 0).getInt(0));
+    }
+
+    @Test
+    void bounded() {
+        final BlockCache cache = cache();
+        final long table = cache.newTableId();
+        for (int i = 0; i < 100 * SHARD_BLOCKS; i++) {
+            cache.put(table, i, block(i));
+        }
+
+        final CacheStats stats = cache.stats();
+        assertTrue(stats.getSizeInBytes() <= 16L * SHARD_BLOCKS * BLOCK);
+        assertTrue(stats.getEvictions() > 0);
+    }
+
+    @Test
+    void scanKeepsHotBlocks() {
+        final BlockCache cache = cache();
+        final long hot = cache.newTableId();
+        final int hotBlocks = SHARD_BLOCKS * 4;
+        for (int i = 0; i < hotBlocks; i++) {
+            cache.put(hot, i, block(i));
+            assertNotNull(cache.get(hot, i));
+        }
+
+        // Scan many times the cache size touching each block once
+        final long scanned = cache.newTableId();
+        for (int i = 0; i < 100 * SHARD_BLOCKS * 16; i++) {
+            if (cache.get(scanned, i) == null) {
+                cache.put(scanned, i, block(i));
+            }
+        }
+
+        for (int i = 0; i < hotBlocks; i++) {
+            assertNotNull(cache.get(hot, i), "Hot block " + i + " was evicted");
+        }
+    }
+
+    @Test
+    void disabled() {
+        final BlockCache cache = new BlockCache(0);
+        final long table = cache.newTableId();
+        final ByteBuffer source = block(1);
+        assertSame(source, cache.put(table, 0, source));
+        assertNull(cache.get(table, 0));
+        assertEquals(0, cache.stats().getSizeInBytes());
+    }
+}
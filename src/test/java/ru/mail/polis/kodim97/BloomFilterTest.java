@@ -0,0 +1,77 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link BloomFilter}.
+ */
+class BloomFilterTest {
+    private static final int KEYS = 10_000;
+    private static final double FPR = 0.01;
+
+    private static ByteBuffer randomKey() {
+        final byte[] bytes = new byte[1 + ThreadLocalRandom.current().nextInt(32)];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static BloomFilter filter(final List<ByteBuffer> keys) {
+        final ByteBuffer buffer = ByteBuffer.allocate(BloomFilter.sizeInBytes(keys.size(), FPR));
+        final BloomFilter filter = BloomFilter.create(buffer, FPR);
+        for (final ByteBuffer key : keys) {
+            filter.add(key);
+        }
+        return BloomFilter.wrap(buffer);
+    }
+
+    @Test
+    void noFalseNegatives() {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(randomKey());
+        }
+
+        final BloomFilter filter = filter(keys);
+        for (final ByteBuffer key : keys) {
+            assertTrue(filter.mightContain(key));
+            assertTrue(filter.mightContain(key.duplicate().order(ByteOrder.LITTLE_ENDIAN)));
+        }
+    }
+
+    @Test
+    void falsePositiveRate() {
+        final List<ByteBuffer> keys = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            keys.add(ByteBuffer.allocate(Integer.BYTES).putInt(0, i));
+        }
+
+        final BloomFilter filter = filter(keys);
+        int positives = 0;
+        for (int i = KEYS; i < KEYS * 11; i++) {
+            if (filter.mightContain(ByteBuffer.allocate(Integer.BYTES).putInt(0, i))) {
+                positives++;
+            }
+        }
+
+        // Blocked filters trade a bit of accuracy for locality
+        assertTrue(positives < KEYS * 10 * FPR * 2, "Too many false positives: " + positives);
+    }
+
+    @Test
+    void hashIgnoresPosition() {
+        final ByteBuffer key = randomKey();
+        final ByteBuffer shifted = ByteBuffer.allocate(key.remaining() + 3);
+        shifted.position(3);
+        shifted.put(key.duplicate());
+        shifted.position(3);
+        assertEquals(BloomFilter.hash(key), BloomFilter.hash(shifted));
+    }
+}
@@ -0,0 +1,75 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Codec}s.
+ */
+class CodecTest {
+    private static ByteBuffer json(final int count) {
+        final StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            result.append("{\"id\":").append(i).append(",\"name\":\"user").append(i).append("\",\"active\":true}");
+        }
+        return ByteBuffer.wrap(result.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer random(final int size) {
+        final byte[] result = new byte[size];
+        ThreadLocalRandom.current().nextBytes(result);
+        return ByteBuffer.wrap(result);
+    }
+
+    private static void assertRoundTrip(
+            final Codec codec,
+            final ByteBuffer raw) {
+        final ByteBuffer compressed = ByteBuffer.allocate(raw.remaining() + 64);
+        assertTrue(codec.compress(raw.duplicate(), compressed));
+        compressed.flip();
+
+        final ByteBuffer restored = ByteBuffer.allocate(raw.remaining());
+        codec.decompress(compressed, restored);
+        assertEquals(raw, restored.flip());
+    }
+
+    private static int compressedSize(
+            final Codec codec,
+            final ByteBuffer raw) {
+        final ByteBuffer compressed = ByteBuffer.allocate(raw.remaining() + 64);
+        assertTrue(codec.compress(raw.duplicate(), compressed));
+        return compressed.position();
+    }
+
+    @Test
+    void roundTrip() {
+        for (final Codec codec : new Codec[]{Codec.of(Compression.LZ), Codec.of(Compression.DEFLATE)}) {
+            assertRoundTrip(codec, ByteBuffer.allocate(0));
+            assertRoundTrip(codec, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            assertRoundTrip(codec, json(100));
+            assertRoundTrip(codec, random(4096));
+            // Matches overlapping the bytes they produce
+            assertRoundTrip(codec, ByteBuffer.allocate(10_000));
+        }
+    }
+
+    @Test
+    void compressesText() {
+        final ByteBuffer raw = json(100);
+        assertTrue(compressedSize(Codec.of(Compression.LZ), raw) < raw.remaining() / 2);
+        assertTrue(compressedSize(Codec.of(Compression.DEFLATE), raw) < raw.remaining() / 4);
+    }
+
+    @Test
+    void refusesSmallDestination() {
+        final ByteBuffer raw = random(1024);
+        for (final Codec codec : new Codec[]{Codec.of(Compression.LZ), Codec.of(Compression.DEFLATE)}) {
+            assertFalse(codec.compress(raw.duplicate(), ByteBuffer.allocate(raw.remaining() - 100)));
+        }
+    }
+}
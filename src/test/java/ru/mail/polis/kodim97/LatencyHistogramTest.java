@@ -0,0 +1,51 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ */
+class LatencyHistogramTest {
+    @Test
+    void bucketsCoverValues() {
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highest(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highest(index - 1) < value);
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highest(LatencyHistogram.index(Long.MAX_VALUE)));
+    }
+
+    @Test
+    void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        final LatencyStats stats = histogram.snapshot();
+        assertEquals(100_000, stats.getCount());
+        assertEquals(100_000_000, stats.getMaxNanos());
+        assertNear(50_000_500, stats.getMeanNanos());
+        assertNear(50_000_000, stats.getP50Nanos());
+        assertNear(99_000_000, stats.getP99Nanos());
+        assertNear(99_900_000, stats.getP999Nanos());
+    }
+
+    @Test
+    void empty() {
+        final LatencyStats stats = new LatencyHistogram().snapshot();
+        assertEquals(0, stats.getCount());
+        assertEquals(0, stats.getMeanNanos());
+        assertEquals(0, stats.getP99Nanos());
+        assertEquals(0, stats.getMaxNanos());
+    }
+
+    private static void assertNear(
+            final long expected,
+            final long actual) {
+        assertEquals(expected, actual, expected * 0.035);
+    }
+}
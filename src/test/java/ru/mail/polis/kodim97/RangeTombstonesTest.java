@@ -0,0 +1,64 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RangeTombstones}.
+ */
+class RangeTombstonesTest {
+    private static final int KEYS = 64;
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, i);
+    }
+
+    @Test
+    void coveringAndHiding() {
+        final RangeTombstones ranges = RangeTombstones.EMPTY
+                .with(new RangeTombstone(key(10), key(20), 5))
+                .with(new RangeTombstone(key(15), key(30), 8));
+
+        assertEquals(0, ranges.covering(key(9), 10));
+        assertEquals(5, ranges.covering(key(10), 10));
+        assertEquals(8, ranges.covering(key(15), 10));
+        assertEquals(5, ranges.covering(key(15), 7));
+        assertEquals(8, ranges.covering(key(20), 10));
+        assertEquals(0, ranges.covering(key(30), 10));
+
+        assertEquals(5, ranges.hiding(key(15), 1));
+        assertEquals(8, ranges.hiding(key(15), 5));
+        assertEquals(Long.MAX_VALUE, ranges.hiding(key(15), 8));
+        assertEquals(key(10), ranges.lowerBound());
+        assertEquals(key(30), ranges.upperBound());
+    }
+
+    @Test
+    void addedOneByOneLikeBuiltAtOnce() {
+        final Random random = new Random(42);
+        final List<RangeTombstone> added = new ArrayList<>();
+        RangeTombstones incremental = RangeTombstones.EMPTY;
+        for (int sequence = 1; sequence <= 200; sequence++) {
+            final int from = random.nextInt(KEYS - 1);
+            final int to = from + 1 + random.nextInt(KEYS - from - 1);
+            final RangeTombstone tombstone = new RangeTombstone(key(from), key(to), sequence);
+            added.add(tombstone);
+            incremental = incremental.with(tombstone);
+
+            final RangeTombstones expected = RangeTombstones.of(added);
+            assertEquals(added, incremental.tombstones());
+            for (int key = 0; key < KEYS; key++) {
+                for (long snapshot = 0; snapshot <= sequence; snapshot += 7) {
+                    assertEquals(expected.covering(key(key), snapshot), incremental.covering(key(key), snapshot));
+                    assertEquals(expected.hiding(key(key), snapshot), incremental.hiding(key(key), snapshot));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RowCache}.
+ */
+class RowCacheTest {
+    private static final int VALUE = 1024;
+    private static final long NOW = 1000;
+
+    private static ByteBuffer key(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, i);
+    }
+
+    private static ByteBuffer value(final int i) {
+        final ByteBuffer buffer = ByteBuffer.allocate(VALUE);
+        buffer.putInt(0, i);
+        return buffer;
+    }
+
+    private static RowCache cache() {
+        // 16 shards of about 64 entries each
+        return new RowCache(16L * 64 * VALUE);
+    }
+
+    @Test
+    void hitReturnsCopy() {
+        final RowCache cache = cache();
+        assertNull(cache.get(key(1), NOW));
+
+        final ByteBuffer value = value(42);
+        cache.put(key(1), value, Cell.NEVER, 1);
+        value.putInt(0, 0);
+        assertEquals(42, cache.get(key(1), NOW).getInt(0));
+        assertTrue(cache.get(key(1), NOW).isReadOnly());
+
+        final CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertTrue(stats.getSizeInBytes() > VALUE);
+    }
+
+    @Test
+    void invalidated() {
+        final RowCache cache = cache();
+        cache.put(key(1), value(1), Cell.NEVER, 1);
+        cache.invalidate(key(1), 2);
+        assertNull(cache.get(key(1), NOW));
+
+        // Read before the write, so the value is stale
+        cache.put(key(1), value(1), Cell.NEVER, 1);
+        assertNull(cache.get(key(1), NOW));
+        cache.put(key(1), value(2), Cell.NEVER, 2);
+        assertEquals(2, cache.get(key(1), NOW).getInt(0));
+
+        cache.invalidateAll(3);
+        assertNull(cache.get(key(1), NOW));
+        assertEquals(0, cache.stats().getSizeInBytes());
+    }
+
+    @Test
+    void expired() {
+        final RowCache cache = cache();
+        cache.put(key(1), value(1), NOW + 1, 1);
+        assertNotNull(cache.get(key(1), NOW));
+        assertNull(cache.get(key(1), NOW + 1));
+    }
+
+    @Test
+    void bounded() {
+        final RowCache cache = cache();
+        for (int i = 0; i < 100 * 64; i++) {
+            cache.get(key(i), NOW);
+            cache.put(key(i), value(i), Cell.NEVER, 1);
+        }
+
+        final CacheStats stats = cache.stats();
+        assertTrue(stats.getSizeInBytes() <= 16L * 64 * VALUE);
+        assertTrue(stats.getEvictions() > 0);
+    }
+
+    @Test
+    void scanKeepsFrequentKeys() {
+        final RowCache cache = cache();
+        final int hotKeys = 16 * 16;
+        for (int round = 0; round < 4; round++) {
+            for (int i = 0; i < hotKeys; i++) {
+                if (cache.get(key(i), NOW) == null) {
+                    cache.put(key(i), value(i), Cell.NEVER, 1);
+                }
+            }
+        }
+
+        // Scan many times the cache size touching each key once
+        for (int i = hotKeys; i < hotKeys + 100 * 16 * 64; i++) {
+            if (cache.get(key(i), NOW) == null) {
+                cache.put(key(i), value(i), Cell.NEVER, 1);
+            }
+        }
+
+        int retained = 0;
+        for (int i = 0; i < hotKeys; i++) {
+            if (cache.get(key(i), NOW) != null) {
+                retained++;
+            }
+        }
+        assertTrue(retained > hotKeys * 9 / 10, "Only " + retained + " hot keys retained");
+    }
+
+    @Test
+    void disabled() {
+        final RowCache cache = new RowCache(0);
+        cache.put(key(1), value(1), Cell.NEVER, 1);
+        assertNull(cache.get(key(1), NOW));
+        assertEquals(0, cache.stats().getSizeInBytes());
+    }
+}
@@ -0,0 +1,184 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.mail.polis.Record;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SSTable} and its {@link Block} encoding.
+ */
+class SSTableTest {
+    private static final int PREFIX = 64;
+
+    private static ByteBuffer key(final int i) {
+        return counter(i * 2);
+    }
+
+    private static ByteBuffer between(final int i) {
+        return counter(i * 2 + 1);
+    }
+
+    private static ByteBuffer counter(final int counter) {
+        // Long shared prefix followed by a counter in the same order as keys
+        final String key = "k".repeat(PREFIX) + String.format("%06d", counter);
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer value(final int i) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(0, i);
+    }
+
+    private static SSTable write(
+            final Path dir,
+            final List<Cell> cells,
+            final int restartInterval) throws IOException {
+        final Path file = dir.resolve("1.sst");
+        final Config config = Config.builder()
+                .blockSize(512)
+                .restartInterval(restartInterval)
+                .build();
+        SSTableWriter.write(file, cells.iterator(), List::of, config, 1, 0);
+        return SSTable.open(file, new BlockCache(0), ValueLog.open(dir, Config.defaults()));
+    }
+
+    private static ByteBuffer document(final int i) {
+        final String json = "{\"id\":" + i + ",\"name\":\"user" + i + "\",\"tags\":[\"a\",\"b\",\"c\"]}";
+        return ByteBuffer.wrap(json.repeat(8).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void seekPrefixedKeys(@TempDir Path dir) throws IOException {
+        final int count = 1000;
+        final List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            cells.add(Cell.of(key(i), i + 1, value(i)));
+        }
+        final SSTable table = write(dir, cells, 16);
+
+        assertEquals(key(0), table.minKey());
+        assertEquals(key(count - 1), table.maxKey());
+        for (int i = 0; i < count; i++) {
+            final Iterator<Record> exact = table.iterator(key(i), Long.MAX_VALUE, RangeTombstones.EMPTY);
+            assertEquals(Record.of(key(i), value(i)), exact.next());
+
+            // Odd counters fall between the keys
+            final ByteBuffer between = between(i);
+            final Iterator<Record> next = table.iterator(between, Long.MAX_VALUE, RangeTombstones.EMPTY);
+            if (i + 1 < count) {
+                assertEquals(key(i + 1), next.next().getKey());
+            } else {
+                assertFalse(next.hasNext());
+            }
+            assertEquals(value(i), table.get(key(i), Long.MAX_VALUE).value());
+            assertNull(table.get(between, Long.MAX_VALUE));
+        }
+
+        // Shared prefixes are stored once per restart interval
+        final long raw = (long) count * (PREFIX + 6 + Integer.BYTES + Long.BYTES);
+        assertTrue(Files.size(dir.resolve("1.sst")) < raw / 2, "Keys are not compressed");
+    }
+
+    @Test
+    void versionsAcrossRestarts(@TempDir Path dir) throws IOException {
+        final List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int version = 50; version > 0; version--) {
+                cells.add(Cell.of(key(i), version, value(version)));
+            }
+        }
+        final SSTable table = write(dir, cells, 3);
+
+        for (int i = 0; i < 100; i++) {
+            for (int version = 1; version <= 50; version++) {
+                assertEquals(value(version), table.get(key(i), version).value());
+            }
+            assertNull(table.get(key(i), 0));
+        }
+
+        final Iterator<Record> records = table.iterator(ByteBuffer.allocate(0), 25, RangeTombstones.EMPTY);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Record.of(key(i), value(25)), records.next());
+        }
+        assertFalse(records.hasNext());
+    }
+
+    @Test
+    void tablesOfAllCompressions(@TempDir Path dir) throws IOException {
+        final List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            cells.add(i % 10 == 0 ? Cell.tombstone(key(i), i + 1) : Cell.of(key(i), i + 1, document(i)));
+        }
+
+        // Tables of any codecs share the cache and read alike
+        final BlockCache cache = new BlockCache(1024 * 1024);
+        final List<SSTable> tables = new ArrayList<>();
+        for (final Compression compression : Compression.values()) {
+            final Path file = dir.resolve(compression + ".sst");
+            final Config config = Config.builder().compression(compression).build();
+            SSTableWriter.write(file, cells.iterator(), List::of, config, 1, 0);
+            tables.add(SSTable.open(file, cache, ValueLog.open(dir, Config.defaults())));
+        }
+        for (int round = 0; round < 2; round++) {
+            for (final SSTable table : tables) {
+                final Iterator<Cell> read = table.cells(ByteBuffer.allocate(0));
+                for (final Cell cell : cells) {
+                    final Cell actual = read.next();
+                    assertEquals(cell.key(), actual.key());
+                    assertEquals(cell.isTombstone(), actual.isTombstone());
+                    if (!cell.isTombstone()) {
+                        assertEquals(cell.value(), actual.value());
+                    }
+                }
+                assertFalse(read.hasNext());
+                assertEquals(document(1), table.get(key(1), Long.MAX_VALUE).value());
+            }
+        }
+        assertTrue(cache.stats().getHits() > 0);
+
+        final long raw = tables.get(Compression.NONE.ordinal()).sizeInBytes();
+        assertTrue(tables.get(Compression.LZ.ordinal()).sizeInBytes() < raw / 2);
+        assertTrue(tables.get(Compression.DEFLATE.ordinal()).sizeInBytes() < raw / 4);
+    }
+
+    @Test
+    void rangeTombstones(@TempDir Path dir) throws IOException {
+        final List<Cell> cells = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            cells.add(Cell.of(key(i), i + 1, value(i)));
+        }
+        final List<RangeTombstone> ranges = List.of(
+                new RangeTombstone(key(10), key(20), 50),
+                new RangeTombstone(between(99), between(200), 200));
+        final Path file = dir.resolve("1.sst");
+        SSTableWriter.write(file, cells.iterator(), () -> ranges, Config.defaults(), 1, 0);
+        final SSTable table = SSTable.open(file, new BlockCache(0), ValueLog.open(dir, Config.defaults()));
+
+        assertEquals(200, table.maxSequence());
+        assertEquals(key(0), table.minKey());
+        assertEquals(between(200), table.maxKey());
+        final RangeTombstones read = table.rangeTombstones();
+        assertEquals(2, read.tombstones().size());
+        // Keys 10-19 are older than the first tombstone except for the ones written after it
+        final Iterator<Record> records = table.iterator(key(0), Long.MAX_VALUE, read);
+        for (int i = 0; i < 100; i++) {
+            final Record record = records.next();
+            assertEquals(i >= 10 && i < 20 && i + 1 < 50, record.isTombstone());
+        }
+        assertFalse(records.hasNext());
+        assertEquals(50, read.covering(key(15), 100));
+        assertEquals(0, read.covering(key(15), 49));
+        assertEquals(0, read.covering(key(20), 100));
+        assertEquals(Long.MAX_VALUE, read.hiding(key(15), 50));
+    }
+}
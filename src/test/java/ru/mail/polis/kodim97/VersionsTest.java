@@ -0,0 +1,87 @@
+package ru.mail.polis.kodim97;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link Versions}.
+ */
+class VersionsTest {
+    private static final ByteBuffer KEY = ByteBuffer.wrap(new byte[]{1});
+
+    private static Cell value(final long sequence) {
+        return Cell.of(KEY, sequence, ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+    }
+
+    private static List<Long> retained(
+            final long[] snapshots,
+            final boolean dropTombstones,
+            final Cell... cells) {
+        return retained(RangeTombstones.EMPTY, snapshots, dropTombstones, cells);
+    }
+
+    private static List<Long> retained(
+            final RangeTombstones ranges,
+            final long[] snapshots,
+            final boolean dropTombstones,
+            final Cell... cells) {
+        final Iterator<Cell> iterator =
+                Versions.retained(Arrays.asList(cells).iterator(), snapshots, dropTombstones, ranges);
+        final List<Long> result = new ArrayList<>();
+        iterator.forEachRemaining(cell -> result.add(cell.sequence()));
+        return result;
+    }
+
+    @Test
+    void onlyNewestWithoutSnapshots() {
+        assertEquals(List.of(9L), retained(new long[0], false, value(9), value(5), value(1)));
+    }
+
+    @Test
+    void pinnedVersionsAreKept() {
+        // Snapshot 6 sees version 5, snapshot 3 sees version 1
+        assertEquals(
+                List.of(9L, 5L, 1L),
+                retained(new long[]{3, 6}, false, value(9), value(7), value(5), value(1)));
+        // Both snapshots see version 5
+        assertEquals(List.of(9L, 5L), retained(new long[]{5, 6}, false, value(9), value(5), value(1)));
+    }
+
+    @Test
+    void tombstonesDroppedAtBottom() {
+        assertEquals(List.of(), retained(new long[0], true, Cell.tombstone(KEY, 9), value(5)));
+        assertEquals(List.of(9L, 5L), retained(new long[]{6}, true, value(9), value(5), Cell.tombstone(KEY, 1)));
+        assertEquals(List.of(9L), retained(new long[0], false, Cell.tombstone(KEY, 9), value(5)));
+    }
+
+    @Test
+    void visibleVersion() {
+        final List<Cell> cells = List.of(value(9), value(5), Cell.tombstone(KEY, 3));
+        assertEquals(9L, Versions.visible(cells.iterator(), 10, RangeTombstones.EMPTY).next().getValue().getLong());
+        assertEquals(5L, Versions.visible(cells.iterator(), 8, RangeTombstones.EMPTY).next().getValue().getLong());
+        assertTrue(Versions.visible(cells.iterator(), 4, RangeTombstones.EMPTY).next().isTombstone());
+        assertFalse(Versions.visible(cells.iterator(), 2, RangeTombstones.EMPTY).hasNext());
+    }
+
+    @Test
+    void rangeTombstonesHideOlderVersions() {
+        final ByteBuffer end = ByteBuffer.wrap(new byte[]{2});
+        final RangeTombstones ranges = RangeTombstones.of(List.of(new RangeTombstone(KEY, end, 7)));
+        final List<Cell> cells = List.of(value(9), value(5));
+        assertEquals(9L, Versions.visible(cells.iterator(), 10, ranges).next().getValue().getLong());
+        assertTrue(Versions.visible(cells.iterator(), 8, ranges).next().isTombstone());
+        assertEquals(5L, Versions.visible(cells.iterator(), 6, ranges).next().getValue().getLong());
+
+        // Version 5 is seen only by the snapshots before the tombstone
+        assertEquals(List.of(9L), retained(ranges, new long[0], false, value(9), value(5)));
+        assertEquals(List.of(9L, 5L), retained(ranges, new long[]{6}, false, value(9), value(5)));
+        assertEquals(List.of(), retained(ranges, new long[]{8}, false, value(5)));
+    }
+}